@@ -19,4 +19,4 @@ echo ""
 
 # Run the client
 cd ../bin
-java MastermindApp
+java MastermindApp "$@"
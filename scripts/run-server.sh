@@ -16,9 +16,10 @@ fi
 # Default port
 PORT=8080
 
-# Check for port argument
-if [ $# -eq 1 ]; then
+# Check for port argument; anything after it (e.g. --mode=nio) is passed through
+if [ $# -ge 1 ]; then
     PORT=$1
+    shift
 fi
 
 echo "Starting server on port $PORT..."
@@ -27,4 +28,4 @@ echo ""
 
 # Run the server
 cd ../bin
-java MastermindServer $PORT
+java MastermindServer $PORT "$@"
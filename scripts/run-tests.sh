@@ -15,7 +15,7 @@ fi
 
 # Compile test files if needed
 echo "Compiling test files..."
-javac -d ../bin -cp ../bin ../src/GameStateTest.java
+javac -d ../bin -cp ../bin ../src/*Test.java
 
 if [ $? -ne 0 ]; then
     echo ""
@@ -23,12 +23,14 @@ if [ $? -ne 0 ]; then
     exit 1
 fi
 
-echo ""
-echo "Running GameState tests..."
-echo ""
-
 # Run the tests
 cd ../bin
-java GameStateTest
+status=0
+for test in GameStateTest TimingWheelTest GameJournalTest JournalRecoveryTest HashRingTest SessionSnapshotTest GameArchiveTest RateLimitsTest LobbyIndexTest GameHistoryTest; do
+    echo ""
+    echo "Running $test..."
+    echo ""
+    java $test || status=1
+done
 
-exit $?
+exit $status
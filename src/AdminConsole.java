@@ -0,0 +1,90 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * AdminConsole
+ *
+ * Operator commands typed into a server's terminal:
+ *
+ *   games                   list the games hosted on this server
+ *   players                 list this server's players with their heartbeat
+ *                           round trip and outbound queue depth
+ *   migrate <gameId> <node> move a running game to another node (cluster only)
+ *   drain                   move every game away before a restart (cluster only)
+ *
+ * Reads standard input on a daemon thread and stops quietly when input
+ * is closed (e.g. when the server runs in the background).
+ */
+
+import java.io.*;
+
+public class AdminConsole implements Runnable {
+    private final GameLobbyManager lobby;
+    // null on a standalone server
+    private final ClusterNode cluster;
+
+    public AdminConsole(GameLobbyManager lobby, ClusterNode cluster) {
+        this.lobby = lobby;
+        this.cluster = cluster;
+    }
+
+    public void start() {
+        Thread t = new Thread(this, "AdminConsole");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void run() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                handle(line.trim().split("\\s+"));
+            }
+        } catch (IOException e) {
+            System.err.println("AdminConsole - Input closed: " + e.getMessage());
+        }
+    }
+
+    private void handle(String[] args) {
+        switch (args[0]) {
+            case "":
+                break;
+            case "games":
+                lobby.forEachGame(summary -> {
+                    if (cluster == null || !cluster.isRemote(summary.getId())) {
+                        System.out.println("  " + summary.toJson());
+                    }
+                });
+                break;
+            case "players":
+                lobby.forEachPlayer(player -> {
+                    if (!player.isRelay() && !player.isDetached()) {
+                        System.out.printf("  %s (%s) rtt %.1f ms (last %.1f ms), queued %d%n",
+                                          player.getPlayerName(), player.getPlayerId(), player.getRttMillis(),
+                                          player.getLastRttMillis(), player.getOutboundQueueDepth());
+                    }
+                });
+                LatencyHistogram rtt = lobby.getRoundTripMillis();
+                System.out.printf("  %d round trips, p50 %d ms, p99 %d ms%n", rtt.getCount(), rtt.percentile(50),
+                                  rtt.percentile(99));
+                break;
+            case "migrate":
+                if (cluster == null) {
+                    System.out.println("not part of a cluster");
+                } else if (args.length != 3) {
+                    System.out.println("usage: migrate <gameId> <node>");
+                } else {
+                    System.out.println(cluster.migrate(args[1], args[2]));
+                }
+                break;
+            case "drain":
+                if (cluster == null) {
+                    System.out.println("not part of a cluster");
+                } else {
+                    cluster.drain();
+                }
+                break;
+            default:
+                System.out.println(cluster == null ? "commands: games, players"
+                                                   : "commands: games, players, migrate <gameId> <node>, drain");
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * AdmissionControl
+ *
+ * Decides whether the server takes on more work, so that a connection
+ * storm or a flood of new games cannot take down the games already being
+ * played. Two kinds of checks:
+ *
+ *   - hard caps: at most maxConnections connections, maxSessions live
+ *     games, and maxSessionsPerPlayer live games opened by one player;
+ *   - load shedding: a monitor thread samples the heap (as left by the
+ *     last garbage collection) and the lines waiting in every client's
+ *     outbound queue every SAMPLE_MILLIS. Above either high-water mark the
+ *     server sheds load until both are back below LOW_WATER_RATIO of
+ *     their marks, so it does not flap around the limit.
+ *
+ * A game takes its slot with reserveSession() before it exists, so a
+ * burst of creates cannot overshoot the caps between check and count.
+ *
+ * Refusals are answered with BUSY:reason: a refused connection gets that
+ * one line and is closed, a refused CREATE_GAME or QUICK_JOIN just gets
+ * the line. While shedding, matchmaking holds its queue instead of
+ * opening games. Joining, playing and leaving existing games is never
+ * refused.
+ */
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class AdmissionControl {
+    public static final int DEFAULT_MAX_CONNECTIONS = 10_000;
+    public static final int DEFAULT_MAX_SESSIONS = 5_000;
+    public static final int DEFAULT_MAX_SESSIONS_PER_PLAYER = 3;
+    public static final double DEFAULT_HEAP_HIGH_WATER = 0.90;
+    public static final long DEFAULT_QUEUE_HIGH_WATER = 100_000;
+
+    private static final double LOW_WATER_RATIO = 0.8;
+    private static final long SAMPLE_MILLIS = 250;
+    private static final long STATS_INTERVAL_SECONDS = 30;
+
+    private final GameLobbyManager lobby;
+    private volatile int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private volatile int maxSessions = DEFAULT_MAX_SESSIONS;
+    private volatile int maxSessionsPerPlayer = DEFAULT_MAX_SESSIONS_PER_PLAYER;
+    private volatile double heapHighWater = DEFAULT_HEAP_HIGH_WATER;
+    private volatile long queueHighWater = DEFAULT_QUEUE_HIGH_WATER;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    // reserveLock guards the three below, so a cap is checked and counted
+    // in one step: creator of each live game opened by a player, how many
+    // each has open, and games reserved but not yet counted by the lobby
+    private final ReentrantLock reserveLock = new ReentrantLock();
+    private final Map<String, String> creators = new HashMap<>();
+    private final Map<String, Integer> openedBy = new HashMap<>();
+    private final Set<String> pending = new HashSet<>();
+    // why load is being shed, or null; written by the monitor only
+    private volatile String shedding;
+    // last sample
+    private volatile double heapUsage;
+    private volatile long queuedLines;
+    private ScheduledExecutorService monitor;
+
+    private final LongAdder connectionsRefused = new LongAdder();
+    private final LongAdder sessionsRefused = new LongAdder();
+    private final LongAdder sheddingEpisodes = new LongAdder();
+
+    public AdmissionControl(GameLobbyManager lobby) {
+        this.lobby = lobby;
+    }
+
+    /**
+     * Sets the caps; 0 means no cap.
+     */
+    public void setLimits(int maxConnections, int maxSessions, int maxSessionsPerPlayer) {
+        this.maxConnections = maxConnections;
+        this.maxSessions = maxSessions;
+        this.maxSessionsPerPlayer = maxSessionsPerPlayer;
+    }
+
+    /**
+     * Sets the high-water marks: the fraction of the maximum heap still in
+     * use after a collection, and the lines queued for all clients
+     * together. 0 turns a mark off.
+     */
+    public void setHighWater(double heapFraction, long queuedLines) {
+        this.heapHighWater = heapFraction;
+        this.queueHighWater = queuedLines;
+    }
+
+    /**
+     * Starts the monitor thread that decides when to shed load.
+     */
+    public void start() {
+        monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "AdmissionMonitor");
+            t.setDaemon(true);
+            return t;
+        });
+        monitor.scheduleWithFixedDelay(this::sample, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        monitor.scheduleAtFixedRate(() -> System.out.println("AdmissionControl: " + this),
+                                    STATS_INTERVAL_SECONDS, STATS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (monitor != null) {
+            monitor.shutdownNow();
+        }
+    }
+
+    /**
+     * Takes a connection slot for a newly accepted client; release it with
+     * connectionClosed().
+     *
+     * @return null if admitted, otherwise the reason to send with BUSY
+     */
+    public String admitConnection() {
+        String reason = shedding;
+        if (reason == null) {
+            int limit = maxConnections;
+            if (connections.incrementAndGet() <= limit || limit <= 0) return null;
+            connections.decrementAndGet();
+            reason = "Server full (" + limit + " players), try again later";
+        }
+        connectionsRefused.increment();
+        return reason;
+    }
+
+    public void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * Takes the slot of a game about to be created, for creatorId or, with
+     * null, for the server itself (matchmaking) or a cluster peer, and
+     * counts a refusal. hostedHere is false for a game the cluster places
+     * on another node: only the creator's own cap is checked here, the
+     * host checks the rest. Follow with sessionOpened() once the lobby
+     * counts the game, or sessionRemoved() if it is never created.
+     *
+     * @return null if reserved, otherwise the reason to send with BUSY
+     */
+    public String reserveSession(String gameId, String creatorId, boolean hostedHere) {
+        String reason = hostedHere ? shedding : null;
+        if (reason == null) {
+            reserveLock.lock();
+            try {
+                reason = refusalLocked(creatorId, hostedHere);
+                if (reason == null) {
+                    if (hostedHere) pending.add(gameId);
+                    if (creatorId != null) {
+                        creators.put(gameId, creatorId);
+                        openedBy.merge(creatorId, 1, Integer::sum);
+                    }
+                }
+            } finally {
+                reserveLock.unlock();
+            }
+        }
+        if (reason != null) sessionsRefused.increment();
+        return reason;
+    }
+
+    /**
+     * Why a game opened now would be refused, or null; without reserving
+     * or counting anything.
+     */
+    public String sessionRefusal(String creatorId) {
+        String reason = shedding;
+        if (reason != null) return reason;
+        reserveLock.lock();
+        try {
+            return refusalLocked(creatorId, true);
+        } finally {
+            reserveLock.unlock();
+        }
+    }
+
+    private String refusalLocked(String creatorId, boolean hostedHere) {
+        int limit = maxSessions;
+        int perPlayer = maxSessionsPerPlayer;
+        if (hostedHere && limit > 0 && lobby.getSessionCount() + pending.size() >= limit) {
+            return "Too many games running (" + limit + "), try again later";
+        }
+        if (creatorId != null && perPlayer > 0 && openedBy.getOrDefault(creatorId, 0) >= perPlayer) {
+            return "You already have " + perPlayer + " open games";
+        }
+        return null;
+    }
+
+    /**
+     * The reserved game is in the lobby, which counts it from now on.
+     */
+    void sessionOpened(String gameId) {
+        reserveLock.lock();
+        try {
+            pending.remove(gameId);
+        } finally {
+            reserveLock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a game's slot, when it ends or was never created.
+     */
+    void sessionRemoved(String gameId) {
+        reserveLock.lock();
+        try {
+            pending.remove(gameId);
+            String creatorId = creators.remove(gameId);
+            if (creatorId != null) {
+                openedBy.computeIfPresent(creatorId, (id, count) -> count > 1 ? count - 1 : null);
+            }
+        } finally {
+            reserveLock.unlock();
+        }
+    }
+
+    /**
+     * One monitor tick: samples the heap and outbound queues and starts or
+     * stops shedding.
+     */
+    void sample() {
+        double heap = heapAfterLastCollection();
+        long[] queued = { 0 };
+        lobby.forEachPlayer(player -> {
+            // a relay's depth is its node link's, shared by every player on it
+            if (!player.isRelay()) queued[0] += player.getOutboundQueueDepth();
+        });
+        heapUsage = heap;
+        queuedLines = queued[0];
+
+        double heapMark = heapHighWater;
+        long queueMark = queueHighWater;
+        if (shedding == null) {
+            String reason = null;
+            if (heapMark > 0 && heap >= heapMark) {
+                reason = "Server busy (memory), try again later";
+            } else if (queueMark > 0 && queued[0] >= queueMark) {
+                reason = "Server busy (network), try again later";
+            }
+            if (reason != null) {
+                shedding = reason;
+                sheddingEpisodes.increment();
+                System.out.printf("AdmissionControl: shedding load, heap %.0f%% in use, %d lines queued%n",
+                                  heap * 100, queued[0]);
+            }
+        } else if ((heapMark <= 0 || heap < heapMark * LOW_WATER_RATIO)
+                   && (queueMark <= 0 || queued[0] < queueMark * LOW_WATER_RATIO)) {
+            shedding = null;
+            System.out.printf("AdmissionControl: load back to normal, heap %.0f%% in use, %d lines queued%n",
+                              heap * 100, queued[0]);
+        }
+    }
+
+    /**
+     * Fraction of the maximum heap still in use after each pool's last
+     * collection. Unlike the current usage, this does not count garbage
+     * waiting to be collected, so it only climbs when live data does.
+     */
+    private static double heapAfterLastCollection() {
+        long max = Runtime.getRuntime().maxMemory();
+        if (max <= 0 || max == Long.MAX_VALUE) return 0;
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage afterCollection = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (afterCollection != null) used += afterCollection.getUsed();
+        }
+        return (double) used / max;
+    }
+
+    public boolean isShedding() { return shedding != null; }
+    public int getConnectionCount() { return connections.get(); }
+    public double getHeapUsage() { return heapUsage; }
+    public long getQueuedLines() { return queuedLines; }
+    public long getConnectionsRefused() { return connectionsRefused.sum(); }
+    public long getSessionsRefused() { return sessionsRefused.sum(); }
+    public long getSheddingEpisodes() { return sheddingEpisodes.sum(); }
+
+    @Override
+    public String toString() {
+        return String.format("connections=%d/%d games=%d/%d shedding=%s heap=%.0f%% queued=%d refused=%d connections, %d games",
+                             connections.get(), maxConnections, lobby.getSessionCount(), maxSessions,
+                             shedding != null ? "yes" : "no", heapUsage * 100, queuedLines,
+                             connectionsRefused.sum(), sessionsRefused.sum());
+    }
+}
@@ -14,25 +14,150 @@
 
 import java.io.*;
 import java.net.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class ClientHandler implements Runnable {
+    // seeded from the clock so ids keep the "p<millis>" shape but never collide
+    private static final AtomicLong NEXT_PLAYER_ID = new AtomicLong(System.currentTimeMillis());
+    // "-nodeId" in a cluster, so ids stay unique across nodes
+    private static volatile String playerIdSuffix = "";
+    private static final SecureRandom TOKENS = new SecureRandom();
+
     private final Socket socket;
+    private final NioConnection connection;
+    private final PeerLink relayLink;
     private final GameLobbyManager lobby;
-    private PrintWriter out;
+    private final OutboundQueue outbound;
+    private final Executor writerExecutor;
+    // armed in run(); an NIO connection's loop arms them instead
+    private final long idleTimeoutMillis;
+    private final long heartbeatMillis;
+    private final int heartbeatMisses;
+    // null for relays and held seats, which are limited where the player is connected
+    private final RateLimits.Limiter limiter;
+    // how long the reader should wait before the next line; reader only
+    private long readPauseNanos;
+    private OutputStream out;
     private BufferedReader in;
     private String playerId;
     private String playerName;
+    // secret that lets the player take their seat back after a standby takeover or a restart
+    private String sessionToken;
     private volatile boolean running = true;
+    // when the client last sent a line, for the idle check
+    private volatile long lastReadNanos = System.nanoTime();
+    private volatile TimingWheel.Timeout idleTimer;
+    private volatile TimingWheel.Timeout heartbeatTimer;
+    private final long connectedNanos = System.nanoTime();
+    // PINGs sent since the client last sent anything; the reader zeroes it,
+    // the heartbeat counts it up, and a lost reset only costs one extra miss
+    private volatile int unansweredPings;
+    // the last PING's payload: microseconds since connectedNanos
+    private volatile long pingMicros = -1;
+    // PONG round trips in microseconds, -1 until the first arrives
+    private volatile long lastRttMicros = -1;
+    private volatile long smoothedRttMicros = -1;
 
     public ClientHandler(Socket socket, GameLobbyManager lobby) {
+        this(socket, lobby, ConnectionSettings.defaults(), null);
+    }
+
+    /**
+     * @param writerExecutor Runs this connection's writer; null starts a dedicated thread
+     */
+    public ClientHandler(Socket socket, GameLobbyManager lobby, ConnectionSettings settings, Executor writerExecutor) {
         this.socket = socket;
+        this.connection = null;
+        this.relayLink = null;
+        this.lobby = lobby;
+        this.outbound = settings.newOutboundQueue();
+        this.writerExecutor = writerExecutor;
+        this.idleTimeoutMillis = settings.idleTimeoutMillis;
+        this.heartbeatMillis = settings.heartbeatMillis;
+        this.heartbeatMisses = settings.heartbeatMisses;
+        this.limiter = settings.rateLimits.newLimiter();
+    }
+
+    /**
+     * Creates a handler driven by an NIO event loop instead of its own thread.
+     * The loop feeds complete lines into handleLine() and owns the channel.
+     */
+    ClientHandler(NioConnection connection, GameLobbyManager lobby, ConnectionSettings settings) {
+        this.socket = null;
+        this.connection = connection;
+        this.relayLink = null;
         this.lobby = lobby;
+        this.outbound = null;
+        this.writerExecutor = null;
+        this.idleTimeoutMillis = 0;
+        this.heartbeatMillis = 0;
+        this.heartbeatMisses = 0;
+        this.limiter = settings.rateLimits.newLimiter();
+    }
+
+    /**
+     * Creates a relay for a player connected to another cluster node. The
+     * player's game commands arrive over the link and everything sent to
+     * the player goes back over it.
+     */
+    ClientHandler(PeerLink link, String playerId, String playerName, GameLobbyManager lobby) {
+        this.socket = null;
+        this.connection = null;
+        this.relayLink = link;
+        this.lobby = lobby;
+        this.outbound = null;
+        this.writerExecutor = null;
+        this.idleTimeoutMillis = 0;
+        this.heartbeatMillis = 0;
+        this.heartbeatMisses = 0;
+        this.limiter = null;
+        this.playerId = playerId;
+        this.playerName = playerName;
+    }
+
+    /**
+     * Creates a handler that holds a player's seat while the player has no
+     * connection, after a standby takeover or a restart. Messages to it are
+     * dropped until the player resumes with the session token.
+     */
+    ClientHandler(String playerId, String playerName, String sessionToken, GameLobbyManager lobby) {
+        this.socket = null;
+        this.connection = null;
+        this.relayLink = null;
+        this.lobby = lobby;
+        this.outbound = null;
+        this.writerExecutor = null;
+        this.idleTimeoutMillis = 0;
+        this.heartbeatMillis = 0;
+        this.heartbeatMisses = 0;
+        this.limiter = null;
+        this.playerId = playerId;
+        this.playerName = playerName;
+        this.sessionToken = sessionToken;
+    }
+
+    static void setPlayerIdSuffix(String suffix) {
+        playerIdSuffix = suffix;
+    }
+
+    /**
+     * Moves the ID counter up to the clock, past any ID a previous server
+     * that started earlier could have handed out.
+     */
+    static void advancePlayerIds() {
+        NEXT_PLAYER_ID.accumulateAndGet(System.currentTimeMillis(), Math::max);
     }
 
     @Override
     public void run() {
         try {
             setupStreams();
+            watchIdle(idleTimeoutMillis);
+            startHeartbeat(heartbeatMillis, heartbeatMisses);
             handleClientMessages();
         } catch (IOException e) {
             System.err.println("Client handler error: " + e.getMessage());
@@ -47,19 +172,53 @@ public class ClientHandler implements Runnable {
      * Initialize the input and output streams for this client connection.
      * 
      * Steps:
-     * 1. Create a PrintWriter from socket.getOutputStream() with auto-flush enabled
+     * 1. Create a BufferedOutputStream from socket.getOutputStream() (flushed by the writer)
      * 2. Create a BufferedReader from socket.getInputStream() wrapped in InputStreamReader
+     * 3. Start the writer that drains the outbound queue
      * 
      * Hint: Use the socket object that was passed in the constructor
      */
     private void setupStreams() throws IOException {
-        // initializing 'out' as a PrintWriter with auto-flush
-        out = new PrintWriter(socket.getOutputStream(), true);
+        // initializing 'out' as a buffered byte stream; messages arrive pre-encoded
+        // and writeLoop flushes once per batch
+        out = new BufferedOutputStream(socket.getOutputStream());
         // initializing 'in' as a BufferedReader
         in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        if (writerExecutor != null) {
+            writerExecutor.execute(this::writeLoop);
+        } else {
+            Thread writer = new Thread(this::writeLoop, "ClientWriter-" + socket.getPort());
+            writer.setDaemon(true);
+            writer.start();
+        }
         System.out.println("ClientHandler: Streams initialized for " + socket.getRemoteSocketAddress());
     }
 
+    /**
+     * Drains the outbound queue: everything queued since the last pass is
+     * written in one go and flushed once, instead of one flush per message.
+     */
+    private void writeLoop() {
+        List<EncodedMessage> batch = new ArrayList<>();
+        try {
+            while (outbound.awaitDrain(batch)) {
+                long written = 0;
+                for (EncodedMessage message : batch) {
+                    message.writeTo(out);
+                    written += message.length();
+                }
+                out.flush();
+                EncodedMessage.recordWrite(written);
+                batch.clear();
+            }
+        } catch (IOException e) {
+            // the reader thread sees the closed socket and runs cleanup()
+            closeSocket();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
 
     /**
      * TODO 2: Message Processing Loop (30 minutes)
@@ -82,63 +241,140 @@ public class ClientHandler implements Runnable {
      * Commands to handle:
      * - HELLO: handleHello(data)
      * - CONNECT: handleConnect(data)
-     * - GET_GAMES: handleGetGames()
+     * - GET_GAMES: handleGetGames(data)
+     * - LOBBY_MODE: handleLobbyMode(data)
      * - CREATE_GAME: handleCreateGame(data)
      * - JOIN_GAME: handleJoinGame(data)
+     * - QUICK_JOIN: handleQuickJoin(data)
+     * - QUEUE: handleQueue(data)
+     * - LEAVE_QUEUE: handleLeaveQueue()
      * - LEAVE_GAME: handleLeaveGame(data)
      * - GUESS: handleGuess(data)
      * - CHAT: handleChat(data)
+     * - PING / PONG: heartbeats, answered in handleLine before anything else
      * - DISCONNECT: break the loop
      */
     private void handleClientMessages() throws IOException {
         //implementing the message processing loop
         String line;
         while (running && (line = in.readLine()) != null) {
-            System.out.println("ClientHandler: RAW IN: \"" + line + "\"");
+            handleLine(line);
+            long pause = takeReadPause();
+            if (pause > 0) {
+                // the client's next lines wait in its socket, not in our queues
+                LockSupport.parkNanos(pause);
+            }
+        }
+    }
 
-            if (line.trim().isEmpty()) continue;
+    /**
+     * Parses a single "COMMAND:data" line and routes it to its handler.
+     * Shared by the blocking read loop and the NIO event loops. A command
+     * over its rate limit (see RateLimits) gets THROTTLED instead.
+     */
+    void handleLine(String line) {
+        lastReadNanos = System.nanoTime();
+        unansweredPings = 0;
+        if (limiter != null) readPauseNanos = limiter.charge();
+        // heartbeats are answered before logging and cluster routing
+        if (line.startsWith("PONG:")) {
+            handlePong(line.substring(5));
+            return;
+        }
+        if (line.startsWith("PING:")) {
+            sendMessage("PONG:" + line.substring(5));
+            return;
+        }
+        if (line.trim().isEmpty()) return;
 
-            String[] parts = line.split(":", 2);
-            String command = parts[0].trim();
-            String data = parts.length > 1 ? parts[1] : "";
+        String[] parts = line.split(":", 2);
+        String command = parts[0].trim();
+        String data = parts.length > 1 ? parts[1] : "";
 
-            try {
-                switch (command) {
-                    case "HELLO":
-                        sendMessage("HELLO:" + data);
-                        break;
-                    case "CONNECT":
-                        handleConnect(data);
-                        break;
-                    case "GET_GAMES":
-                        handleGetGames();
-                        break;
-                    case "CREATE_GAME":
-                        handleCreateGame(data);
-                        break;
-                    case "JOIN_GAME":
-                        handleJoinGame(data);
-                        break;
-                    case "LEAVE_GAME":
-                        handleLeaveGame(data);
-                        break;
-                    case "GUESS":
-                        handleGuess(data);
-                        break;
-                    case "CHAT":
-                        handleChat(data);
-                        break;
-                    case "DISCONNECT":
-                        running = false;
-                        break;
-                    default:
-                        sendMessage("ERROR:Unknown command");
+        if (limiter != null) {
+            long retryMillis = limiter.admit(command);
+            if (retryMillis >= 0) {
+                if (retryMillis > 0) {
+                    System.out.println("ClientHandler - Throttling " + command + " from " + playerName + " (" + playerId + ")");
+                    sendMessage("THROTTLED:" + command + ":" + retryMillis);
                 }
-            } catch (Exception e) {
-                sendMessage("ERROR:Exception handling command:" + command);
-                e.printStackTrace();
+                return;
             }
         }
+        System.out.println("ClientHandler: RAW IN: \"" + line + "\"");
+
+        // commands for a game hosted on another node go there
+        ClusterNode cluster = lobby.getCluster();
+        if (cluster != null && cluster.route(this, command, data, line)) return;
+
+        try {
+            switch (command) {
+                case "HELLO":
+                    sendMessage("HELLO:" + data);
+                    break;
+                case "CONNECT":
+                    handleConnect(data);
+                    break;
+                case "RESUME":
+                    handleResume(data);
+                    break;
+                case "GET_GAMES":
+                    handleGetGames(data);
+                    break;
+                case "LOBBY_MODE":
+                    handleLobbyMode(data);
+                    break;
+                case "CREATE_GAME":
+                    handleCreateGame(data);
+                    break;
+                case "JOIN_GAME":
+                    handleJoinGame(data);
+                    break;
+                case "QUICK_JOIN":
+                    handleQuickJoin(data);
+                    break;
+                case "QUEUE":
+                    handleQueue(data);
+                    break;
+                case "LEAVE_QUEUE":
+                    handleLeaveQueue();
+                    break;
+                case "LEAVE_GAME":
+                    handleLeaveGame(data);
+                    break;
+                case "GUESS":
+                    handleGuess(data);
+                    break;
+                case "CHAT":
+                    handleChat(data);
+                    break;
+                case "REPLAY":
+                    handleReplay(data);
+                    break;
+                case "RESULT":
+                    handleResult(data);
+                    break;
+                case "DISCONNECT":
+                    running = false;
+                    break;
+                default:
+                    sendMessage("ERROR:Unknown command");
+            }
+        } catch (Exception e) {
+            sendMessage("ERROR:Exception handling command:" + command);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * How long the reader should leave this connection alone after the
+     * line it just handled, in nanoseconds: nonzero once the client sends
+     * faster than the connection-wide rate limit allows.
+     */
+    long takeReadPause() {
+        long pause = readPauseNanos;
+        readPauseNanos = 0;
+        return pause;
     }
 
     /**
@@ -147,22 +383,25 @@ public class ClientHandler implements Runnable {
      * Handle the initial connection handshake.
      * 
      * Steps:
-     * 1. Generate a unique player ID (use "p" + System.currentTimeMillis())
+     * 1. Generate a unique player ID ("p" + a clock-seeded counter)
      * 2. Store the player name from the data parameter
      * 3. Register this client with the lobby manager
-     * 4. Send a "CONNECTED:playerId" message back to the client
+     * 4. Send a "CONNECTED:playerId" message back to the client, then
+     *    "SESSION_TOKEN:token" for resuming later (see handleResume)
      * 
      * @param playerName The name provided by the connecting client
      */
     private void handleConnect(String name) {
         // Generate unique player ID
         this.playerName = (name == null || name.isEmpty()) ? ("Player" + System.currentTimeMillis()) : name.trim();
-        this.playerId = "p" + System.currentTimeMillis();
+        this.playerId = "p" + NEXT_PLAYER_ID.incrementAndGet() + playerIdSuffix;
+        this.sessionToken = newSessionToken();
 
         // Store player name and add player to lobby with CONNECTED response
         try {
             lobby.addPlayer(playerId, playerName, this);
             sendMessage("CONNECTED:" + playerId);
+            sendMessage("SESSION_TOKEN:" + sessionToken);
             System.out.println("ClientHandler - Player connected: " + playerName + " (" + playerId + ")");
         } catch (Exception e) {
             sendMessage("ERROR:Failed to register player");
@@ -170,17 +409,110 @@ public class ClientHandler implements Runnable {
         }
     }
     
+    private static String newSessionToken() {
+        byte[] bytes = new byte[16];
+        TOKENS.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Reclaims a seat held since a standby takeover or a server restart;
+     * used instead of CONNECT. The reply is CONNECTED, then GAME_JOINED and
+     * the current TURN_UPDATE for the player's game.
+     * 
+     * Data format: "token" from the player's original SESSION_TOKEN
+     */
+    private void handleResume(String token) {
+        if (playerId != null) {
+            sendMessage("ERROR:Already connected");
+            return;
+        }
+        ClientHandler held = lobby.takeHeldSeat(token.trim());
+        if (held == null) {
+            sendMessage("ERROR:Nothing to resume");
+            return;
+        }
+        playerId = held.getPlayerId();
+        playerName = held.getPlayerName();
+        sessionToken = held.getSessionToken();
+        if (!lobby.resumePlayer(held, this)) {
+            // the seat was given up just now
+            playerId = null;
+            sendMessage("ERROR:Nothing to resume");
+            return;
+        }
+        System.out.println("ClientHandler - Player resumed: " + playerName + " (" + playerId + ")");
+    }
+    
     /**
      * TODO 4: Game List Handler (15 minutes)
      * 
      * Send the current list of available games to the client.
      * 
+     * Data format: "", "version" (the last lobby version the client saw,
+     * one number per shard joined with '.'),
+     * or "?query" for a filtered page (see GameQuery)
+     * 
      * Steps:
-     * 1. Get the game list JSON from the lobby manager
-     * 2. Send it to the client with format "GAME_LIST:jsonData"
+     * 1. Get the current lobby snapshot from the lobby manager
+     * 2. If the client sent a version and it is still current, answer "NOT_MODIFIED:version"
+     * 3. Otherwise send its cached "GAME_LIST:jsonData" message to the client
+     *    (clients that track versions get "GAME_LIST:version:jsonData")
+     * 4. A paged delta subscriber gets "LOBBY_VERSION:version" instead and
+     *    reloads its pages, so it is never sent the whole lobby at once
      */
-    private void handleGetGames() {
-        sendMessage("GAME_LIST:" + lobby.getGameListJson());
+    private void handleGetGames(String data) {
+        if (data.startsWith("?")) {
+            try {
+                sendMessage(lobby.queryGames(GameQuery.parse(data.substring(1))));
+            } catch (IllegalArgumentException e) {
+                sendMessage("ERROR:Invalid GET_GAMES query");
+            }
+            return;
+        }
+        String knownVersion = data.trim().isEmpty() ? null : data.trim();
+        if (knownVersion != null && !LobbySnapshot.isVersion(knownVersion)) {
+            sendMessage("ERROR:Invalid GET_GAMES version");
+            return;
+        }
+        LobbySnapshot current = lobby.getSnapshot();
+        if (knownVersion != null && current.getVersion().equals(knownVersion)) {
+            send(current.getNotModifiedMessage());
+        } else if (lobby.isPagedSubscriber(this)) {
+            sendMessage("LOBBY_VERSION:" + current.getVersion());
+        } else if (lobby.isDeltaSubscriber(this)) {
+            lobby.sendVersionedGameList(this);
+        } else if (knownVersion != null) {
+            send(current.getVersionedGameListMessage());
+        } else {
+            send(current.getGameListMessage());
+        }
+    }
+
+    /**
+     * Switches lobby updates between full lists and deltas.
+     * 
+     * Data format: "DELTA", "DELTA_PAGED" (deltas without the baseline list) or "FULL"
+     */
+    private void handleLobbyMode(String mode) {
+        if (playerId == null) {
+            sendMessage("ERROR:Not connected");
+            return;
+        }
+        switch (mode.trim().toUpperCase()) {
+            case "DELTA":
+                lobby.subscribeToDeltas(this, true);
+                break;
+            case "DELTA_PAGED":
+                lobby.subscribeToDeltas(this, false);
+                break;
+            case "FULL":
+                lobby.unsubscribeFromDeltas(this);
+                send(lobby.getSnapshot().getGameListMessage());
+                break;
+            default:
+                sendMessage("ERROR:Invalid LOBBY_MODE");
+        }
     }
 
     /**
@@ -194,9 +526,10 @@ public class ClientHandler implements Runnable {
      * Steps:
      * 1. Split the data by ':' to extract gameName and requiredPlayers
      * 2. Parse requiredPlayers as an integer
-     * 3. Call lobby.createGame() with the parsed parameters
-     * 4. Send "GAME_CREATED:gameId" back to the client
-     * 5. If any error occurs, send "ERROR:Failed to create game"
+     * 3. Create it through the lobby, or the cluster when there is one
+     * 4. If AdmissionControl refuses, send "BUSY:reason" instead
+     * 5. Send "GAME_CREATED:gameId" back to the client
+     * 6. If any error occurs, send "ERROR:Failed to create game"
      */
     private void handleCreateGame(String data) {
         // Parsing game name and required players, creating game through lobby manager with response
@@ -208,10 +541,19 @@ public class ClientHandler implements Runnable {
             String[] parts = data.split(":", 2);
             String gameName = parts[0].trim();
             int requiredPlayers = Integer.parseInt(parts[1].trim());
-
-            String gameId = lobby.createGame(gameName, requiredPlayers, playerId);
+            ClusterNode cluster = lobby.getCluster();
+            if (cluster != null) {
+                // answered by the cluster once the game's host has it
+                cluster.createGame(this, gameName, requiredPlayers);
+                return;
+            }
+            String gameId = GameLobbyManager.newGameId();
+            String busy = lobby.createGameWithId(gameId, gameName, requiredPlayers, playerId);
+            if (busy != null) {
+                sendMessage("BUSY:" + busy);
+                return;
+            }
             sendMessage("GAME_CREATED:" + gameId);
-            lobby.broadcastToLobby("GAME_LIST:" + lobby.getGameListJson());
         } catch (NumberFormatException e) {
             sendMessage("ERROR:Invalid player count");
         } catch (Exception e) {
@@ -234,29 +576,124 @@ public class ClientHandler implements Runnable {
      *    b. Get the list of player names in the game
      *    c. Send "GAME_JOINED:gameId:playersList" to this client
      *    d. Broadcast "PLAYER_JOINED:gameId:playerName" to other players
-     *    e. Check if the game can start (session.canStart())
-     *    f. If yes, call session.startGame()
+     *    e. Start the game if that filled it (session.startIfReady())
      * 3. If join fails, send "ERROR:Failed to join game"
      */
     private void handleJoinGame(String gameId) {
         // Attempting to join the game and sending appropriate message
         try {
-            if (!lobby.joinGame(gameId, playerId)) {
-                sendMessage("ERROR:Failed to join game");
+            if (lobby.getPlayerGame(playerId) != null) {
+                sendMessage("ERROR:Already in a game");
                 return;
             }
-            GameSession session = lobby.getSession(gameId);
-            if (session == null) {
-                sendMessage("ERROR:Session not found");
+            lobby.joinGame(gameId, playerId, joined -> {
+                if (joined) {
+                    announceJoin(gameId);
+                } else {
+                    sendMessage("ERROR:Failed to join game");
+                }
+            });
+        } catch (Exception e) {
+            sendMessage("ERROR:Failed to join game");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Steps 2a-2e of a join, once the player holds a seat in gameId. Runs
+     * from the join's callback, on the session's loop when it has one.
+     * Also used by the matchmaker after seating a matched player.
+     */
+    void announceJoin(String gameId) {
+        GameSession session = lobby.getSession(gameId);
+        if (session == null) {
+            sendMessage("ERROR:Session not found");
+            return;
+        }
+        sendMessage("GAME_JOINED:" + gameId + ":" + String.join(",", session.getPlayerNames()));
+        session.broadcast("PLAYER_JOINED:" + gameId + ":" + playerName, playerId);
+        session.startIfReady();
+    }
+
+    /**
+     * Handle a matchmaking request. The reply is QUEUED:mode:players:rating;
+     * GAME_JOINED follows once the matchmaker has found a game.
+     * 
+     * Data format: "requiredPlayers[:mode]", mode defaults to "ranked"
+     */
+    private void handleQueue(String data) {
+        if (playerId == null) {
+            sendMessage("ERROR:Not connected");
+            return;
+        }
+        String[] parts = data.split(":", 2);
+        String mode = parts.length > 1 ? parts[1].trim().toLowerCase() : "ranked";
+        int requiredPlayers;
+        try {
+            requiredPlayers = Integer.parseInt(parts[0].trim());
+        } catch (NumberFormatException e) {
+            sendMessage("ERROR:Invalid player count");
+            return;
+        }
+        if (requiredPlayers < 1 || requiredPlayers > 8) {
+            sendMessage("ERROR:Invalid player count");
+            return;
+        }
+        if (!mode.matches("[a-z]{1,16}")) {
+            sendMessage("ERROR:Invalid queue mode");
+            return;
+        }
+        if (lobby.getPlayerGame(playerId) != null) {
+            sendMessage("ERROR:Already in a game");
+            return;
+        }
+        MatchmakingQueue matchmaking = lobby.getMatchmaking();
+        if (!matchmaking.enqueue(playerId, mode, requiredPlayers)) {
+            sendMessage("ERROR:Already queued");
+            return;
+        }
+        sendMessage("QUEUED:" + mode + ":" + requiredPlayers + ":" + matchmaking.getRating(playerId));
+    }
+
+    private void handleLeaveQueue() {
+        if (lobby.getMatchmaking().cancel(playerId)) {
+            sendMessage("QUEUE_LEFT:");
+        } else {
+            sendMessage("ERROR:Not queued");
+        }
+    }
+
+    /**
+     * Handle a quick-join request: the lobby picks (or creates) an open game.
+     * 
+     * Data format: "requiredPlayers" (1-8)
+     */
+    private void handleQuickJoin(String data) {
+        if (playerId == null) {
+            sendMessage("ERROR:Not connected");
+            return;
+        }
+        try {
+            int requiredPlayers = Integer.parseInt(data.trim());
+            if (requiredPlayers < 1 || requiredPlayers > 8) {
+                sendMessage("ERROR:Invalid player count");
                 return;
             }
-            sendMessage("GAME_JOINED:" + gameId + ":" + String.join(",", session.getPlayerNames()));
-            session.broadcast("PLAYER_JOINED:" + gameId + ":" + playerName, playerId);
-
-            if (session.canStart()) {
-                session.startGame();
-                lobby.broadcastToLobby("GAME_LIST:" + lobby.getGameListJson());
+            if (lobby.getPlayerGame(playerId) != null) {
+                sendMessage("ERROR:Already in a game");
+                return;
             }
+            lobby.quickJoin(playerId, requiredPlayers, gameId -> {
+                if (gameId == null) {
+                    // no open game, and admission control may have refused a new one
+                    String busy = lobby.getAdmission().sessionRefusal(playerId);
+                    sendMessage(busy != null ? "BUSY:" + busy : "ERROR:Failed to join game");
+                    return;
+                }
+                announceJoin(gameId);
+            });
+        } catch (NumberFormatException e) {
+            sendMessage("ERROR:Invalid player count");
         } catch (Exception e) {
             sendMessage("ERROR:Failed to join game");
             e.printStackTrace();
@@ -279,10 +716,12 @@ public class ClientHandler implements Runnable {
         try {
             GameSession session = lobby.getSession(gameId);
             if (session != null) {
-                session.removePlayer(playerId);
+                lobby.leaveGame(session, playerId);
                 session.broadcast("PLAYER_LEFT:" + gameId + ":" + playerName, playerId);
-                lobby.broadcastToLobby("GAME_LIST:" + lobby.getGameListJson());
-            } else sendMessage("ERROR:Session not found");
+            } else if (lobby.getArchive().get(gameId) == null) {
+                // a finished game has already gone; leaving it is a no-op
+                sendMessage("ERROR:Session not found");
+            }
         } catch (Exception e) {
             sendMessage("ERROR:Failed to leave game");
             e.printStackTrace();
@@ -353,6 +792,42 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    /**
+     * Streams a finished game back to this client.
+     * 
+     * Data format: "gameId" or "gameId:speed", where speed 2 plays it twice
+     * as fast as it was played (default 1)
+     */
+    private void handleReplay(String data) {
+        String[] parts = data.split(":", 2);
+        double speed;
+        try {
+            speed = parts.length > 1 ? Double.parseDouble(parts[1]) : 1;
+        } catch (NumberFormatException e) {
+            sendMessage("ERROR:Invalid REPLAY format");
+            return;
+        }
+        String error = lobby.getReplays().start(this, parts[0].trim(), speed);
+        if (error != null) {
+            sendMessage("ERROR:" + error);
+        }
+    }
+
+    /**
+     * Sends the result of a finished game as "GAME_RESULT:json" (see
+     * GameHistory.toJson).
+     * 
+     * Data format: "gameId"
+     */
+    private void handleResult(String gameId) {
+        GameHistory result = lobby.getArchive().get(gameId.trim());
+        if (result == null) {
+            sendMessage("ERROR:No result for " + gameId.trim());
+            return;
+        }
+        sendMessage("GAME_RESULT:" + result.toJson());
+    }
+
     /**
      * Handles the initial HELLO message (version check)
      */
@@ -373,12 +848,21 @@ public class ClientHandler implements Runnable {
      * 5. Close the socket
      * 6. Wrap each close operation in a try-catch to handle potential IOExceptions
      */
-    private void cleanup() {
-        // stop the running loop
+    void cleanup() {
+        // stop the running loop and the writer
         running = false;
+        if (outbound != null) outbound.close();
+        TimingWheel.Timeout idle = idleTimer;
+        if (idle != null) idle.cancel();
+        TimingWheel.Timeout heartbeat = heartbeatTimer;
+        if (heartbeat != null) heartbeat.cancel();
+        lobby.getReplays().cancel(this);
+        if (socket != null || connection != null) lobby.getAdmission().connectionClosed();
         // removing player from lobby
         try {
             if (playerId != null) lobby.removePlayer(playerId);
+            ClusterNode cluster = lobby.getCluster();
+            if (playerId != null && cluster != null) cluster.playerDisconnected(playerId);
         } catch (Exception e) {
             System.err.println("Cleanup - Error removing player: " + e.getMessage());
         }
@@ -398,6 +882,7 @@ public class ClientHandler implements Runnable {
         } catch (IOException e) {
             System.err.println("Cleanup - Error closing socket: " + e.getMessage());
         }
+        if (connection != null) connection.close();
         System.out.println("ClientHandler - Disconnected " + playerName + " (" + playerId + ")");
 }
 
@@ -406,11 +891,180 @@ public class ClientHandler implements Runnable {
      * Sends a message to this client
      */
     public void sendMessage(String message) {
-        if (out != null) 
-            out.println(message);
+        send(EncodedMessage.of(message));
+    }
+
+    /**
+     * Sends a lobby update (e.g. GAME_LIST) that may be dropped in favour of a
+     * newer one if this client falls behind.
+     */
+    public void sendLobbyUpdate(String message) {
+        send(EncodedMessage.lobbyUpdate(message));
+    }
+
+    /**
+     * Queues an already encoded message; broadcasts share one instance
+     * across all recipients.
+     */
+    public void send(EncodedMessage message) {
+        if (relayLink != null) {
+            relayLink.send("DELIVER:" + playerId + ":" + message.line());
+        } else if (connection != null) {
+            connection.send(message);
+        } else if (outbound == null) {
+            // a held seat; the player gets the current state on RESUME
+        } else if (!outbound.offer(message)) {
+            System.err.println("ClientHandler - Slow consumer, disconnecting " + playerName + " (" + playerId + ")");
+            // the sender may be broadcasting under a session lock, so only close the
+            // socket here and let the reader thread do the lobby cleanup
+            closeSocket();
+        }
+    }
+
+    /**
+     * Disconnects this client once it has sent nothing for timeoutMillis;
+     * 0 never does. Checked on the lobby's TimingWheel, one timer per
+     * connection: reading a line only records the time, and the timer
+     * re-arms itself for whatever is left when it finds recent activity.
+     */
+    void watchIdle(long timeoutMillis) {
+        if (timeoutMillis > 0) {
+            scheduleIdleCheck(timeoutMillis, timeoutMillis);
+        }
+    }
+
+    private void scheduleIdleCheck(long delayMillis, long timeoutMillis) {
+        idleTimer = lobby.getTimers().schedule(delayMillis, () -> checkIdle(timeoutMillis));
+    }
+
+    private void checkIdle(long timeoutMillis) {
+        if (!running) return;
+        long idleMillis = (System.nanoTime() - lastReadNanos) / 1_000_000;
+        if (idleMillis < timeoutMillis) {
+            scheduleIdleCheck(timeoutMillis - idleMillis, timeoutMillis);
+            return;
+        }
+        System.out.println("ClientHandler - Closing idle connection " + playerName + " (" + playerId + ")");
+        close();
+    }
+
+    /**
+     * Sends PING:n every intervalMillis and disconnects the client once
+     * misses PINGs in a row have gone unanswered. A half-open connection
+     * (the client vanished without a FIN, e.g. behind a NAT or a dropped
+     * Wi-Fi link) never fails a read, so this is what frees its seat.
+     * Any line from the client counts as an answer; a PONG:n echoing the
+     * latest PING also measures the round trip. Runs on the lobby's
+     * TimingWheel like the idle check.
+     */
+    void startHeartbeat(long intervalMillis, int misses) {
+        if (intervalMillis > 0) {
+            heartbeatTimer = lobby.getTimers().schedule(intervalMillis, () -> heartbeat(intervalMillis, misses));
+        }
+    }
+
+    private void heartbeat(long intervalMillis, int misses) {
+        if (!running) return;
+        int unanswered = unansweredPings;
+        if (unanswered >= misses) {
+            System.out.println("ClientHandler - No heartbeat from " + playerName + " (" + playerId + ") after "
+                               + unanswered + " pings, disconnecting");
+            close();
+            return;
+        }
+        unansweredPings = unanswered + 1;
+        long micros = (System.nanoTime() - connectedNanos) / 1000;
+        pingMicros = micros;
+        sendMessage("PING:" + micros);
+        heartbeatTimer = lobby.getTimers().schedule(intervalMillis, () -> heartbeat(intervalMillis, misses));
+    }
+
+    private void handlePong(String data) {
+        long micros;
+        try {
+            micros = Long.parseLong(data.trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        // only the latest PING is timed; a late answer to an older one is just a sign of life
+        if (micros != pingMicros) return;
+        long rtt = (System.nanoTime() - connectedNanos) / 1000 - micros;
+        lastRttMicros = rtt;
+        long smoothed = smoothedRttMicros;
+        // weighted like TCP's SRTT, 1/8 per sample
+        smoothedRttMicros = smoothed < 0 ? rtt : smoothed + (rtt - smoothed) / 8;
+        lobby.getRoundTripMillis().record(rtt / 1000);
+    }
+
+    /**
+     * Drops the connection from any thread; cleanup() then runs where it
+     * always does, on the reader thread or the connection's loop.
+     */
+    private void close() {
+        if (connection != null) {
+            connection.closeLater();
+        } else {
+            // the reader thread sees the closed socket and runs cleanup()
+            closeSocket();
+        }
+    }
+
+    private void closeSocket() {
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            System.err.println("ClientHandler - Error closing socket: " + e.getMessage());
+        }
+    }
+
+    public int getOutboundQueueDepth() {
+        if (relayLink != null) return relayLink.getQueueDepth();
+        if (connection != null) return connection.getOutboundQueueDepth();
+        return outbound != null ? outbound.size() : 0;
+    }
+
+    /**
+     * True for a player connected to another cluster node.
+     */
+    public boolean isRelay() {
+        return relayLink != null;
+    }
+
+    /**
+     * True for a seat held for a player who has not resumed yet.
+     */
+    public boolean isDetached() {
+        return socket == null && connection == null && relayLink == null;
+    }
+
+    /**
+     * The link to a relayed player's node, or null for a local player.
+     */
+    PeerLink getRelayLink() {
+        return relayLink;
+    }
+
+    /**
+     * Round trip of the last answered PING in milliseconds, or -1 if none
+     * has been answered yet.
+     */
+    public double getLastRttMillis() {
+        long rtt = lastRttMicros;
+        return rtt < 0 ? -1 : rtt / 1000.0;
+    }
+
+    /**
+     * Smoothed round trip in milliseconds, or -1 if no PING has been
+     * answered yet.
+     */
+    public double getRttMillis() {
+        long rtt = smoothedRttMicros;
+        return rtt < 0 ? -1 : rtt / 1000.0;
     }
 
     // Getters
+    boolean isRunning() { return running; }
     public String getPlayerId() { return playerId; }
     public String getPlayerName() { return playerName; }
+    public String getSessionToken() { return sessionToken; }
 }
\ No newline at end of file
@@ -0,0 +1,583 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ClusterNode
+ *
+ * Joins this server to a cluster of MastermindServer processes:
+ *
+ *   java MastermindServer 8080 --node=a --cluster=a=127.0.0.1:7001,b=127.0.0.1:7002
+ *
+ * Every node gets the same --cluster list (node ID = peer host:port) and
+ * opens one PeerLink to each other node: a node dials the peers whose ID
+ * sorts before its own and accepts the rest, retrying until they are up.
+ * The peer port listens on this node's own host from the list only.
+ *
+ * Every node also gets the same --cluster-secret (see SharedSecret). A
+ * link is only used once both ends have proven they know it: the
+ * accepting node sends CHALLENGE, the dialing node answers with PEER and
+ * its own challenge, and the accepting node answers that with PEER_OK.
+ * Anything else before then, or no handshake within HANDSHAKE_MILLIS,
+ * closes the link.
+ *
+ * New games are placed on nodes by consistent hashing of the game ID (see
+ * HashRing). Every node tells its peers about its own games, so each lobby
+ * lists the whole cluster. A player may join a game on another node: their
+ * node opens a relay for them there and forwards the player's game
+ * commands; the host node runs the game with a relay ClientHandler that
+ * sends everything back over the link.
+ *
+ * Peer protocol:
+ *   CHALLENGE:challenge                  handshake from the accepting node
+ *   PEER:nodeId:challenge:answer         the dialing node's answer, and its own challenge
+ *   PEER_OK:answer                       the accepting node's answer
+ *   GAME:id:players:maxPlayers:status:name  a game on the sender was added or changed
+ *   GAME_GONE:id                         a game on the sender was removed
+ *   CREATE:id:requiredPlayers:name       create this game here
+ *   CREATED:id                           the receiver's CREATE succeeded
+ *   CREATE_REFUSED:id:reason             AdmissionControl refused the receiver's CREATE
+ *   RELAY_OPEN:playerId:playerName       a remote player will use games here
+ *   RELAY:playerId:line                  a client line from that player
+ *   RELAY_CLOSE:playerId                 the player disconnected
+ *   DELIVER:playerId:line                a server line for one of the receiver's players
+ *   MIGRATE:snapshot:playerId=node,...   take over a running game; snapshot is a
+ *                                        Base64 SessionSnapshot, node is each player's home
+ *   RELAYED:playerId                     the sender opened a relay for this player itself
+ *   DRAINING                             place no new games on the sender
+ *
+ * Moving a game (migrate, or drain for every game) freezes the session,
+ * ships its snapshot and drops it here. The new host restores it, relays
+ * its remote players back to their home nodes and announces the game, so
+ * players keep their connections and their commands follow the game.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ClusterNode {
+    private static final long DIAL_INTERVAL_MILLIS = 2000;
+    private static final int HANDSHAKE_MILLIS = 5000;
+
+    private final String nodeId;
+    private final InetSocketAddress listenAddress;
+    private final Map<String, InetSocketAddress> peers;
+    private final GameLobbyManager lobby;
+    private final SharedSecret secret;
+    private final HashRing ring = new HashRing();
+    private final ConcurrentHashMap<String, PeerLink> links = new ConcurrentHashMap<>();
+    // links this node dialed that are still in their handshake
+    private final ConcurrentHashMap<String, PeerLink> dialing = new ConcurrentHashMap<>();
+    // host node of every game that lives elsewhere
+    private final ConcurrentHashMap<String, String> remoteGames = new ConcurrentHashMap<>();
+    // nodes where each local player has a relay open
+    private final ConcurrentHashMap<String, Set<String>> relays = new ConcurrentHashMap<>();
+    // creator of each game sent to its host with CREATE and not yet answered
+    private final ConcurrentHashMap<String, String> pendingCreates = new ConcurrentHashMap<>();
+    private ServerSocket peerSocket;
+    private volatile boolean running = true;
+
+    public ClusterNode(String nodeId, Map<String, InetSocketAddress> members, GameLobbyManager lobby,
+                       SharedSecret secret) {
+        if (!members.containsKey(nodeId)) {
+            throw new IllegalArgumentException("Node " + nodeId + " is not in the cluster list");
+        }
+        if (secret == null) {
+            throw new IllegalArgumentException("--cluster-secret or --cluster-secret-file is required");
+        }
+        this.secret = secret;
+        this.nodeId = nodeId;
+        this.listenAddress = members.get(nodeId);
+        this.peers = new TreeMap<>(members);
+        this.peers.remove(nodeId);
+        this.lobby = lobby;
+        ring.add(nodeId);
+    }
+
+    /**
+     * Parses "a=host:port,b=host:port".
+     *
+     * @throws IllegalArgumentException if an entry is malformed
+     */
+    public static Map<String, InetSocketAddress> parseMembers(String spec) {
+        Map<String, InetSocketAddress> members = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            String[] idAndAddress = entry.trim().split("=", 2);
+            int colon = idAndAddress.length == 2 ? idAndAddress[1].lastIndexOf(':') : -1;
+            if (colon == -1 || idAndAddress[0].isEmpty()) {
+                throw new IllegalArgumentException("Bad cluster member: " + entry);
+            }
+            String host = idAndAddress[1].substring(0, colon);
+            int port = Integer.parseInt(idAndAddress[1].substring(colon + 1));
+            members.put(idAndAddress[0], new InetSocketAddress(host, port));
+        }
+        return members;
+    }
+
+    /**
+     * Starts accepting peer links and dialing the peers this node is
+     * responsible for connecting to.
+     */
+    public void start() throws IOException {
+        if (listenAddress.isUnresolved()) {
+            throw new IOException("Cannot resolve " + listenAddress.getHostString());
+        }
+        peerSocket = new ServerSocket();
+        peerSocket.bind(listenAddress);
+        startThread("ClusterAccept-" + nodeId, this::acceptLoop);
+        startThread("ClusterDial-" + nodeId, this::dialLoop);
+        System.out.println("ClusterNode " + nodeId + ": peer port " + listenAddress + ", peers " + peers.keySet());
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = peerSocket.accept();
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(HANDSHAKE_MILLIS);
+                // the node ID arrives with the PEER handshake
+                PeerLink link = new PeerLink(this, socket, null);
+                link.setChallenge(SharedSecret.newChallenge());
+                link.send("CHALLENGE:" + link.getChallenge());
+                link.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("ClusterNode - Error accepting peer: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void dialLoop() {
+        while (running) {
+            for (Map.Entry<String, InetSocketAddress> peer : peers.entrySet()) {
+                if (peer.getKey().compareTo(nodeId) >= 0 || links.containsKey(peer.getKey())
+                    || dialing.containsKey(peer.getKey())) continue;
+                try {
+                    Socket socket = new Socket();
+                    socket.connect(peer.getValue(), (int) DIAL_INTERVAL_MILLIS);
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(HANDSHAKE_MILLIS);
+                    // up once the peer's CHALLENGE and PEER_OK have come back
+                    PeerLink link = new PeerLink(this, socket, peer.getKey());
+                    link.setChallenge(SharedSecret.newChallenge());
+                    dialing.put(peer.getKey(), link);
+                    link.start();
+                } catch (IOException e) {
+                    // not up yet; try again next round
+                }
+            }
+            try {
+                Thread.sleep(DIAL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registers a link, adds the peer to the ring and sends it our games.
+     */
+    private void onLinkUp(PeerLink link) {
+        String peer = link.getRemoteNodeId();
+        if (links.putIfAbsent(peer, link) != null) {
+            System.err.println("ClusterNode - Duplicate link from " + peer + ", closing it");
+            link.close();
+            return;
+        }
+        ring.add(peer);
+        lobby.forEachGame(summary -> {
+            if (!remoteGames.containsKey(summary.getId())) {
+                link.send(gameLine(summary));
+            }
+        });
+        System.out.println("ClusterNode " + nodeId + ": linked to " + peer + ", ring " + ring.getNodes());
+    }
+
+    /**
+     * Forgets a dead peer: its games leave the lobby, its relayed players
+     * leave their games and our players in its games are told.
+     */
+    void onLinkClosed(PeerLink link) {
+        String peer = link.getRemoteNodeId();
+        if (peer != null) dialing.remove(peer, link);
+        if (peer == null || !links.remove(peer, link)) return;
+        ring.remove(peer);
+        for (Map.Entry<String, String> game : remoteGames.entrySet()) {
+            if (game.getValue().equals(peer) && remoteGames.remove(game.getKey(), peer)) {
+                lobby.remoteGameRemoved(game.getKey());
+                createAnswered(game.getKey(), "BUSY:Game server unavailable, try again later");
+            }
+        }
+        for (String playerId : link.getRelayed().keySet()) {
+            lobby.removePlayer(playerId);
+        }
+        for (Map.Entry<String, Set<String>> relay : relays.entrySet()) {
+            if (relay.getValue().remove(peer)) {
+                ClientHandler handler = lobby.getPlayer(relay.getKey());
+                if (handler != null) {
+                    handler.sendMessage("ERROR:Lost connection to game host");
+                }
+            }
+        }
+        System.out.println("ClusterNode " + nodeId + ": lost " + peer + ", ring " + ring.getNodes());
+    }
+
+    // client side
+
+    /**
+     * Forwards a client command to the node hosting its game, opening a
+     * relay there first if needed.
+     *
+     * @return true if the command was forwarded (or answered with an error)
+     *         and must not be handled locally
+     */
+    public boolean route(ClientHandler handler, String command, String data, String line) {
+        if (handler.isRelay() || handler.getPlayerId() == null) return false;
+        switch (command) {
+            case "JOIN_GAME":
+            case "LEAVE_GAME":
+            case "GUESS":
+            case "CHAT":
+                break;
+            default:
+                return false;
+        }
+        String gameId = data.split(":", 2)[0].trim();
+        String host = remoteGames.get(gameId);
+        if (host == null || lobby.getSession(gameId) != null) return false;
+        if (command.equals("JOIN_GAME") && lobby.getPlayerGame(handler.getPlayerId()) != null) {
+            handler.sendMessage("ERROR:Already in a game");
+            return true;
+        }
+        PeerLink link = links.get(host);
+        if (link == null) {
+            handler.sendMessage("ERROR:Game server unavailable");
+            return true;
+        }
+        String playerId = handler.getPlayerId();
+        if (relays.computeIfAbsent(playerId, p -> ConcurrentHashMap.newKeySet()).add(host)) {
+            link.send("RELAY_OPEN:" + playerId + ":" + handler.getPlayerName());
+        }
+        link.send("RELAY:" + playerId + ":" + line);
+        return true;
+    }
+
+    /**
+     * Creates a game for creator on the node the ring assigns its ID to,
+     * or here if that node is unreachable, and answers the creator with
+     * GAME_CREATED or BUSY. The creator's own game cap is reserved here;
+     * the host checks its game cap and load when CREATE arrives, and the
+     * answer waits for its reply.
+     */
+    public void createGame(ClientHandler creator, String gameName, int requiredPlayers) {
+        String gameId = GameLobbyManager.newGameId();
+        String host = ring.nodeFor(gameId);
+        PeerLink link = host == null ? null : links.get(host);
+        if (host == null || host.equals(nodeId) || link == null) {
+            String busy = lobby.createGameWithId(gameId, gameName, requiredPlayers, creator.getPlayerId());
+            creator.sendMessage(busy != null ? "BUSY:" + busy : "GAME_CREATED:" + gameId);
+            return;
+        }
+        String busy = lobby.getAdmission().reserveSession(gameId, creator.getPlayerId(), false);
+        if (busy != null) {
+            creator.sendMessage("BUSY:" + busy);
+            return;
+        }
+        // known before the host confirms, so an immediate join is routed there
+        pendingCreates.put(gameId, creator.getPlayerId());
+        remoteGames.put(gameId, host);
+        link.send("CREATE:" + gameId + ":" + requiredPlayers + ":" + gameName);
+        if (links.get(host) != link && remoteGames.remove(gameId, host)) {
+            // the link went down before onLinkClosed could see this game
+            createAnswered(gameId, "BUSY:Game server unavailable, try again later");
+        }
+    }
+
+    /**
+     * Passes the host's answer to a pending CREATE on to its creator. A
+     * refused game gives its creator's slot back.
+     */
+    private void createAnswered(String gameId, String reply) {
+        String creatorId = pendingCreates.remove(gameId);
+        if (creatorId == null) return;
+        if (!reply.startsWith("GAME_CREATED:")) {
+            lobby.getAdmission().sessionRemoved(gameId);
+        }
+        ClientHandler creator = lobby.getPlayer(creatorId);
+        if (creator != null) {
+            creator.sendMessage(reply);
+        }
+    }
+
+    /**
+     * Closes the player's relays on other nodes.
+     */
+    public void playerDisconnected(String playerId) {
+        Set<String> hosts = relays.remove(playerId);
+        if (hosts == null) return;
+        for (String host : hosts) {
+            PeerLink link = links.get(host);
+            if (link != null) {
+                link.send("RELAY_CLOSE:" + playerId);
+            }
+        }
+    }
+
+    // lobby side
+
+    /**
+     * Tells every peer about a change to one of our games. Called by the
+     * lobby under the game's listing lock, so peers see its changes in order.
+     *
+     * @param summary The game's new summary, or null if it was removed
+     */
+    void localGameChanged(String gameId, GameSummary summary) {
+        String line = summary != null ? gameLine(summary) : "GAME_GONE:" + gameId;
+        for (PeerLink link : links.values()) {
+            link.send(line);
+        }
+    }
+
+    public boolean isRemote(String gameId) {
+        return remoteGames.containsKey(gameId);
+    }
+
+    private static String gameLine(GameSummary summary) {
+        return "GAME:" + summary.getId() + ":" + summary.getPlayers() + ":" + summary.getMaxPlayers() + ":" +
+               summary.getStatus() + ":" + summary.getName();
+    }
+
+    // peer messages
+
+    /**
+     * One step of a link's handshake (see the class comment). The link
+     * goes up once the other end has answered this end's challenge.
+     */
+    private void handshake(PeerLink link, String command, String data) {
+        if (link.getRemoteNodeId() == null) {
+            // accepted: the dialing node answers our CHALLENGE
+            String[] fields = command.equals("PEER") ? data.split(":", 3) : null;
+            if (fields == null || fields.length != 3 || !peers.containsKey(fields[0])
+                || !secret.verify(link.getChallenge(), fields[0], fields[2])) {
+                rejectHandshake(link, command);
+                return;
+            }
+            link.setRemoteNodeId(fields[0]);
+            link.setAuthenticated();
+            link.send("PEER_OK:" + secret.answer(fields[1], nodeId));
+            onLinkUp(link);
+        } else if (command.equals("CHALLENGE") && !data.isEmpty()) {
+            // dialed: answer the accepting node and challenge it back
+            link.send("PEER:" + nodeId + ":" + link.getChallenge() + ":" + secret.answer(data, nodeId));
+        } else if (command.equals("PEER_OK") && secret.verify(link.getChallenge(), link.getRemoteNodeId(), data)) {
+            link.setAuthenticated();
+            dialing.remove(link.getRemoteNodeId(), link);
+            onLinkUp(link);
+        } else {
+            rejectHandshake(link, command);
+        }
+    }
+
+    private void rejectHandshake(PeerLink link, String command) {
+        System.err.println("ClusterNode - Rejecting peer handshake (" + command + ") from "
+                           + link.getRemoteAddress());
+        link.close();
+    }
+
+    void onPeerMessage(PeerLink link, String line) {
+        String[] parts = line.split(":", 2);
+        String command = parts[0];
+        String data = parts.length > 1 ? parts[1] : "";
+        try {
+            if (!link.isAuthenticated()) {
+                handshake(link, command, data);
+                return;
+            }
+            switch (command) {
+                case "GAME": {
+                    String[] fields = data.split(":", 5);
+                    GameSummary summary = new GameSummary(fields[0], fields[4], Integer.parseInt(fields[1]),
+                                                          Integer.parseInt(fields[2]), fields[3]);
+                    remoteGames.put(summary.getId(), link.getRemoteNodeId());
+                    lobby.remoteGameChanged(summary);
+                    break;
+                }
+                case "GAME_GONE":
+                    if (remoteGames.remove(data, link.getRemoteNodeId())) {
+                        lobby.remoteGameRemoved(data);
+                    }
+                    break;
+                case "CREATE": {
+                    String[] fields = data.split(":", 3);
+                    String busy = lobby.createGameWithId(fields[0], fields[2], Integer.parseInt(fields[1]), null);
+                    link.send(busy == null ? "CREATED:" + fields[0] : "CREATE_REFUSED:" + fields[0] + ":" + busy);
+                    break;
+                }
+                case "CREATED":
+                    createAnswered(data, "GAME_CREATED:" + data);
+                    break;
+                case "CREATE_REFUSED": {
+                    String[] fields = data.split(":", 2);
+                    remoteGames.remove(fields[0], link.getRemoteNodeId());
+                    createAnswered(fields[0], "BUSY:" + fields[1]);
+                    break;
+                }
+                case "RELAY_OPEN": {
+                    String[] fields = data.split(":", 2);
+                    openRelay(link, fields[0], fields[1]);
+                    break;
+                }
+                case "RELAY": {
+                    String[] fields = data.split(":", 2);
+                    ClientHandler relay = link.getRelayed().get(fields[0]);
+                    if (relay != null) {
+                        relay.handleLine(fields[1]);
+                    }
+                    break;
+                }
+                case "RELAY_CLOSE":
+                    if (link.getRelayed().remove(data) != null) {
+                        lobby.removePlayer(data);
+                    }
+                    break;
+                case "DELIVER": {
+                    String[] fields = data.split(":", 2);
+                    ClientHandler handler = lobby.getPlayer(fields[0]);
+                    if (handler != null) {
+                        handler.sendMessage(fields[1]);
+                    }
+                    break;
+                }
+                case "MIGRATE":
+                    restoreMigrated(data);
+                    break;
+                case "RELAYED":
+                    if (lobby.getPlayer(data) == null) {
+                        // left while the game was moving
+                        link.send("RELAY_CLOSE:" + data);
+                    } else {
+                        relays.computeIfAbsent(data, p -> ConcurrentHashMap.newKeySet()).add(link.getRemoteNodeId());
+                    }
+                    break;
+                case "DRAINING":
+                    ring.remove(link.getRemoteNodeId());
+                    System.out.println("ClusterNode " + nodeId + ": " + link.getRemoteNodeId() + " is draining");
+                    break;
+                default:
+                    System.err.println("ClusterNode - Unknown peer command: " + command);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("ClusterNode - Bad peer message \"" + line + "\": " + e);
+        }
+    }
+
+    /**
+     * Relay for a player of the link's node, reusing an existing one.
+     */
+    private ClientHandler openRelay(PeerLink link, String playerId, String playerName) {
+        return link.getRelayed().computeIfAbsent(playerId, id -> {
+            ClientHandler relay = new ClientHandler(link, id, playerName, lobby);
+            lobby.addPlayer(id, playerName, relay);
+            return relay;
+        });
+    }
+
+    // migration
+
+    /**
+     * Moves a game hosted here to another node.
+     *
+     * @return a short result for the operator
+     */
+    public String migrate(String gameId, String target) {
+        GameSession session = lobby.getSession(gameId);
+        if (session == null) return gameId + " is not hosted here";
+        PeerLink link = links.get(target);
+        if (link == null) return "no link to " + target;
+
+        SessionSnapshot state = session.freeze();
+        StringBuilder homes = new StringBuilder();
+        for (String playerId : state.getPlayerIds()) {
+            ClientHandler handler = lobby.getPlayer(playerId);
+            if (handler == null) continue; // already gone; the new host drops them
+            if (homes.length() > 0) homes.append(',');
+            homes.append(playerId).append('=')
+                 .append(handler.isRelay() ? handler.getRelayLink().getRemoteNodeId() : nodeId);
+        }
+        // route our players' commands to the new host from now on
+        remoteGames.put(gameId, target);
+        link.send("MIGRATE:" + Base64.getEncoder().encodeToString(state.encode()) + ":" + homes);
+        lobby.removeSession(gameId);
+        return gameId + " moved to " + target;
+    }
+
+    /**
+     * Moves every game hosted here to the node next in line for it on the
+     * ring, and asks the peers to place no new games here; run before
+     * restarting a node.
+     */
+    public void drain() {
+        ring.remove(nodeId);
+        for (PeerLink link : links.values()) {
+            link.send("DRAINING");
+        }
+        List<String> local = new ArrayList<>();
+        lobby.forEachGame(summary -> {
+            if (!remoteGames.containsKey(summary.getId())) local.add(summary.getId());
+        });
+        for (String gameId : local) {
+            String target = ring.nodeFor(gameId, nodeId);
+            System.out.println("ClusterNode " + nodeId + ": " +
+                               (target == null ? "nowhere to move " + gameId : migrate(gameId, target)));
+        }
+    }
+
+    private void restoreMigrated(String data) throws IOException {
+        String[] fields = data.split(":", 2);
+        SessionSnapshot state = SessionSnapshot.decode(Base64.getDecoder().decode(fields[0]));
+        // hosted here now; the old host's GAME_GONE must not unlist it
+        remoteGames.remove(state.getGameId());
+
+        Map<String, ClientHandler> handlers = new HashMap<>();
+        for (String entry : fields.length > 1 ? fields[1].split(",") : new String[0]) {
+            int eq = entry.indexOf('=');
+            if (eq == -1) continue;
+            String playerId = entry.substring(0, eq);
+            String home = entry.substring(eq + 1);
+            int index = state.getPlayerIds().indexOf(playerId);
+            if (index == -1) continue;
+            if (home.equals(nodeId)) {
+                ClientHandler handler = lobby.getPlayer(playerId);
+                if (handler != null && !handler.isRelay()) handlers.put(playerId, handler);
+                continue;
+            }
+            PeerLink homeLink = links.get(home);
+            if (homeLink != null) {
+                handlers.put(playerId, openRelay(homeLink, playerId, state.getPlayerNames().get(index)));
+                homeLink.send("RELAYED:" + playerId);
+            }
+        }
+        GameSession session = lobby.restoreSession(state, handlers);
+        System.out.println("ClusterNode " + nodeId + ": took over " + state.getGameId() +
+                           (session == null ? " (no players left)" : " with " + session.getPlayerCount() + " players"));
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (peerSocket != null) peerSocket.close();
+        } catch (IOException ignored) {}
+        for (PeerLink link : links.values()) {
+            link.close();
+        }
+    }
+
+    public String getNodeId() { return nodeId; }
+    public HashRing getRing() { return ring; }
+    public int getLinkCount() { return links.size(); }
+}
@@ -187,6 +187,9 @@ public class ConnectionPanel extends JPanel {
      *      a. Call showError("Connection error: " + data)
      *      b. Re-enable connect button
      *      c. Reset button text to "Connect"
+     *    
+     *    Case "BUSY" (the server turned the connection away):
+     *      Same as ERROR, with the server's reason
      * 
      * @param message The message from the server
      */
@@ -209,8 +212,9 @@ public class ConnectionPanel extends JPanel {
                 break;
             //handling error message
             case "ERROR":
+            case "BUSY":
                 SwingUtilities.invokeLater(() -> {
-                    showError("Connection error: " + data);
+                    showError((command.equals("BUSY") ? "Server busy: " : "Connection error: ") + data);
                     connectBtn.setEnabled(true);
                     connectBtn.setText("Connect");
                 });
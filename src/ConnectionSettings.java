@@ -0,0 +1,72 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ConnectionSettings
+ *
+ * Per-connection limits shared by every client the server accepts,
+ * read once from the command line.
+ */
+
+public class ConnectionSettings {
+    public final int outboundCapacity;
+    public final OutboundQueue.OverflowPolicy overflowPolicy;
+    // a client that sends nothing for this long is disconnected; 0 never
+    public final long idleTimeoutMillis;
+    // a PING goes out this often; 0 sends none
+    public final long heartbeatMillis;
+    // a client that answers none of this many PINGs in a row is dropped
+    public final int heartbeatMisses;
+    // one set of limits, with its counters, for every connection
+    public final RateLimits rateLimits;
+
+    public ConnectionSettings(int outboundCapacity, OutboundQueue.OverflowPolicy overflowPolicy,
+                              long idleTimeoutMillis, long heartbeatMillis, int heartbeatMisses,
+                              RateLimits rateLimits) {
+        this.outboundCapacity = outboundCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.heartbeatMillis = heartbeatMillis;
+        this.heartbeatMisses = Math.max(1, heartbeatMisses);
+        this.rateLimits = rateLimits;
+    }
+
+    public static ConnectionSettings defaults() {
+        return new ConnectionSettings(1024, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0, 0, 3,
+                                      RateLimits.defaults());
+    }
+
+    /**
+     * Reads --outbound-queue=N, --overflow=drop-oldest|disconnect,
+     * --idle-connection-secs=N, --heartbeat-secs=N, --heartbeat-misses=N
+     * and --rate-limits=COMMAND=rate/burst,... (which replace the default
+     * rules they name; "off" turns limiting off).
+     */
+    public static ConnectionSettings from(ServerOptions options) {
+        ConnectionSettings defaults = defaults();
+        OutboundQueue.OverflowPolicy policy = defaults.overflowPolicy;
+        String overflow = options.getString("overflow", null);
+        if (overflow != null) {
+            try {
+                policy = OutboundQueue.OverflowPolicy.parse(overflow);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown overflow policy: " + overflow + ". Using " + policy + ".");
+            }
+        }
+        RateLimits limits = defaults.rateLimits;
+        String rateLimits = options.getString("rate-limits", null);
+        if (rateLimits != null) {
+            try {
+                limits = rateLimits.trim().equalsIgnoreCase("off") ? RateLimits.parse("off")
+                         : RateLimits.parse(RateLimits.DEFAULTS + "," + rateLimits);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Bad rate limits: " + e.getMessage() + ". Using the defaults.");
+            }
+        }
+        return new ConnectionSettings(options.getInt("outbound-queue", defaults.outboundCapacity), policy,
+                                      options.getInt("idle-connection-secs", 0) * 1000L,
+                                      options.getInt("heartbeat-secs", (int) (defaults.heartbeatMillis / 1000)) * 1000L,
+                                      options.getInt("heartbeat-misses", defaults.heartbeatMisses), limits);
+    }
+
+    public OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(outboundCapacity, overflowPolicy);
+    }
+}
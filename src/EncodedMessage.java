@@ -0,0 +1,111 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * EncodedMessage
+ *
+ * A protocol line already encoded to bytes, terminator included.
+ *
+ * Broadcasts encode their message once and hand the same EncodedMessage to
+ * every recipient; connections write the shared bytes out directly, so a
+ * lobby update sent to N players costs one encoding, not N. The bytes are
+ * never modified after construction and are only exposed read-only.
+ *
+ * The static counters make the cost per broadcast observable: bytes
+ * encoded per broadcast should stay flat as the recipient count grows,
+ * while bytes written grow with it.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class EncodedMessage {
+    // matches what the client's InputStreamReader/readLine expects
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final byte[] LINE_END = System.lineSeparator().getBytes(CHARSET);
+
+    private static final LongAdder encodes = new LongAdder();
+    private static final LongAdder encodedBytes = new LongAdder();
+    private static final LongAdder broadcasts = new LongAdder();
+    private static final LongAdder deliveries = new LongAdder();
+    private static final LongAdder writtenBytes = new LongAdder();
+
+    private final byte[] bytes;
+    private final ByteBuffer readOnly;
+    private final boolean lobbyUpdate;
+
+    private EncodedMessage(String line, boolean lobbyUpdate) {
+        byte[] body = line.getBytes(CHARSET);
+        this.bytes = new byte[body.length + LINE_END.length];
+        System.arraycopy(body, 0, bytes, 0, body.length);
+        System.arraycopy(LINE_END, 0, bytes, body.length, LINE_END.length);
+        this.readOnly = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        this.lobbyUpdate = lobbyUpdate;
+        encodes.increment();
+        encodedBytes.add(bytes.length);
+    }
+
+    /**
+     * Encodes a regular protocol line.
+     */
+    public static EncodedMessage of(String line) {
+        return new EncodedMessage(line, false);
+    }
+
+    /**
+     * Encodes a lobby update (GAME_LIST etc.) that a slow client's outbound
+     * queue is allowed to drop in favour of a newer one.
+     */
+    public static EncodedMessage lobbyUpdate(String line) {
+        return new EncodedMessage(line, true);
+    }
+
+    /**
+     * A read-only view over the shared bytes with its own position, for
+     * channel writes. No bytes are copied.
+     */
+    public ByteBuffer buffer() {
+        return readOnly.duplicate();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    /**
+     * The line as text, without its terminator. Decodes the bytes again, so
+     * only for the rare paths that need text (cluster relays).
+     */
+    public String line() {
+        return new String(bytes, 0, bytes.length - LINE_END.length, CHARSET);
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    public boolean isLobbyUpdate() {
+        return lobbyUpdate;
+    }
+
+    /**
+     * Records one fan-out of an already encoded message.
+     */
+    public static void recordBroadcast(int recipients) {
+        broadcasts.increment();
+        deliveries.add(recipients);
+    }
+
+    /**
+     * Records bytes a connection handed to its socket.
+     */
+    public static void recordWrite(long bytes) {
+        writtenBytes.add(bytes);
+    }
+
+    // Counters
+    public static long getEncodeCount() { return encodes.sum(); }
+    public static long getEncodedBytes() { return encodedBytes.sum(); }
+    public static long getBroadcastCount() { return broadcasts.sum(); }
+    public static long getDeliveryCount() { return deliveries.sum(); }
+    public static long getWrittenBytes() { return writtenBytes.sum(); }
+}
@@ -0,0 +1,93 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameArchive
+ *
+ * Results of finished games. When a game ends its GameSession leaves the
+ * live lobby straight away and only its GameHistory is kept here, so the
+ * lobby, GET_GAMES and the live maps only ever hold games that can still
+ * be joined or played.
+ *
+ * The archive is bounded two ways: it holds at most maxGames results,
+ * and none older than maxAgeMillis. Results are kept in the order the
+ * games finished, so both limits evict from the oldest end; the age
+ * limit is applied whenever a result is added or looked up.
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class GameArchive {
+    public static final int DEFAULT_MAX_GAMES = 10_000;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 60 * 60_000;
+
+    private volatile int maxGames = DEFAULT_MAX_GAMES;
+    private volatile long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    // oldest first; guarded by lock
+    private final LinkedHashMap<String, GameHistory> games = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LongAdder archived = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * Sets the limits; results beyond them go on the next add or lookup.
+     */
+    public void setLimits(int maxGames, long maxAgeMillis) {
+        this.maxGames = maxGames;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public void add(GameHistory history) {
+        lock.lock();
+        try {
+            games.put(history.getGameId(), history);
+            archived.increment();
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The result of a finished game, or null if it was never archived or
+     * has been evicted.
+     */
+    public GameHistory get(String gameId) {
+        lock.lock();
+        try {
+            evict();
+            return games.get(gameId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // call with lock held
+    private void evict() {
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        Iterator<GameHistory> oldest = games.values().iterator();
+        while (oldest.hasNext()) {
+            GameHistory history = oldest.next();
+            if (games.size() <= maxGames && history.getFinishedAt() >= cutoff) break;
+            oldest.remove();
+            evicted.increment();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return games.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getArchivedCount() { return archived.sum(); }
+    public long getEvictedCount() { return evicted.sum(); }
+
+    @Override
+    public String toString() {
+        return size() + " results (" + archived.sum() + " archived, " + evicted.sum() + " evicted)";
+    }
+}
@@ -0,0 +1,106 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameArchiveTest
+ *
+ * Behaviour checks for GameArchive: results are evicted oldest first once
+ * there are too many or they are too old, and lowered limits apply on the
+ * next lookup.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.util.*;
+
+public class GameArchiveTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("========================================");
+        System.out.println("   GameArchive Tests");
+        System.out.println("========================================\n");
+
+        testLookup();
+        testCountLimit();
+        testAgeLimit();
+        testLoweredLimits();
+
+        System.out.println("\n========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        if (testsFailed > 0) System.exit(1);
+    }
+
+    private static void testLookup() {
+        GameArchive archive = new GameArchive();
+        archive.add(finished("g00000001", "Ana"));
+        GameHistory history = archive.get("g00000001");
+        check("archived result found", history != null && "Ana".equals(history.getWinnerName()));
+        check("unknown game not found", archive.get("g00000002") == null);
+        check("one result kept", archive.size() == 1 && archive.getArchivedCount() == 1);
+    }
+
+    /**
+     * With room for three, the fourth and fifth results push out the two
+     * oldest.
+     */
+    private static void testCountLimit() {
+        GameArchive archive = new GameArchive();
+        archive.setLimits(3, GameArchive.DEFAULT_MAX_AGE_MILLIS);
+        for (int i = 1; i <= 5; i++) {
+            archive.add(finished("g0000000" + i, "Ana"));
+        }
+        check("holds at most three", archive.size() == 3);
+        check("two oldest evicted", archive.get("g00000001") == null && archive.get("g00000002") == null);
+        check("three newest kept", archive.get("g00000003") != null && archive.get("g00000005") != null);
+        check("evictions counted", archive.getEvictedCount() == 2 && archive.getArchivedCount() == 5);
+    }
+
+    /**
+     * A result older than the age limit is gone by the next lookup, while
+     * a newer one stays.
+     */
+    private static void testAgeLimit() throws InterruptedException {
+        GameArchive archive = new GameArchive();
+        archive.setLimits(GameArchive.DEFAULT_MAX_GAMES, 100);
+        archive.add(finished("g00000001", "Ana"));
+        Thread.sleep(150);
+        archive.add(finished("g00000002", "Bo"));
+        check("old result evicted", archive.get("g00000001") == null);
+        check("new result kept", archive.get("g00000002") != null);
+        Thread.sleep(150);
+        check("everything evicted once old", archive.get("g00000002") == null && archive.size() == 0);
+    }
+
+    /**
+     * Lowering the limits evicts nothing until the archive is next used.
+     */
+    private static void testLoweredLimits() {
+        GameArchive archive = new GameArchive();
+        for (int i = 1; i <= 4; i++) {
+            archive.add(finished("g0000000" + i, "Ana"));
+        }
+        archive.setLimits(1, GameArchive.DEFAULT_MAX_AGE_MILLIS);
+        check("newest kept after lowering", archive.get("g00000004") != null);
+        check("rest evicted on lookup", archive.size() == 1 && archive.getEvictedCount() == 3);
+    }
+
+    private static GameHistory finished(String gameId, String winnerName) {
+        Map<String, String> names = new HashMap<>();
+        names.put("p1", winnerName);
+        names.put("p2", "Zed");
+        GameHistory.Recorder recorder =
+            new GameHistory.Recorder(gameId, "test", "RGBY", Arrays.asList("p1", "p2"), names, true);
+        recorder.guess("p1", 1, "RGBY", 4, 0, null);
+        return recorder.won("p1", 1);
+    }
+
+    private static void check(String testName, boolean passed) {
+        if (passed) {
+            System.out.println("  ✓ PASS: " + testName);
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName);
+            testsFailed++;
+        }
+    }
+}
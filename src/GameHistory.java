@@ -0,0 +1,205 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameHistory
+ *
+ * The result and move list of one finished game, kept in the GameArchive
+ * after its GameSession is gone so it can be looked up and replayed (see
+ * ReplayStreamer). Guesses are packed into one byte array, GUESS_BYTES
+ * each:
+ *
+ *   int  milliseconds since the game started
+ *   int  guess, packed three bits per peg (GameJournal.packCode)
+ *   byte seat of the player who guessed
+ *   byte seat whose turn came next, or NO_SEAT after the last guess
+ *   byte the player's guess number
+ *   byte black pegs << 4 | white pegs, or SKIPPED for a turn that ran
+ *        out of time (its guess is 0)
+ *
+ * Seats index playerIds/playerNames in turn order at the start, so a
+ * game of ten guesses costs a few hundred bytes however long it ran.
+ *
+ * A session restored mid-game (after a restart, takeover or migration)
+ * only records the guesses made after that. Its history is incomplete:
+ * the result stands but it cannot be replayed.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public final class GameHistory {
+    static final int GUESS_BYTES = 12;
+    static final int NO_SEAT = 0xFF;
+    static final int SKIPPED = 0xFF;
+
+    private final String gameId;
+    private final String gameName;
+    private final String[] playerIds;
+    private final String[] playerNames;
+    private final String secretCode;
+    // seat of the winner, or NO_SEAT if nobody cracked the code
+    private final int winnerSeat;
+    private final int totalGuesses;
+    private final long finishedAt;
+    private final boolean complete;
+    private final byte[] guesses;
+
+    private GameHistory(Recorder recorder, int winnerSeat, int totalGuesses) {
+        this.gameId = recorder.gameId;
+        this.gameName = recorder.gameName;
+        this.playerIds = recorder.playerIds.toArray(new String[0]);
+        this.playerNames = recorder.playerNames.toArray(new String[0]);
+        this.secretCode = recorder.secretCode;
+        this.winnerSeat = winnerSeat;
+        this.totalGuesses = totalGuesses;
+        this.finishedAt = System.currentTimeMillis();
+        this.complete = recorder.complete;
+        this.guesses = Arrays.copyOf(recorder.guesses.array(), recorder.guesses.position());
+    }
+
+    /**
+     * Collects a game's moves while it is played. Not thread-safe; the
+     * session calls it under its lock or on its loop.
+     */
+    static final class Recorder {
+        private final String gameId;
+        private final String gameName;
+        private final String secretCode;
+        private final boolean complete;
+        private final long startNanos = System.nanoTime();
+        private final List<String> playerIds = new ArrayList<>();
+        private final List<String> playerNames = new ArrayList<>();
+        private ByteBuffer guesses = ByteBuffer.allocate(GUESS_BYTES * 16);
+
+        /**
+         * @param turnOrder Player IDs in turn order; each gets the next seat
+         * @param complete  False if the game was already under way
+         */
+        Recorder(String gameId, String gameName, String secretCode, List<String> turnOrder,
+                 Map<String, String> names, boolean complete) {
+            this.gameId = gameId;
+            this.gameName = gameName;
+            this.secretCode = secretCode;
+            this.complete = complete;
+            for (String id : turnOrder) {
+                playerIds.add(id);
+                playerNames.add(names.get(id));
+            }
+        }
+
+        /**
+         * @param nextPlayerId Whose turn follows, or null if the guess ended the game
+         */
+        void guess(String playerId, int guessNumber, String guess, int black, int white, String nextPlayerId) {
+            if (guesses.remaining() < GUESS_BYTES) {
+                guesses = ByteBuffer.allocate(guesses.capacity() * 2).put(guesses.flip());
+            }
+            int next = nextPlayerId == null ? NO_SEAT : playerIds.indexOf(nextPlayerId);
+            guesses.putInt((int) ((System.nanoTime() - startNanos) / 1_000_000));
+            guesses.putInt(guess == null ? 0 : GameJournal.packCode(guess));
+            guesses.put((byte) playerIds.indexOf(playerId));
+            guesses.put((byte) next);
+            guesses.put((byte) guessNumber);
+            guesses.put((byte) (black << 4 | white));
+        }
+
+        /**
+         * Records a turn that ran out of time; it uses up a guess.
+         */
+        void skip(String playerId, int guessNumber, String nextPlayerId) {
+            guess(playerId, guessNumber, null, 0, 0, nextPlayerId);
+            guesses.put(guesses.position() - 1, (byte) SKIPPED);
+        }
+
+        GameHistory won(String winnerId, int totalGuesses) {
+            return new GameHistory(this, playerIds.indexOf(winnerId), totalGuesses);
+        }
+
+        GameHistory lost(int totalGuesses) {
+            return new GameHistory(this, NO_SEAT, totalGuesses);
+        }
+    }
+
+    /**
+     * Guesses recorded, which is every guess of a complete history.
+     */
+    public int getGuessCount() {
+        return guesses.length / GUESS_BYTES;
+    }
+
+    /**
+     * When guess i was made, in milliseconds since the game started.
+     */
+    public int getMillis(int i) {
+        return ByteBuffer.wrap(guesses).getInt(i * GUESS_BYTES);
+    }
+
+    /**
+     * The messages players saw when the game started, the way
+     * GameSession.startGame sent them.
+     */
+    public List<String> startMessages() {
+        return List.of("GAME_STARTED:" + gameId + ":" + playerIds[0], "TURN_UPDATE:" + gameId + ":" + playerIds[0]);
+    }
+
+    /**
+     * The messages players saw for guess i: its GUESS_RESULT (or
+     * TURN_SKIPPED), then either the next TURN_UPDATE or how the game
+     * ended.
+     */
+    public List<String> guessMessages(int i) {
+        ByteBuffer record = ByteBuffer.wrap(guesses, i * GUESS_BYTES, GUESS_BYTES).slice();
+        String guess = GameJournal.unpackCode(record.getInt(4));
+        int seat = record.get(8) & 0xFF;
+        int next = record.get(9) & 0xFF;
+        int guessNumber = record.get(10) & 0xFF;
+        int pegs = record.get(11) & 0xFF;
+        List<String> messages = new ArrayList<>(2);
+        if (pegs == SKIPPED) {
+            messages.add("TURN_SKIPPED:" + gameId + ":" + playerIds[seat] + ":" + playerNames[seat] + ":" + guessNumber);
+        } else {
+            messages.add(String.format("GUESS_RESULT:%s:%s:%d:%s:%d:%d", gameId, playerNames[seat], guessNumber,
+                                       guess, pegs >> 4, pegs & 0xF));
+        }
+        if (next != NO_SEAT) {
+            messages.add("TURN_UPDATE:" + gameId + ":" + playerIds[next]);
+        } else if (seat == winnerSeat && i == getGuessCount() - 1) {
+            messages.add("GAME_WON:" + gameId + ":" + playerNames[seat] + ":" + guessNumber);
+        } else {
+            messages.add("GAME_OVER:" + gameId + ":" + secretCode);
+        }
+        return messages;
+    }
+
+    /**
+     * The result as JSON: id, name, players, winner (null if the code was
+     * not cracked), guesses, secret, finishedAt (epoch millis) and replay
+     * (whether REPLAY can show it).
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{");
+        json.append("\"id\":\"").append(gameId).append("\",");
+        json.append("\"name\":\"").append(gameName).append("\",");
+        json.append("\"players\":[");
+        for (int i = 0; i < playerNames.length; i++) {
+            if (i > 0) json.append(",");
+            json.append("\"").append(playerNames[i]).append("\"");
+        }
+        json.append("],");
+        String winner = getWinnerName();
+        json.append("\"winner\":").append(winner == null ? "null" : "\"" + winner + "\"").append(",");
+        json.append("\"guesses\":").append(totalGuesses).append(",");
+        json.append("\"secret\":\"").append(secretCode).append("\",");
+        json.append("\"finishedAt\":").append(finishedAt).append(",");
+        json.append("\"replay\":").append(complete);
+        json.append("}");
+        return json.toString();
+    }
+
+    public String getGameId() { return gameId; }
+    public String getGameName() { return gameName; }
+    public long getFinishedAt() { return finishedAt; }
+    public int getPlayerCount() { return playerIds.length; }
+    public int getTotalGuesses() { return totalGuesses; }
+    public boolean isComplete() { return complete; }
+    public String getWinnerName() { return winnerSeat == NO_SEAT ? null : playerNames[winnerSeat]; }
+}
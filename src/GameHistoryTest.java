@@ -0,0 +1,112 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameHistoryTest
+ *
+ * Behaviour checks for GameHistory: a recorded game replays as the same
+ * lines its players saw, skipped turns and lost games included, and long
+ * games keep every guess.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.util.*;
+
+public class GameHistoryTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("========================================");
+        System.out.println("   GameHistory Tests");
+        System.out.println("========================================\n");
+
+        testWonGame();
+        testSkippedTurn();
+        testLostGame();
+        testLongGame();
+
+        System.out.println("\n========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        if (testsFailed > 0) System.exit(1);
+    }
+
+    /**
+     * Two players, three guesses, the third cracks the code.
+     */
+    private static void testWonGame() throws InterruptedException {
+        GameHistory.Recorder recorder = recorder("g00000001", "p1", "p2");
+        recorder.guess("p1", 1, "RRRR", 1, 0, "p2");
+        Thread.sleep(20);
+        recorder.guess("p2", 1, "GGGG", 0, 2, "p1");
+        recorder.guess("p1", 2, "RGBY", 4, 0, null);
+        GameHistory history = recorder.won("p1", 3);
+
+        check("start lines", history.startMessages().equals(List.of(
+            "GAME_STARTED:g00000001:p1", "TURN_UPDATE:g00000001:p1")));
+        check("first guess and next turn", history.guessMessages(0).equals(List.of(
+            "GUESS_RESULT:g00000001:Ana:1:RRRR:1:0", "TURN_UPDATE:g00000001:p2")));
+        check("second guess", history.guessMessages(1).equals(List.of(
+            "GUESS_RESULT:g00000001:Bo:1:GGGG:0:2", "TURN_UPDATE:g00000001:p1")));
+        check("winning guess ends with GAME_WON", history.guessMessages(2).equals(List.of(
+            "GUESS_RESULT:g00000001:Ana:2:RGBY:4:0", "GAME_WON:g00000001:Ana:2")));
+        check("pause between guesses kept", history.getMillis(1) - history.getMillis(0) >= 20);
+        check("result", history.isComplete() && "Ana".equals(history.getWinnerName())
+                        && history.getTotalGuesses() == 3 && history.toJson().contains("\"winner\":\"Ana\""));
+    }
+
+    private static void testSkippedTurn() {
+        GameHistory.Recorder recorder = recorder("g00000002", "p1", "p2");
+        recorder.skip("p1", 1, "p2");
+        recorder.guess("p2", 1, "RGBY", 4, 0, null);
+        GameHistory history = recorder.won("p2", 2);
+        check("skipped turn replays as TURN_SKIPPED", history.guessMessages(0).equals(List.of(
+            "TURN_SKIPPED:g00000002:p1:Ana:1", "TURN_UPDATE:g00000002:p2")));
+        check("then the win", history.guessMessages(1).get(1).equals("GAME_WON:g00000002:Bo:1"));
+    }
+
+    /**
+     * Out of guesses: the last line reveals the code, and nobody won.
+     */
+    private static void testLostGame() {
+        GameHistory.Recorder recorder = recorder("g00000003", "p1", "p2");
+        recorder.guess("p1", 1, "RRRR", 1, 0, "p2");
+        recorder.guess("p2", 1, "GGGG", 1, 0, null);
+        GameHistory history = recorder.lost(2);
+        check("last line is GAME_OVER with the code", history.guessMessages(1).equals(List.of(
+            "GUESS_RESULT:g00000003:Bo:1:GGGG:1:0", "GAME_OVER:g00000003:RGBY")));
+        check("no winner", history.getWinnerName() == null && history.toJson().contains("\"winner\":null"));
+    }
+
+    /**
+     * More guesses than the recorder first has room for are all kept.
+     */
+    private static void testLongGame() {
+        GameHistory.Recorder recorder = recorder("g00000004", "p1", "p2");
+        for (int i = 0; i < 40; i++) {
+            String player = i % 2 == 0 ? "p1" : "p2";
+            String next = i % 2 == 0 ? "p2" : "p1";
+            recorder.guess(player, i / 2 + 1, "BBBB", 0, 0, i == 39 ? null : next);
+        }
+        GameHistory history = recorder.lost(40);
+        check("all 40 guesses kept", history.getGuessCount() == 40);
+        check("last guess intact", history.guessMessages(39).equals(List.of(
+            "GUESS_RESULT:g00000004:Bo:20:BBBB:0:0", "GAME_OVER:g00000004:RGBY")));
+    }
+
+    private static GameHistory.Recorder recorder(String gameId, String first, String second) {
+        Map<String, String> names = new HashMap<>();
+        names.put(first, "Ana");
+        names.put(second, "Bo");
+        return new GameHistory.Recorder(gameId, "test", "RGBY", Arrays.asList(first, second), names, true);
+    }
+
+    private static void check(String testName, boolean passed) {
+        if (passed) {
+            System.out.println("  ✓ PASS: " + testName);
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName);
+            testsFailed++;
+        }
+    }
+}
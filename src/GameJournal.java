@@ -0,0 +1,569 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameJournal
+ *
+ * Append-only binary log of everything that happens in the sessions:
+ *
+ *   java MastermindServer 8080 --journal=journal-dir
+ *
+ * Sessions only queue an event; a writer thread copies queued events
+ * into a memory-mapped segment file and forces the segment to disk at
+ * most every syncMillis, so one force covers every event written since
+ * the last (group commit). When a segment is full the writer starts the
+ * next one: journal-00000001.seg, journal-00000002.seg, ... On start
+ * the writer continues the newest segment if it has room. The writer
+ * sleeps while nothing is queued; append wakes it.
+ *
+ * Every record is RECORD_SIZE bytes, big-endian:
+ *   long   timestamp (epoch millis, never 0)
+ *   int    game key (see gameKey)
+ *   byte   type
+ *   byte   player seat (join order in the game, from 0)
+ *   short  guess number, or required players for CREATED
+ *   int    code packed three bits per peg (guess, or secret for STARTED),
+ *          or the checkpoint number for CHECKPOINT_BEGIN
+ *   byte   black pegs
+ *   byte   white pegs
+ *   6      unused
+ *   int    CRC32 of the 28 bytes above
+ *
+ * Names do not fit a fixed record, so CREATED and JOINED are followed by
+ * TEXT records ("gameId\tname", "playerId\ttoken\tname"), and SNAPSHOT by
+ * a Base64 SessionSnapshot. A TEXT record keeps its
+ * UTF-8 chunk in bytes 14-27 and the chunk length in the seat byte, with
+ * TEXT_MORE set while further chunks follow. An event and its TEXT
+ * records never straddle two segments; one too big for a whole segment is
+ * dropped and counted.
+ *
+ * If the writer fails (a disk error, or a bug), the journal is marked
+ * failed: what is queued is discarded and later events are dropped and
+ * counted instead of queueing forever.
+ *
+ * A checkpoint (see GameLobbyManager.checkpoint) is a CHECKPOINT_BEGIN,
+ * a SNAPSHOT of every session and a CHECKPOINT_END that points back at
+ * the BEGIN: its game key is the BEGIN's segment number and its code the
+ * BEGIN's record index in that segment. Recovery (JournalRecovery) starts
+ * there rather than at the first segment, so once a CHECKPOINT_END has
+ * been forced the writer deletes the segments before its BEGIN's.
+ *
+ * A reader stops at the first record with a zero timestamp (the unwritten
+ * rest of the segment) or a bad checksum (a write cut short by a crash).
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+public class GameJournal {
+    public static final int RECORD_SIZE = 32;
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    static final long DEFAULT_SYNC_MILLIS = 10;
+    private static final int TEXT_CHUNK = 14;
+    static final int TEXT_MORE = 0x80;
+    private static final int CHECKSUMMED = 28;
+
+    // record types
+    public static final byte CREATED = 1;
+    public static final byte JOINED = 2;
+    public static final byte STARTED = 3;
+    public static final byte GUESS = 4;
+    public static final byte WON = 5;
+    public static final byte LOST = 6;
+    public static final byte LEFT = 7;
+    public static final byte TEXT = 8;
+    public static final byte SNAPSHOT = 9;
+    public static final byte REMOVED = 10;
+    public static final byte CHECKPOINT_BEGIN = 11;
+    public static final byte CHECKPOINT_END = 12;
+    // a turn that ran out of time; uses up a guess like GUESS
+    public static final byte TURN_SKIPPED = 13;
+
+    /** A journal that records nothing, used when --journal is not set. */
+    static final GameJournal NONE = new GameJournal();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long syncNanos;
+    private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final LongAdder eventsQueued = new LongAdder();
+    private final CRC32 crc = new CRC32();
+    private final AtomicInteger checkpoints = new AtomicInteger();
+    private volatile boolean running = true;
+    // set when the writer has stopped for good
+    private volatile boolean failed;
+    private final LongAdder eventsDropped = new LongAdder();
+    private volatile Thread writer;
+    // set while the writer is parked or about to park, so append wakes it
+    private volatile boolean writerIdle;
+    // owned by the writer thread
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentNumber;
+    // where the last CHECKPOINT_BEGIN was written
+    private int checkpointSegment;
+    private int checkpointRecord;
+    // segments before this one can go once the last write is forced
+    private int trimBefore;
+    private volatile long segmentsDeleted;
+    private volatile long eventsWritten;
+    private volatile long eventsTooLarge;
+    private volatile long recordsWritten;
+    private volatile long forces;
+
+    private GameJournal() {
+        this.directory = null;
+        this.segmentSize = 0;
+        this.syncNanos = 0;
+    }
+
+    /**
+     * @param syncMillis Longest a written event waits to be forced to disk
+     */
+    public GameJournal(Path directory, int segmentSize, long syncMillis) {
+        this.directory = directory;
+        this.segmentSize = segmentSize - segmentSize % RECORD_SIZE;
+        this.syncNanos = syncMillis * 1_000_000;
+    }
+
+    /**
+     * Continues the newest segment in the directory, or opens a new one
+     * after it if it is full, and starts the writer.
+     */
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> existing = segments(directory);
+        segmentNumber = existing.isEmpty() ? 0 : segmentNumber(existing.get(existing.size() - 1));
+        if (existing.isEmpty() || !resumeSegment(existing.get(existing.size() - 1))) {
+            openNextSegment();
+        }
+        writer = new Thread(this::writeLoop, "GameJournal");
+        writer.setDaemon(true);
+        writer.start();
+        System.out.println("GameJournal: writing to " + channelPath());
+    }
+
+    // events
+
+    public void gameCreated(String gameId, String gameName, int requiredPlayers) {
+        append(new Event(CREATED, gameId, 0, requiredPlayers, 0, 0, 0, gameId + "\t" + gameName));
+    }
+
+    public void playerJoined(String gameId, int seat, String playerId, String token, String playerName) {
+        append(new Event(JOINED, gameId, seat, 0, 0, 0, 0,
+                         playerId + "\t" + (token != null ? token : "") + "\t" + playerName));
+    }
+
+    public void gameStarted(String gameId, String secretCode) {
+        append(new Event(STARTED, gameId, 0, 0, packCode(secretCode), 0, 0, null));
+    }
+
+    public void guess(String gameId, int seat, int guessNumber, String guess, int black, int white) {
+        append(new Event(GUESS, gameId, seat, guessNumber, packCode(guess), black, white, null));
+    }
+
+    public void turnSkipped(String gameId, int seat, int guessNumber) {
+        append(new Event(TURN_SKIPPED, gameId, seat, guessNumber, 0, 0, 0, null));
+    }
+
+    public void gameWon(String gameId, int seat, int guessNumber) {
+        append(new Event(WON, gameId, seat, guessNumber, 0, 0, 0, null));
+    }
+
+    public void gameLost(String gameId) {
+        append(new Event(LOST, gameId, 0, 0, 0, 0, 0, null));
+    }
+
+    public void playerLeft(String gameId, int seat) {
+        append(new Event(LEFT, gameId, seat, 0, 0, 0, 0, null));
+    }
+
+    public void gameRemoved(String gameId) {
+        append(new Event(REMOVED, gameId, 0, 0, 0, 0, 0, null));
+    }
+
+    /**
+     * Records a session's complete state; everything journaled for the
+     * game before this is superseded by it.
+     */
+    public void snapshot(SessionSnapshot state) {
+        append(new Event(SNAPSHOT, state.getGameId(), 0, 0, 0, 0, 0,
+                         Base64.getEncoder().encodeToString(state.encode())));
+    }
+
+    /**
+     * @return The checkpoint's number, for endCheckpoint
+     */
+    public int beginCheckpoint() {
+        int number = checkpoints.incrementAndGet();
+        append(new Event(CHECKPOINT_BEGIN, "", 0, 0, number, 0, 0, null));
+        return number;
+    }
+
+    public void endCheckpoint(int number) {
+        append(new Event(CHECKPOINT_END, "", 0, 0, number, 0, 0, null));
+    }
+
+    /**
+     * Runs checkpoint every interval on a daemon thread.
+     */
+    public void checkpointEvery(long seconds, Runnable checkpoint) {
+        if (directory == null || seconds <= 0) return;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "JournalCheckpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint.run();
+            } catch (RuntimeException e) {
+                System.err.println("GameJournal - Checkpoint failed: " + e.getMessage());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues an event for the writer. Safe to call under a session lock:
+     * it costs one allocation and one queue insert.
+     */
+    private void append(Event event) {
+        if (directory == null) return;
+        if (failed) {
+            eventsDropped.increment();
+            return;
+        }
+        queue.add(event);
+        eventsQueued.increment();
+        if (writerIdle) {
+            writerIdle = false;
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void writeLoop() {
+        long lastForce = System.nanoTime();
+        boolean unforced = false;
+        try {
+            while (running || !queue.isEmpty()) {
+                Event event = queue.poll();
+                if (event != null) {
+                    write(event);
+                    unforced = true;
+                } else if (running) {
+                    // flagged before the last look at the queue, so an
+                    // append after it sees the flag and unparks us
+                    writerIdle = true;
+                    if (queue.isEmpty() && running) {
+                        if (unforced) {
+                            LockSupport.parkNanos(this, lastForce + syncNanos - System.nanoTime());
+                        } else {
+                            LockSupport.park(this);
+                        }
+                    }
+                    writerIdle = false;
+                }
+                // under load this forces once per syncMillis however many events arrived
+                if (unforced && System.nanoTime() - lastForce >= syncNanos) {
+                    force();
+                    unforced = false;
+                    lastForce = System.nanoTime();
+                }
+            }
+            force();
+            channel.close();
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            System.err.println("GameJournal - Write failed, journal stopped: " + e);
+            e.printStackTrace();
+            // nothing will write these now
+            while (queue.poll() != null) {
+                eventsDropped.increment();
+            }
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void write(Event event) throws IOException {
+        byte[] text = event.text == null ? null : event.text.getBytes(StandardCharsets.UTF_8);
+        int textRecords = text == null ? 0 : (text.length + TEXT_CHUNK - 1) / TEXT_CHUNK;
+        if ((1L + textRecords) * RECORD_SIZE > segmentSize) {
+            // no segment could hold it; losing it beats stopping the journal
+            eventsTooLarge++;
+            eventsDropped.increment();
+            System.err.println("GameJournal - Dropped a type " + event.type + " event of " + text.length
+                               + " bytes, larger than a segment");
+            return;
+        }
+        if (segment.remaining() < (1 + textRecords) * RECORD_SIZE) {
+            force();
+            channel.close();
+            openNextSegment();
+        }
+        int start = segment.position();
+        int gameKey = event.gameKey;
+        int code = event.code;
+        if (event.type == CHECKPOINT_BEGIN) {
+            checkpointSegment = segmentNumber;
+            checkpointRecord = start / RECORD_SIZE;
+        } else if (event.type == CHECKPOINT_END) {
+            gameKey = checkpointSegment;
+            code = checkpointRecord;
+            trimBefore = checkpointSegment;
+        }
+        segment.putLong(event.time);
+        segment.putInt(gameKey);
+        segment.put(event.type);
+        segment.put((byte) event.seat);
+        segment.putShort((short) event.number);
+        segment.putInt(code);
+        segment.put((byte) event.black);
+        segment.put((byte) event.white);
+        finishRecord(start);
+        eventsWritten++;
+        for (int i = 0; i < textRecords; i++) {
+            int offset = i * TEXT_CHUNK;
+            int length = Math.min(TEXT_CHUNK, text.length - offset);
+            start = segment.position();
+            segment.putLong(event.time);
+            segment.putInt(event.gameKey);
+            segment.put(TEXT);
+            segment.put((byte) (length | (i < textRecords - 1 ? TEXT_MORE : 0)));
+            segment.put(text, offset, length);
+            finishRecord(start);
+        }
+    }
+
+    /**
+     * Pads the record that began at start and appends its checksum.
+     */
+    private void finishRecord(int start) {
+        segment.position(start + CHECKSUMMED);
+        crc.reset();
+        ByteBuffer body = segment.duplicate();
+        body.position(start).limit(start + CHECKSUMMED);
+        crc.update(body);
+        segment.putInt((int) crc.getValue());
+        recordsWritten++;
+    }
+
+    private void force() {
+        if (segment != null) {
+            segment.force();
+            forces++;
+        }
+        if (trimBefore > 0) {
+            deleteSegmentsBefore(trimBefore);
+            trimBefore = 0;
+        }
+    }
+
+    /**
+     * Deletes the segments recovery no longer reads: those before the one
+     * holding the BEGIN of a checkpoint whose END is on disk. A segment
+     * that cannot be deleted now is tried again after the next checkpoint.
+     */
+    private void deleteSegmentsBefore(int number) {
+        try {
+            for (Path path : segments(directory)) {
+                if (segmentNumber(path) >= number) break;
+                Files.deleteIfExists(path);
+                segmentsDeleted++;
+            }
+        } catch (IOException e) {
+            System.err.println("GameJournal - Could not delete old segments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Continues writing an existing segment after its last complete event.
+     * Whatever follows that (a record torn by a crash, an event cut short,
+     * pages written out of order) is cleared, so a reader cannot take it
+     * for records written from now on.
+     *
+     * @return false if the segment is full or of another size
+     */
+    private boolean resumeSegment(Path path) throws IOException {
+        if (Files.size(path) != segmentSize) return false;
+        FileChannel resumed = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer data;
+        int end;
+        try {
+            data = resumed.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            end = completeRecords(data) * RECORD_SIZE;
+        } catch (IOException | RuntimeException e) {
+            resumed.close();
+            throw e;
+        }
+        if (end == segmentSize) {
+            resumed.close();
+            return false;
+        }
+        for (int pos = end; pos < segmentSize; pos += Long.BYTES) {
+            if (data.getLong(pos) != 0) data.putLong(pos, 0);
+        }
+        data.force();
+        data.position(end);
+        channel = resumed;
+        segment = data;
+        segmentNumber = segmentNumber(path);
+        return true;
+    }
+
+    /**
+     * The number of records up to the end of the last event that was
+     * written completely, text included.
+     */
+    private int completeRecords(ByteBuffer data) {
+        int complete = 0;
+        for (int pos = 0; pos + RECORD_SIZE <= data.limit(); pos += RECORD_SIZE) {
+            if (data.getLong(pos) == 0) break;
+            crc.reset();
+            crc.update(data.slice(pos, CHECKSUMMED));
+            if ((int) crc.getValue() != data.getInt(pos + CHECKSUMMED)) break;
+            byte type = data.get(pos + 12);
+            boolean done = type == TEXT ? (data.get(pos + 13) & TEXT_MORE) == 0 : !JournalReader.hasText(type);
+            if (done) complete = pos / RECORD_SIZE + 1;
+        }
+        return complete;
+    }
+
+    private void openNextSegment() throws IOException {
+        segmentNumber++;
+        channel = FileChannel.open(channelPath(), StandardOpenOption.CREATE_NEW,
+                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private Path channelPath() {
+        return directory.resolve(String.format("journal-%08d.seg", segmentNumber));
+    }
+
+    /**
+     * Writes out what is queued, forces it and stops the writer.
+     */
+    public void close() {
+        if (directory == null) return;
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.println("GameJournal: " + this);
+    }
+
+    /**
+     * The segment files in a journal directory, oldest first.
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> found = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return found;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "journal-*.seg")) {
+            for (Path path : stream) {
+                found.add(path);
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring("journal-".length(), name.length() - ".seg".length()));
+    }
+
+    /**
+     * Game IDs are "g" plus eight hex digits, which fit an int exactly;
+     * anything else falls back to its hash.
+     */
+    static int gameKey(String gameId) {
+        if (gameId.length() == 9 && gameId.charAt(0) == 'g') {
+            try {
+                return (int) Long.parseLong(gameId.substring(1), 16);
+            } catch (NumberFormatException e) {
+                // not hex after all
+            }
+        }
+        return gameId.hashCode();
+    }
+
+    /**
+     * Packs a code as three bits per peg, first peg highest. Unknown colors
+     * pack as 7.
+     */
+    static int packCode(String code) {
+        int packed = 0;
+        for (int i = 0; i < code.length(); i++) {
+            int color = 7;
+            for (int c = 0; c < GameConfiguration.colors.length; c++) {
+                if (GameConfiguration.colors[c].charAt(0) == code.charAt(i)) {
+                    color = c;
+                    break;
+                }
+            }
+            packed = (packed << 3) | color;
+        }
+        return packed;
+    }
+
+    static String unpackCode(int packed) {
+        char[] pegs = new char[GameConfiguration.pegNumber];
+        for (int i = pegs.length - 1; i >= 0; i--) {
+            int color = packed & 7;
+            pegs[i] = color < GameConfiguration.colors.length ? GameConfiguration.colors[color].charAt(0) : '?';
+            packed >>>= 3;
+        }
+        return new String(pegs);
+    }
+
+    public boolean isEnabled() { return directory != null; }
+    public long getEventsQueued() { return eventsQueued.sum(); }
+    public long getRecordsWritten() { return recordsWritten; }
+    public long getQueueDepth() { return failed ? queue.size() : eventsQueued.sum() - eventsWritten - eventsTooLarge; }
+    public long getEventsDropped() { return eventsDropped.sum(); }
+    public boolean isFailed() { return failed; }
+    public long getForceCount() { return forces; }
+    public long getSegmentsDeleted() { return segmentsDeleted; }
+
+    @Override
+    public String toString() {
+        return eventsQueued.sum() + " events, " + recordsWritten + " records, " + forces + " forces, segment "
+               + segmentNumber + " (" + segmentsDeleted + " older deleted), " + eventsDropped.sum() + " dropped"
+               + (failed ? ", FAILED" : "");
+    }
+
+    private static final class Event {
+        final long time = System.currentTimeMillis();
+        final byte type;
+        final int gameKey;
+        final int seat;
+        final int number;
+        final int code;
+        final int black;
+        final int white;
+        final String text;
+
+        Event(byte type, String gameId, int seat, int number, int code, int black, int white, String text) {
+            this.type = type;
+            this.gameKey = gameKey(gameId);
+            this.seat = seat;
+            this.number = number;
+            this.code = code;
+            this.black = black;
+            this.white = white;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameJournalTest
+ *
+ * Behaviour checks for GameJournal and JournalReader: events read back as
+ * written across segments, reading stops at a torn record, an event too
+ * big for a segment is dropped, and a failed writer stops queueing. A
+ * restart continues the last segment, an idle writer wakes for the next
+ * event, and a checkpoint deletes the segments recovery no longer needs.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+public class GameJournalTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("========================================");
+        System.out.println("   GameJournal Tests");
+        System.out.println("========================================\n");
+
+        testRoundTrip();
+        testSegmentRollover();
+        testTornRecord();
+        testOversizedEvent();
+        testWriterFailure();
+        testRestart();
+        testIdleWriter();
+        testCheckpointDeletesSegments();
+
+        System.out.println("\n========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        if (testsFailed > 0) System.exit(1);
+    }
+
+    /**
+     * Every event type reads back with its fields and text.
+     */
+    private static void testRoundTrip() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameJournal journal = new GameJournal(directory, 64 * 1024, 1);
+        journal.start();
+        journal.gameCreated("g0000abcd", "Friday night ✓", 2);
+        journal.playerJoined("g0000abcd", 0, "p1-a", "tok3n", "Ana");
+        journal.playerJoined("g0000abcd", 1, "p2-a", null, "Bo");
+        journal.gameStarted("g0000abcd", "RGBY");
+        journal.guess("g0000abcd", 0, 1, "BBOO", 0, 1);
+        journal.gameWon("g0000abcd", 1, 1);
+        journal.close();
+
+        List<JournalReader.Entry> entries = readAll(directory);
+        check("six events read back", entries.size() == 6);
+        if (entries.size() != 6) return;
+        check("game key from the ID", entries.get(0).gameKey == 0xabcd);
+        check("CREATED carries ID and name",
+              entries.get(0).type == GameJournal.CREATED && entries.get(0).number == 2
+              && "g0000abcd\tFriday night ✓".equals(entries.get(0).getText()));
+        check("JOINED carries ID, token and name",
+              entries.get(1).type == GameJournal.JOINED && "p1-a\ttok3n\tAna".equals(entries.get(1).getText()));
+        check("JOINED without a token", "p2-a\t\tBo".equals(entries.get(2).getText()) && entries.get(2).seat == 1);
+        check("STARTED secret unpacks", GameJournal.unpackCode(entries.get(3).code).equals("RGBY"));
+        JournalReader.Entry guess = entries.get(4);
+        check("GUESS fields", guess.type == GameJournal.GUESS && guess.number == 1 && guess.black == 0
+                              && guess.white == 1 && GameJournal.unpackCode(guess.code).equals("BBOO"));
+        check("WON seat", entries.get(5).type == GameJournal.WON && entries.get(5).seat == 1);
+        check("nothing dropped", journal.getEventsDropped() == 0);
+    }
+
+    /**
+     * A segment of eight records fills up and the writer moves on to the
+     * next; the CREATED event and its two TEXT records do not fit in the
+     * one record left, so all three open the second segment.
+     */
+    private static void testSegmentRollover() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameJournal journal = new GameJournal(directory, 8 * GameJournal.RECORD_SIZE, 1);
+        journal.start();
+        for (int i = 0; i < 10; i++) {
+            journal.guess("g00000001", 0, i + 1, "RRRR", i % 5, 0);
+            if (i == 6) journal.gameCreated("g00000002", "long enough name", 2);
+        }
+        journal.close();
+
+        check("two segments", GameJournal.segments(directory).size() == 2);
+        List<JournalReader.Entry> entries = readAll(directory);
+        check("eleven events read back", entries.size() == 11);
+        int expected = 1;
+        boolean ordered = true;
+        for (JournalReader.Entry entry : entries) {
+            if (entry.type == GameJournal.GUESS && entry.number != expected++) ordered = false;
+        }
+        check("guesses in order across segments", ordered);
+        check("text kept with its event", entries.stream().anyMatch(
+                e -> e.type == GameJournal.CREATED && "g00000002\tlong enough name".equals(e.getText())));
+    }
+
+    /**
+     * A record with a bad checksum ends the segment: events before it are
+     * read, nothing after it is.
+     */
+    private static void testTornRecord() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameJournal journal = new GameJournal(directory, 64 * 1024, 1);
+        journal.start();
+        for (int i = 0; i < 6; i++) {
+            journal.guess("g00000001", 0, i + 1, "RRRR", 0, 0);
+        }
+        journal.close();
+
+        Path segment = GameJournal.segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // flip one byte inside the fourth record, as a write cut short would
+            channel.write(ByteBuffer.wrap(new byte[] { 0x55 }), 3L * GameJournal.RECORD_SIZE + 17);
+        }
+        List<JournalReader.Entry> entries = readAll(directory);
+        check("stops at the torn record", entries.size() == 3);
+        check("keeps what came before it", entries.size() == 3 && entries.get(2).number == 3);
+    }
+
+    /**
+     * An event whose text needs more records than a segment holds is
+     * dropped and counted; the journal carries on.
+     */
+    private static void testOversizedEvent() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameJournal journal = new GameJournal(directory, 4 * GameJournal.RECORD_SIZE, 1);
+        journal.start();
+        journal.gameCreated("g00000001", "a name much too long for four records of journal", 2);
+        journal.guess("g00000001", 0, 1, "RRRR", 0, 0);
+        journal.close();
+
+        List<JournalReader.Entry> entries = readAll(directory);
+        check("oversized event dropped", journal.getEventsDropped() == 1);
+        check("journal still writes", entries.size() == 1 && entries.get(0).type == GameJournal.GUESS);
+        check("not failed", !journal.isFailed());
+    }
+
+    /**
+     * When the writer cannot open its next segment it stops, the journal
+     * is marked failed, and later events are dropped rather than queued.
+     */
+    private static void testWriterFailure() throws Exception {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameJournal journal = new GameJournal(directory, 2 * GameJournal.RECORD_SIZE, 1);
+        journal.start();
+        // the next segment already exists, so opening it fails
+        Files.createFile(directory.resolve("journal-00000002.seg"));
+        for (int i = 0; i < 3; i++) {
+            journal.guess("g00000001", 0, i + 1, "RRRR", 0, 0);
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!journal.isFailed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        check("journal marked failed", journal.isFailed());
+        long dropped = journal.getEventsDropped();
+        for (int i = 0; i < 1000; i++) {
+            journal.guess("g00000001", 0, i + 4, "RRRR", 0, 0);
+        }
+        check("later events dropped", journal.getEventsDropped() == dropped + 1000);
+        check("nothing left queued", journal.getQueueDepth() == 0);
+        journal.close();
+    }
+
+    /**
+     * A restart writes on in the same segment, after the last complete
+     * event; a torn record left by a crash is overwritten, not read.
+     */
+    private static void testRestart() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameJournal journal = new GameJournal(directory, 64 * 1024, 1);
+        journal.start();
+        for (int i = 0; i < 3; i++) {
+            journal.guess("g00000001", 0, i + 1, "RRRR", 0, 0);
+        }
+        journal.close();
+        Path segment = GameJournal.segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // the third record torn
+            channel.write(ByteBuffer.wrap(new byte[] { 0x55 }), 2L * GameJournal.RECORD_SIZE + 17);
+        }
+
+        journal = new GameJournal(directory, 64 * 1024, 1);
+        journal.start();
+        journal.gameCreated("g00000002", "after the restart", 2);
+        journal.guess("g00000002", 0, 1, "GGGG", 0, 0);
+        journal.close();
+
+        check("still one segment", GameJournal.segments(directory).size() == 1);
+        List<JournalReader.Entry> entries = readAll(directory);
+        check("old events, then the new ones", entries.size() == 4 && entries.get(1).number == 2
+                                                  && entries.get(2).type == GameJournal.CREATED
+                                                  && "g00000002\tafter the restart".equals(entries.get(2).getText())
+                                                  && entries.get(3).gameKey == 2);
+    }
+
+    /**
+     * The writer sleeps while nothing is queued and an event wakes it.
+     */
+    private static void testIdleWriter() throws Exception {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameJournal journal = new GameJournal(directory, 64 * 1024, 1);
+        journal.start();
+        Thread.sleep(50);
+        journal.guess("g00000001", 0, 1, "RRRR", 0, 0);
+        long deadline = System.currentTimeMillis() + 1000;
+        while (journal.getForceCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        check("event written and forced after idling", journal.getRecordsWritten() == 1 && journal.getForceCount() == 1);
+        journal.close();
+    }
+
+    /**
+     * Segments before the one holding the last complete checkpoint's BEGIN
+     * are deleted once its END is forced.
+     */
+    private static void testCheckpointDeletesSegments() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameJournal journal = new GameJournal(directory, 8 * GameJournal.RECORD_SIZE, 1);
+        journal.start();
+        for (int i = 0; i < 20; i++) {
+            journal.guess("g00000001", 0, i + 1, "RRRR", 0, 0);
+        }
+        int checkpoint = journal.beginCheckpoint();
+        journal.guess("g00000001", 0, 21, "RRRR", 0, 0);
+        journal.endCheckpoint(checkpoint);
+        journal.close();
+
+        List<Path> segments = GameJournal.segments(directory);
+        int[] begin = { -1 };
+        for (Path segment : segments) {
+            JournalReader.read(segment, entry -> {
+                if (entry.type == GameJournal.CHECKPOINT_END) begin[0] = entry.gameKey;
+            });
+        }
+        check("older segments deleted", journal.getSegmentsDeleted() == 2 && segments.size() == 1);
+        check("the BEGIN's segment kept", !segments.isEmpty() && GameJournal.segmentNumber(segments.get(0)) == begin[0]);
+    }
+
+    private static List<JournalReader.Entry> readAll(Path directory) throws IOException {
+        List<JournalReader.Entry> entries = new ArrayList<>();
+        for (Path segment : GameJournal.segments(directory)) {
+            JournalReader.read(segment, entries::add);
+        }
+        return entries;
+    }
+
+    private static void check(String testName, boolean passed) {
+        if (passed) {
+            System.out.println("  ✓ PASS: " + testName);
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName);
+            testsFailed++;
+        }
+    }
+}
@@ -4,6 +4,33 @@
  * This class manages all active games and connected players.
  * It serves as the central coordination point for the server.
  * 
+ * Lobby updates go out in one of two forms. Clients that send
+ * LOBBY_MODE:DELTA get a versioned baseline (GAME_LIST:version:json) and
+ * then only the changed entries: GAME_ADDED/GAME_UPDATED:shard:version:json
+ * and GAME_REMOVED:shard:version:gameId. LOBBY_MODE:DELTA_PAGED skips the
+ * baseline list (only LOBBY_VERSION:version is sent) for clients that page
+ * through the lobby with GET_GAMES:?query instead. Everyone else gets a
+ * full GAME_LIST, at most once per GAME_LIST_DELAY_MILLIS however many
+ * games change in between.
+ * 
+ * Players, sessions and the lobby listing are spread over LobbyShards by
+ * ID hash (see LobbyShard). Each shard publishes its own games under its
+ * own lock and numbers its changes on its own, so creating, joining and
+ * leaving games in different shards never wait on each other. A lobby
+ * version is the shard versions joined with '.' (see LobbySnapshot); a
+ * delta subscriber that sees a gap in any one shard resyncs with GET_GAMES.
+ * 
+ * In a cluster (see ClusterNode) the listings also hold the games hosted
+ * by other nodes, so every lobby shows the whole cluster.
+ * 
+ * With a ReplicationServer attached, every session change is also marked
+ * for replication to the standby processes.
+ * 
+ * Finished games leave the lobby as soon as they end; their results move
+ * to the GameArchive. Waiting games that nobody joins or leaves for
+ * idleSessionMillis are closed (see GameSession.watchIdle), and turns
+ * not taken within turnMillis are skipped.
+ * 
  * LEARNING OBJECTIVES:
  * - Thread-safe data structures (ConcurrentHashMap)
  * - Central coordination logic
@@ -14,11 +41,167 @@
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class GameLobbyManager {
-    private final ConcurrentHashMap<String, ClientHandler> players = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, GameSession> sessions = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, String> playerToGame = new ConcurrentHashMap<>();
+    // how long a restored player's seat waits for RESUME
+    static final long HELD_SEAT_MILLIS = 60_000;
+    public static final long DEFAULT_IDLE_SESSION_MILLIS = 15 * 60_000;
+    public static final long DEFAULT_TURN_MILLIS = 0;
+
+    // shortest gap between two full GAME_LIST broadcasts
+    static final long GAME_LIST_DELAY_MILLIS = 100;
+    // open games a quick join tries before opening one of its own
+    private static final int QUICK_JOIN_ATTEMPTS = 8;
+
+    private final LobbyShard[] shards;
+    // session loops, or null when sessions use their locks
+    private final SessionEventLoop[] sessionLoops;
+    // last lobby view handed out; rebuilt from the shards' listings once one changes
+    private volatile LobbySnapshot snapshot;
+    // set while a full GAME_LIST broadcast is scheduled
+    private final AtomicBoolean gameListPending = new AtomicBoolean();
+    // secondary indexes for GET_GAMES queries, kept in step with the listings
+    private final LobbyIndex index = new LobbyIndex();
+    private final QuickJoinIndex quickJoinIndex = new QuickJoinIndex();
+    // one per player count, so quick joins of different sizes never wait on each other
+    private final ConcurrentHashMap<Integer, ReentrantLock> quickJoinCreateLocks = new ConcurrentHashMap<>();
+    private final MatchmakingQueue matchmaking = new MatchmakingQueue(this);
+    private final GameArchive archive = new GameArchive();
+    private final ReplayStreamer replays = new ReplayStreamer(archive);
+    private final AdmissionControl admission = new AdmissionControl(this);
+    // idle deadlines of sessions and connections
+    private final TimingWheel timers = new TimingWheel(TimingWheel.DEFAULT_TICK_MILLIS);
+    // heartbeat round trips of every connection
+    private final LatencyHistogram roundTripMillis = new LatencyHistogram();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final MetricsRegistry.Counter guesses =
+            metrics.counter("mastermind_guesses_total", "Guesses made in games hosted here");
+    private final MetricsRegistry.Counter turnsSkipped =
+            metrics.counter("mastermind_turns_skipped_total", "Turns skipped for running past the turn deadline");
+    // 0 keeps waiting games open forever
+    private volatile long idleSessionMillis = DEFAULT_IDLE_SESSION_MILLIS;
+    // time each player has for a turn; 0 no limit
+    private volatile long turnMillis = DEFAULT_TURN_MILLIS;
+    // set once at startup when running as part of a cluster
+    private volatile ClusterNode cluster;
+    // set once at startup when standbys replicate from this server
+    private volatile ReplicationServer replication;
+    private volatile GameJournal journal = GameJournal.NONE;
+    // seats of restored players who have not resumed yet, by session token
+    private final ConcurrentHashMap<String, ClientHandler> heldSeats = new ConcurrentHashMap<>();
+
+    public GameLobbyManager() {
+        this(Runtime.getRuntime().availableProcessors(), 0);
+    }
+
+    /**
+     * @param sessionLoopCount Session event loops to start, or 0 to run
+     *                         sessions under their own locks
+     */
+    public GameLobbyManager(int shardCount, int sessionLoopCount) {
+        shards = new LobbyShard[Math.max(1, shardCount)];
+        LobbySnapshot.Part[] listings = new LobbySnapshot.Part[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new LobbyShard(i);
+            listings[i] = shards[i].getListing();
+        }
+        snapshot = new LobbySnapshot(listings);
+        if (sessionLoopCount > 0) {
+            sessionLoops = new SessionEventLoop[sessionLoopCount];
+            for (int i = 0; i < sessionLoops.length; i++) {
+                sessionLoops[i] = new SessionEventLoop("SessionEventLoop-" + i);
+                sessionLoops[i].start();
+            }
+        } else {
+            sessionLoops = null;
+        }
+        timers.start();
+        registerMetrics();
+    }
+
+    /**
+     * Registers the lobby's own numbers and those of the components it
+     * owns. All of them are read only when the metrics are.
+     */
+    private void registerMetrics() {
+        metrics.gauge("mastermind_connections", "Open client connections", admission::getConnectionCount);
+        metrics.gauge("mastermind_players", "Players logged in on this node", this::getPlayerCount);
+        metrics.gauges("mastermind_sessions", "status", "Games hosted here, by status", this::countSessionsByStatus);
+        metrics.rate("mastermind_guesses_per_second", "Guesses per second", guesses::get);
+        metrics.counter("mastermind_broadcasts_total", "Messages fanned out to several players",
+                        EncodedMessage::getBroadcastCount);
+        metrics.counter("mastermind_broadcast_deliveries_total", "Recipients of those broadcasts",
+                        EncodedMessage::getDeliveryCount);
+        metrics.counter("mastermind_encoded_bytes_total", "Bytes of protocol lines encoded",
+                        EncodedMessage::getEncodedBytes);
+        metrics.counter("mastermind_sent_bytes_total", "Bytes written to client sockets",
+                        EncodedMessage::getWrittenBytes);
+        metrics.gauge("mastermind_outbound_queued_lines", "Lines waiting in client outbound queues",
+                      admission::getQueuedLines);
+        metrics.gauges("mastermind_session_loop_queue_depth", "loop", "Tasks waiting on each session event loop",
+                       this::sessionLoopQueueDepths);
+        metrics.gauge("mastermind_journal_queue_depth", "Events waiting to be written to the journal",
+                      () -> journal.getQueueDepth());
+        metrics.counter("mastermind_journal_records_total", "Records written to the journal",
+                        () -> journal.getRecordsWritten());
+        metrics.counter("mastermind_journal_dropped_total", "Events the journal could not write",
+                        () -> journal.getEventsDropped());
+        metrics.gauge("mastermind_matchmaking_queue_depth", "Players waiting for a match", matchmaking::getQueueDepth);
+        metrics.counter("mastermind_matches_total", "Games formed by matchmaking", matchmaking::getMatchesFormed);
+        metrics.histogram("mastermind_matchmaking_wait_millis", "Time from QUEUE to a match",
+                          matchmaking.getTimeToMatchMillis());
+        metrics.histogram("mastermind_matchmaking_rating_spread", "Highest minus lowest rating in each matched game",
+                          matchmaking.getMatchSpread());
+        metrics.histogram("mastermind_heartbeat_rtt_millis", "PING to PONG round trips",
+                          roundTripMillis);
+        metrics.gauge("mastermind_timers_pending", "Idle and turn deadlines scheduled", timers::getPendingCount);
+        metrics.gauge("mastermind_archived_games", "Finished games kept for RESULT and REPLAY", archive::size);
+        metrics.gauge("mastermind_replays_active", "Replays being streamed", replays::getActiveReplays);
+        metrics.counter("mastermind_replay_lines_total", "Lines sent by replays", replays::getLinesSent);
+        metrics.gauge("mastermind_load_shedding", "1 while new connections and games are refused",
+                      () -> admission.isShedding() ? 1 : 0);
+        metrics.gauge("mastermind_heap_usage_ratio", "Fraction of the heap in use after the last collection",
+                      admission::getHeapUsage);
+        metrics.counter("mastermind_connections_refused_total", "Connections answered with BUSY",
+                        admission::getConnectionsRefused);
+        metrics.counter("mastermind_games_refused_total", "Game creations answered with BUSY",
+                        admission::getSessionsRefused);
+    }
+
+    private Map<String, Integer> countSessionsByStatus() {
+        Map<String, Integer> counts = new TreeMap<>();
+        counts.put("Waiting", 0);
+        counts.put("In Progress", 0);
+        // the status field is read without the session's lock; a scrape can be one change behind
+        forEachSession(session -> counts.merge(session.getStatus(), 1, Integer::sum));
+        return counts;
+    }
+
+    private Map<String, Integer> sessionLoopQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        if (sessionLoops != null) {
+            for (int i = 0; i < sessionLoops.length; i++) {
+                depths.put(Integer.toString(i), sessionLoops[i].getQueueDepth());
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Shard owning the given player or game ID.
+     */
+    private LobbyShard shardFor(String id) {
+        return shards[slot(id, shards.length)];
+    }
+
+    private static int slot(String id, int count) {
+        int h = id.hashCode();
+        // mix the high bits in; ids differ mostly in their last characters
+        return Math.floorMod(h ^ (h >>> 16), count);
+    }
 
     /**
      * TODO 1: Add Player to Lobby (10 minutes)
@@ -33,7 +216,7 @@ public class GameLobbyManager {
      * @param handler The ClientHandler for this player
      */
     public void addPlayer(String playerId, String playerName, ClientHandler handler) {
-        players.put(playerId, handler);
+        shardFor(playerId).addPlayer(playerId, handler);
     }
 
     /**
@@ -42,11 +225,11 @@ public class GameLobbyManager {
      * Removes a player and handles cleanup.
      * 
      * Steps:
-     * 1. Remove player from players map and store the handler
+     * 1. Remove player from its shard and store the handler
      * 2. If handler was found:
-     *    a. Check if player was in a game (playerToGame map)
+     *    a. Check if player was in a game (the shard's playerToGame map)
      *    b. If yes, remove from playerToGame map
-     *    c. Get the GameSession they were in
+     *    c. Get the GameSession they were in, from the game's shard
      *    d. If session exists:
      *       - Call session.removePlayer(playerId)
      *       - Broadcast "PLAYER_LEFT:gameId:playerName" to remaining players
@@ -55,17 +238,120 @@ public class GameLobbyManager {
      */
     public void removePlayer(String playerId) {
         //player removal with cleanup
-        ClientHandler handler = players.remove(playerId);
+        LobbyShard shard = shardFor(playerId);
+        ClientHandler handler = shard.removePlayer(playerId);
         if (handler != null) {
-            String gameId = playerToGame.remove(playerId);
-            if (gameId != null) {
-                GameSession session = sessions.get(gameId);
-                if (session != null) {
-                    session.removePlayer(playerId);
-                    session.broadcast("PLAYER_LEFT:" + gameId + ":" + handler.getPlayerName(), playerId);
+            playerRemoved(shard, playerId, handler);
+        }
+    }
+
+    private void playerRemoved(LobbyShard shard, String playerId, ClientHandler handler) {
+        matchmaking.playerLeft(playerId);
+        String gameId = shard.removeGame(playerId);
+        if (gameId != null) {
+            GameSession session = getSession(gameId);
+            if (session != null) {
+                session.removePlayer(playerId);
+                session.broadcast("PLAYER_LEFT:" + gameId + ":" + handler.getPlayerName(), playerId);
+            }
+        }
+    }
+
+    /**
+     * Restores sessions whose players have no connection here yet (after a
+     * standby takeover or a restart). Every seat is held by a detached
+     * ClientHandler until its player sends RESUME with the session token;
+     * seats still held after HELD_SEAT_MILLIS are given up.
+     * 
+     * @return The number of sessions restored
+     */
+    public int restoreHeld(Collection<SessionSnapshot> states) {
+        List<ClientHandler> held = new ArrayList<>();
+        int restored = 0;
+        for (SessionSnapshot state : states) {
+            Map<String, ClientHandler> handlers = new HashMap<>();
+            List<String> ids = state.getPlayerIds();
+            for (int i = 0; i < ids.size(); i++) {
+                String token = state.getTokens().get(i);
+                ClientHandler seat = new ClientHandler(ids.get(i), state.getPlayerNames().get(i),
+                                                       token.isEmpty() ? null : token, this);
+                addPlayer(ids.get(i), seat.getPlayerName(), seat);
+                if (!token.isEmpty()) {
+                    heldSeats.put(token, seat);
                 }
+                handlers.put(ids.get(i), seat);
+                held.add(seat);
+            }
+            if (restoreSession(state, handlers) != null) restored++;
+        }
+        // new players must not be handed an ID the previous server gave out
+        ClientHandler.advancePlayerIds();
+        if (held.isEmpty()) return restored;
+
+        Thread reaper = new Thread(() -> {
+            try {
+                Thread.sleep(HELD_SEAT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            int released = 0;
+            for (ClientHandler seat : held) {
+                if (releaseHeldSeat(seat)) released++;
             }
+            System.out.println("GameLobbyManager: " + (held.size() - released) + " of " + held.size()
+                               + " players resumed, released the rest");
+        }, "HeldSeatReaper");
+        reaper.setDaemon(true);
+        reaper.start();
+        return restored;
+    }
+
+    /**
+     * Claims the held seat for a session token, so only one connection can
+     * resume it.
+     * 
+     * @return The seat's detached handler, or null if the token holds none
+     */
+    ClientHandler takeHeldSeat(String token) {
+        return heldSeats.remove(token);
+    }
+
+    /**
+     * Hands a held seat to the player's new connection. The session then
+     * brings the player up to date.
+     * 
+     * @return false if the seat was given up in the meantime
+     */
+    boolean resumePlayer(ClientHandler held, ClientHandler handler) {
+        String playerId = held.getPlayerId();
+        LobbyShard shard = shardFor(playerId);
+        if (!shard.replacePlayer(playerId, held, handler)) {
+            return false;
+        }
+        // CONNECTED goes out before the session's GAME_JOINED
+        handler.sendMessage("CONNECTED:" + playerId);
+        String gameId = shard.getGame(playerId);
+        GameSession session = gameId == null ? null : getSession(gameId);
+        if (session != null) {
+            session.rebindPlayer(playerId, handler);
+        }
+        return true;
+    }
+
+    /**
+     * Gives up a held seat that was never resumed, as if the player left.
+     * 
+     * @return true if the seat was still held
+     */
+    boolean releaseHeldSeat(ClientHandler held) {
+        if (held.getSessionToken() != null) {
+            heldSeats.remove(held.getSessionToken(), held);
         }
+        String playerId = held.getPlayerId();
+        LobbyShard shard = shardFor(playerId);
+        if (!shard.removePlayer(playerId, held)) return false;
+        playerRemoved(shard, playerId, held);
+        return true;
     }
 
     /**
@@ -76,24 +362,103 @@ public class GameLobbyManager {
      * Steps:
      * 1. Generate a unique game ID: "g" + UUID.randomUUID().toString().substring(0, 8)
      * 2. Create a new GameSession with the gameId, gameName, requiredPlayers, and this manager
-     * 3. Add the session to the sessions map
+     * 3. Publish its summary, then add the session to its shard
      * 4. Return the gameId
      * 
      * Note: The creator is NOT automatically added to the game - they must join manually
      * 
      * @param gameName The name for the game
      * @param requiredPlayers Number of players needed to start
-     * @param creatorId The ID of the player creating the game
-     * @return The generated game ID
+     * @param creatorId The ID of the player creating the game, or null for
+     *                  the server itself
+     * @return The generated game ID, or null if AdmissionControl refused it
      */
     public String createGame(String gameName, int requiredPlayers, String creatorId) {
         // generating game id
-        String gameId = "g" + UUID.randomUUID().toString().substring(0, 8);
-        // creating game session
-        GameSession session = new GameSession(gameId, gameName, requiredPlayers, this);
-        // adding to session map and returning gameid
-        sessions.put(gameId, session);
-        return gameId;
+        String gameId = newGameId();
+        return createGameWithId(gameId, gameName, requiredPlayers, creatorId) == null ? gameId : null;
+    }
+
+    static String newGameId() {
+        return "g" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Creates a game under an ID chosen by the caller; the cluster picks IDs
+     * by where they hash to. The game's slot is reserved with
+     * AdmissionControl first, for creatorId or, with null, for the server
+     * or a cluster peer, and given back if creation fails.
+     * 
+     * @return null once the game is listed, otherwise the reason to send
+     *         with BUSY
+     */
+    public String createGameWithId(String gameId, String gameName, int requiredPlayers, String creatorId) {
+        String busy = admission.reserveSession(gameId, creatorId, true);
+        if (busy != null) return busy;
+        GameSession session;
+        try {
+            // creating game session
+            SessionEventLoop loop = sessionLoops == null ? null : sessionLoops[slot(gameId, sessionLoops.length)];
+            session = new GameSession(gameId, gameName, requiredPlayers, this, loop);
+            journal.gameCreated(gameId, gameName, requiredPlayers);
+            // listing it before anyone can join keeps the published summary in step
+            GameSummary summary = session.getSummary();
+            LobbyShard shard = shardFor(gameId);
+            shard.getListingLock().lock();
+            try {
+                publish(shard, shard.getListing().with(summary), null, summary, true);
+            } finally {
+                shard.getListingLock().unlock();
+            }
+            // adding to the game's shard
+            shard.addSession(session);
+        } catch (RuntimeException e) {
+            admission.sessionRemoved(gameId);
+            throw e;
+        }
+        admission.sessionOpened(gameId);
+        replicate(gameId);
+        session.watchIdle(idleSessionMillis);
+        return null;
+    }
+
+    /**
+     * Installs a session moved here from another server. Players are
+     * re-linked to their games and the session is listed like a new one.
+     * 
+     * @param handlers Handler for each player still connected
+     * @return The restored session, or null if none of its players remain
+     */
+    public GameSession restoreSession(SessionSnapshot state, Map<String, ClientHandler> handlers) {
+        String gameId = state.getGameId();
+        SessionEventLoop loop = sessionLoops == null ? null : sessionLoops[slot(gameId, sessionLoops.length)];
+        GameSession session = GameSession.restore(state, this, loop, handlers);
+        if (session.getPlayerCount() == 0) return null;
+        // nobody can reach the session yet, so nothing is journaled before this
+        journal.snapshot(session.snapshot());
+        GameSummary summary = session.getSummary();
+        LobbyShard shard = shardFor(gameId);
+        shard.getListingLock().lock();
+        try {
+            LobbySnapshot.Part listing = shard.getListing();
+            LobbySnapshot.Part next = listing.with(summary);
+            if (next == listing) {
+                // listed unchanged from its old host; only the host is new
+                hostedGameChanged(gameId, summary);
+            } else {
+                publish(shard, next, listing.get(gameId), summary, true);
+            }
+        } finally {
+            shard.getListingLock().unlock();
+        }
+        shard.addSession(session);
+        for (String playerId : session.getPlayerIds()) {
+            shardFor(playerId).setGame(playerId, gameId);
+        }
+        replicate(gameId);
+        session.watchIdle(idleSessionMillis);
+        session.resumeTurnClock();
+        return session;
     }
 
     /**
@@ -102,47 +467,127 @@ public class GameLobbyManager {
      * Adds a player to an existing game.
      * 
      * Steps:
-     * 1. Get the GameSession from sessions map
-     * 2. Get the ClientHandler from players map
+     * 1. Get the GameSession from the game's shard
+     * 2. Get the ClientHandler from the player's shard
      * 3. If both exist:
      *    a. Try to add player to session: session.addPlayer(playerId, handler)
-     *    b. If successful, add to playerToGame map
-     *    c. Return true
-     * 4. Otherwise return false
+     *    b. If successful, record the game in the player's shard
+     *    c. Pass true to done
+     * 4. Otherwise pass false to done
+     * 
+     * The seat is taken on the session's loop when it has one, and done
+     * runs there, so the caller never waits for the loop.
      * 
      * @param gameId The ID of the game to join
      * @param playerId The ID of the player joining
-     * @return true if successfully joined, false otherwise
+     * @param done Gets true if successfully joined, false otherwise
      */
-    public boolean joinGame(String gameId, String playerId) {
+    public void joinGame(String gameId, String playerId, Consumer<Boolean> done) {
         // getting session and handler
-        GameSession session = sessions.get(gameId);
-        ClientHandler handler = players.get(playerId);
-        // attempting to add player and updating map if successful
-        if (session != null && handler != null) {
-            boolean added = session.addPlayer(playerId, handler);
+        GameSession session = getSession(gameId);
+        LobbyShard playerShard = shardFor(playerId);
+        ClientHandler handler = playerShard.getPlayer(playerId);
+        // a player holds one seat at a time: claim the game first so two
+        // concurrent joins cannot both seat them, and give it back on failure
+        if (session == null || handler == null || !playerShard.claimGame(playerId, gameId)) {
+            done.accept(false);
+            return;
+        }
+        session.addPlayer(playerId, handler, added -> {
             if (added) {
-                playerToGame.put(playerId, gameId);
-                return true;
+                // joining any game ends a matchmaking search
+                matchmaking.cancel(playerId);
+            } else {
+                playerShard.removeGame(playerId, gameId);
             }
-        }
-        return false;
+            done.accept(added);
+        });
+    }
+
+    /**
+     * The game the player is seated in, or null if none.
+     */
+    public String getPlayerGame(String playerId) {
+        return shardFor(playerId).getGame(playerId);
+    }
+
+    /**
+     * Takes a player out of a game they are leaving and frees them to
+     * join another.
+     */
+    public void leaveGame(GameSession session, String playerId) {
+        session.removePlayer(playerId);
+        shardFor(playerId).removeGame(playerId, session.getGameId());
     }
 
     
+    /**
+     * Seats a player in an open game for requiredPlayers, creating one if
+     * none is waiting. The seat itself is taken atomically by
+     * GameSession.addPlayer; losing a race for the last seat just moves on
+     * to the next candidate, so callers never have to retry.
+     * 
+     * @param done Gets the joined game ID, or null if the player is not
+     *             connected, already seated, or a game had to be opened
+     *             and AdmissionControl refused it; like joinGame's, it runs
+     *             on the session's loop
+     */
+    public void quickJoin(String playerId, int requiredPlayers, Consumer<String> done) {
+        if (playerId == null || getPlayer(playerId) == null || getPlayerGame(playerId) != null) {
+            done.accept(null);
+            return;
+        }
+        quickJoinAttempt(playerId, requiredPlayers, 0, done);
+    }
+
+    private void quickJoinAttempt(String playerId, int requiredPlayers, int attempt, Consumer<String> done) {
+        // a handful of lost races at most; after that a fresh game is cheaper
+        boolean last = attempt == QUICK_JOIN_ATTEMPTS - 1;
+        String gameId = last ? null : quickJoinIndex.candidate(requiredPlayers);
+        if (gameId == null) {
+            // only one quick game per size is opened at a time, so a burst of
+            // players finds it listed and fills it instead of each opening one
+            ReentrantLock quickJoinCreateLock = quickJoinCreateLocks.computeIfAbsent(requiredPlayers, n -> new ReentrantLock());
+            quickJoinCreateLock.lock();
+            try {
+                gameId = last ? null : quickJoinIndex.candidate(requiredPlayers);
+                if (gameId == null) {
+                    gameId = createGame("Quick Match", requiredPlayers, playerId);
+                }
+            } finally {
+                quickJoinCreateLock.unlock();
+            }
+            if (gameId == null) {
+                done.accept(null);
+                return;
+            }
+        }
+        String candidate = gameId;
+        joinGame(candidate, playerId, joined -> {
+            if (joined) {
+                done.accept(candidate);
+            } else if (last || getPlayer(playerId) == null || getPlayerGame(playerId) != null) {
+                // out of tries, gone, or seated by a join of their own meanwhile
+                done.accept(null);
+            } else {
+                quickJoinAttempt(playerId, requiredPlayers, attempt + 1, done);
+            }
+        });
+    }
+
     /**
      * TODO 5: Get Game Session (5 minutes)
      * 
      * Retrieves a game session by ID.
      * 
      * Steps:
-     * 1. Return the session from the sessions map
+     * 1. Return the session from its shard
      * 
      * @param gameId The game ID to look up
      * @return The GameSession, or null if not found
      */
     public GameSession getSession(String gameId) {
-        return sessions.get(gameId);
+        return shardFor(gameId).getSession(gameId);
     }
 
     /**
@@ -151,26 +596,322 @@ public class GameLobbyManager {
      * Removes a completed or empty game.
      * 
      * Steps:
-     * 1. Remove the session from sessions map
+     * 1. Remove the session from its shard
      * 2. If session was found:
-     *    a. For each player ID in the session, remove from playerToGame map
-     *    b. Broadcast updated game list to all players in lobby
+     *    a. For each player ID in the session, clear its game in the player's shard
+     *    b. Drop it from the shard's lobby listing, which tells the lobby
      * 
      * @param gameId The ID of the game to remove
      */
     public void removeSession(String gameId) {
         // remove session
-        GameSession session = sessions.remove(gameId);
+        LobbyShard shard = shardFor(gameId);
+        GameSession session = shard.removeSession(gameId);
         // cleanup
         if (session != null) {
+            admission.sessionRemoved(gameId);
             for (String pid : session.getPlayerIds()) {
-                playerToGame.remove(pid);
+                shardFor(pid).removeGame(pid, gameId);
+            }
+            replicate(gameId);
+            journal.gameRemoved(gameId);
+            shard.getListingLock().lock();
+            try {
+                LobbySnapshot.Part listing = shard.getListing();
+                publish(shard, listing.without(gameId), listing.get(gameId), null, true);
+            } finally {
+                shard.getListingLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves a game that just ended from the live lobby to the archive.
+     * Called by its session, under the session's lock.
+     */
+    void archiveSession(GameHistory result) {
+        archive.add(result);
+        removeSession(result.getGameId());
+    }
+
+    /**
+     * Publishes a session's new summary. Called by GameSession, under its own
+     * lock, whenever its player count or status changes. Sessions that are
+     * no longer listed are ignored so a late update cannot resurrect them.
+     * 
+     * @param summary The session's current summary
+     */
+    void sessionChanged(GameSummary summary) {
+        LobbyShard shard = shardFor(summary.getId());
+        shard.getListingLock().lock();
+        try {
+            LobbySnapshot.Part listing = shard.getListing();
+            if (listing.contains(summary.getId())) {
+                publish(shard, listing.with(summary), listing.get(summary.getId()), summary, true);
+            }
+        } finally {
+            shard.getListingLock().unlock();
+        }
+    }
+
+    /**
+     * Marks a session for replication after any change to its state, or
+     * its removal. Cheap enough to call under the session lock.
+     */
+    void replicate(String gameId) {
+        ReplicationServer replication = this.replication;
+        if (replication != null) {
+            replication.markDirty(gameId);
+        }
+    }
+
+    /**
+     * Writes a journal checkpoint: the state of every session hosted here,
+     * between CHECKPOINT_BEGIN and CHECKPOINT_END (see GameJournal).
+     */
+    public void checkpoint() {
+        GameJournal journal = this.journal;
+        int number = journal.beginCheckpoint();
+        forEachSession(session -> session.checkpoint(journal));
+        journal.endCheckpoint(number);
+    }
+
+    /**
+     * Visits every session hosted here.
+     */
+    void forEachSession(Consumer<GameSession> action) {
+        for (LobbyShard shard : shards) {
+            for (GameSession session : shard.getSessions()) {
+                action.accept(session);
+            }
+        }
+    }
+
+    /**
+     * Lists or updates a game hosted by another cluster node.
+     */
+    void remoteGameChanged(GameSummary summary) {
+        LobbyShard shard = shardFor(summary.getId());
+        shard.getListingLock().lock();
+        try {
+            LobbySnapshot.Part listing = shard.getListing();
+            publish(shard, listing.with(summary), listing.get(summary.getId()), summary, false);
+        } finally {
+            shard.getListingLock().unlock();
+        }
+    }
+
+    /**
+     * Drops a game hosted by another cluster node.
+     */
+    void remoteGameRemoved(String gameId) {
+        // a late notice from a game's old host after it moved here
+        if (getSession(gameId) != null) return;
+        // its creator's slot, if they created it from this node
+        admission.sessionRemoved(gameId);
+        LobbyShard shard = shardFor(gameId);
+        shard.getListingLock().lock();
+        try {
+            LobbySnapshot.Part listing = shard.getListing();
+            GameSummary previous = listing.get(gameId);
+            if (previous != null) {
+                publish(shard, listing.without(gameId), previous, null, false);
+            }
+        } finally {
+            shard.getListingLock().unlock();
+        }
+    }
+
+    /**
+     * Visits every listed game, one shard at a time under that shard's
+     * listing lock. A game's own changes are published under the same
+     * lock, so each game is seen either before or after a change, never
+     * half way; the cluster uses this to bring a new peer up to date.
+     */
+    void forEachGame(Consumer<GameSummary> action) {
+        for (LobbyShard shard : shards) {
+            shard.getListingLock().lock();
+            try {
+                for (GameSummary summary : shard.getListing().getGames()) {
+                    action.accept(summary);
+                }
+            } finally {
+                shard.getListingLock().unlock();
             }
-            // broadcast updated game list
-            broadcastToLobby("GAME_LIST:" + getGameListJson());
         }
     }
 
+    /**
+     * Updates the query indexes, pushes the matching delta to subscribers,
+     * installs the shard's next listing and schedules a full GAME_LIST for
+     * everyone else. Must be called while holding the shard's listing
+     * lock, which keeps each shard's deltas in version order. The delta
+     * goes out before the listing is installed, so whoever reads a version
+     * has already been sent every delta up to it.
+     * 
+     * @param previous The game's old summary, or null if it is new
+     * @param current The game's new summary, or null if it was removed
+     * @param local Whether the game is hosted here rather than on a peer
+     */
+    private void publish(LobbyShard shard, LobbySnapshot.Part next, GameSummary previous, GameSummary current,
+                         boolean local) {
+        if (next == shard.getListing()) return;
+        index.update(previous, current);
+        if (local) {
+            hostedGameChanged(current != null ? current.getId() : previous.getId(), current);
+        }
+        if (hasDeltaSubscribers()) {
+            String delta;
+            String position = shard.getIndex() + ":" + next.getVersion() + ":";
+            if (current == null) {
+                delta = "GAME_REMOVED:" + position + previous.getId();
+            } else {
+                delta = (previous == null ? "GAME_ADDED:" : "GAME_UPDATED:") + position + current.toJson();
+            }
+            EncodedMessage encoded = EncodedMessage.lobbyUpdate(delta);
+            int recipients = 0;
+            for (LobbyShard subscribers : shards) {
+                recipients += subscribers.sendToSubscribers(encoded);
+            }
+            EncodedMessage.recordBroadcast(recipients);
+        }
+        shard.setListing(next);
+        scheduleGameList();
+    }
+
+    private boolean hasDeltaSubscribers() {
+        for (LobbyShard shard : shards) {
+            if (shard.hasSubscribers()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Indexes a game hosted here for quick join and announces it to the
+     * cluster. Must be called while holding the game's listing lock.
+     */
+    private void hostedGameChanged(String gameId, GameSummary current) {
+        // quick join only seats players in games hosted here
+        quickJoinIndex.update(current, gameId);
+        ClusterNode cluster = this.cluster;
+        if (cluster != null) {
+            cluster.localGameChanged(gameId, current);
+        }
+    }
+
+    /**
+     * Switches a player to delta updates and sends the versioned baseline,
+     * or with withList false just "LOBBY_VERSION:version". Both happen with
+     * every shard's listing lock held, so the next delta the player sees
+     * from any shard is exactly that shard's baseline version + 1.
+     */
+    public void subscribeToDeltas(ClientHandler handler, boolean withList) {
+        lockListings();
+        try {
+            shardFor(handler.getPlayerId()).subscribe(handler, !withList);
+            if (withList) {
+                handler.send(getSnapshot().getVersionedGameListMessage());
+            } else {
+                handler.sendMessage("LOBBY_VERSION:" + getSnapshot().getVersion());
+            }
+        } finally {
+            unlockListings();
+        }
+    }
+
+    /**
+     * Answers a filtered, sorted, paged GET_GAMES query from the indexes.
+     * Takes no lock: the version is read first, so a subscriber has been
+     * sent every delta up to it, and the page may already include changes
+     * whose deltas follow; applying those again changes nothing.
+     * 
+     * @return "GAME_PAGE:version:after:next:json", with after and next
+     *         empty for the first and the last page
+     * @throws IllegalArgumentException if the query's cursor is malformed
+     */
+    public String queryGames(GameQuery query) {
+        String version = getSnapshot().getVersion();
+        LobbyIndex.Page page = index.query(query);
+        StringBuilder json = new StringBuilder("[");
+        for (GameSummary summary : page.getGames()) {
+            if (json.length() > 1)
+                json.append(",");
+            summary.appendJson(json);
+        }
+        json.append("]");
+        String after = query.getAfter() == null ? "" : query.getAfter();
+        String next = page.getNext() == null ? "" : page.getNext();
+        return "GAME_PAGE:" + version + ":" + after + ":" + next + ":" + json;
+    }
+
+    public void unsubscribeFromDeltas(ClientHandler handler) {
+        if (handler.getPlayerId() != null) {
+            shardFor(handler.getPlayerId()).unsubscribe(handler);
+        }
+    }
+
+    public boolean isDeltaSubscriber(ClientHandler handler) {
+        // only connected players can subscribe
+        return handler.getPlayerId() != null && shardFor(handler.getPlayerId()).isSubscriber(handler);
+    }
+
+    /**
+     * Whether the player subscribed with LOBBY_MODE:DELTA_PAGED, and so
+     * loads the lobby page by page rather than as one list.
+     */
+    public boolean isPagedSubscriber(ClientHandler handler) {
+        return handler.getPlayerId() != null && shardFor(handler.getPlayerId()).isPagedSubscriber(handler);
+    }
+
+    /**
+     * Resends the versioned baseline to a delta subscriber (resync after a gap).
+     */
+    public void sendVersionedGameList(ClientHandler handler) {
+        lockListings();
+        try {
+            handler.send(getSnapshot().getVersionedGameListMessage());
+        } finally {
+            unlockListings();
+        }
+    }
+
+    /**
+     * Takes every shard's listing lock, always in shard order. Only a delta
+     * subscriber's baseline needs all shards to hold still at once.
+     */
+    private void lockListings() {
+        for (LobbyShard shard : shards) {
+            shard.getListingLock().lock();
+        }
+    }
+
+    private void unlockListings() {
+        for (int i = shards.length - 1; i >= 0; i--) {
+            shards[i].getListingLock().unlock();
+        }
+    }
+
+    /**
+     * Current lobby view: the listing of every shard. The view is only
+     * rebuilt after some shard published a change since the last call, and
+     * then just collects the shards' parts; their JSON is cached with them.
+     */
+    public LobbySnapshot getSnapshot() {
+        LobbySnapshot current = snapshot;
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i].getListing() != current.getPart(i)) {
+                LobbySnapshot.Part[] listings = new LobbySnapshot.Part[shards.length];
+                for (int j = 0; j < shards.length; j++) {
+                    listings[j] = shards[j].getListing();
+                }
+                current = new LobbySnapshot(listings);
+                snapshot = current;
+                break;
+            }
+        }
+        return current;
+    }
+
     /**
      * TODO 7: Generate Game List JSON (45 minutes)
      * 
@@ -182,41 +923,40 @@ public class GameLobbyManager {
      *   {"id":"g67890","name":"Game2","players":4,"maxPlayers":4,"status":"In Progress"}
      * ]
      * 
-     * Steps:
-     * 1. Create a StringBuilder starting with "["
-     * 2. Use a boolean flag to track if this is the first game (for comma placement)
-     * 3. For each GameSession in sessions.values():
-     *    a. If not first, append a comma
-     *    b. Append "{"
-     *    c. Append: "\"id\":\"" + session.getGameId() + "\","
-     *    d. Append: "\"name\":\"" + session.getGameName() + "\","
-     *    e. Append: "\"players\":" + session.getPlayerCount() + ","
-     *    f. Append: "\"maxPlayers\":" + session.getMaxPlayers() + ","
-     *    g. Append: "\"status\":\"" + session.getStatus() + "\""
-     *    h. Append "}"
-     *    i. Set first flag to false
-     * 4. Append "]" and return the string
+     * The JSON is built by LobbySnapshot from the per-session GameSummary
+     * objects (see GameSummary.appendJson) and cached per shard, so this
+     * only rebuilds the part of a shard whose games have changed.
      * 
      * @return JSON string representing all games
      */
     public String getGameListJson() {
-        // building JSON manually using stringbuilder
-        StringBuilder json = new StringBuilder("[");
-        boolean first = true;
-        for (GameSession session : sessions.values()) {
-            if (!first) 
-                json.append(",");
-            json.append("{");
-            json.append("\"id\":\"").append(session.getGameId()).append("\",");
-            json.append("\"name\":\"").append(session.getGameName()).append("\",");
-            json.append("\"players\":").append(session.getPlayerCount()).append(",");
-            json.append("\"maxPlayers\":").append(session.getMaxPlayers()).append(",");
-            json.append("\"status\":\"").append(session.getStatus()).append("\"");
-            json.append("}");
-            first = false;
+        return getSnapshot().toJson();
+    }
+
+    /**
+     * Schedules a full GAME_LIST broadcast unless one is already waiting,
+     * so a burst of lobby changes costs one list per GAME_LIST_DELAY_MILLIS
+     * rather than one per change.
+     */
+    private void scheduleGameList() {
+        if (gameListPending.compareAndSet(false, true)) {
+            timers.schedule(GAME_LIST_DELAY_MILLIS, this::broadcastGameList);
         }
-        json.append("]");
-        return json.toString();
+    }
+
+    /**
+     * Sends the cached GAME_LIST message to every connected player still on
+     * full-list updates; delta subscribers already got the changes themselves.
+     */
+    private void broadcastGameList() {
+        // cleared first: a change published while this runs schedules the next list
+        gameListPending.set(false);
+        EncodedMessage encoded = getSnapshot().getGameListMessage();
+        int recipients = 0;
+        for (LobbyShard shard : shards) {
+            recipients += shard.broadcast(encoded, true);
+        }
+        EncodedMessage.recordBroadcast(recipients);
     }
 
     /**
@@ -225,21 +965,176 @@ public class GameLobbyManager {
      * Sends a message to all connected players.
      * 
      * Steps:
-     * 1. Iterate through all ClientHandlers in the players map
-     * 2. For each handler, call handler.sendMessage(message)
+     * 1. Iterate through the players of every shard
+     * 2. For each handler, call handler.send() with the message encoded once
+     *    as a lobby update; a newer one may replace it for slow clients
      * 
      * @param message The message to broadcast
      */
     public void broadcastToLobby(String message) {
-        for (ClientHandler handler : players.values()) {
-            handler.sendMessage(message);
+        EncodedMessage encoded = EncodedMessage.lobbyUpdate(message);
+        int recipients = 0;
+        for (LobbyShard shard : shards) {
+            recipients += shard.broadcast(encoded, false);
         }
+        EncodedMessage.recordBroadcast(recipients);
+    }
+
+    public MatchmakingQueue getMatchmaking() {
+        return matchmaking;
+    }
+
+    public GameArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * The timer shared by every idle and deadline check in the server.
+     */
+    public TimingWheel getTimers() {
+        return timers;
+    }
+
+    /**
+     * PING to PONG times of all connections, in milliseconds.
+     */
+    public LatencyHistogram getRoundTripMillis() {
+        return roundTripMillis;
+    }
+
+    public void setIdleSessionMillis(long idleSessionMillis) {
+        this.idleSessionMillis = idleSessionMillis;
+    }
+
+    public void setTurnMillis(long turnMillis) {
+        this.turnMillis = turnMillis;
+    }
+
+    /**
+     * Time each player has for a turn before it is skipped; 0 for no limit.
+     */
+    public long getTurnMillis() {
+        return turnMillis;
+    }
+
+    public AdmissionControl getAdmission() {
+        return admission;
+    }
+
+    public ReplayStreamer getReplays() {
+        return replays;
+    }
+
+    /**
+     * The server's metrics, exported over JMX and HTTP.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Counts a guess evaluated by a session hosted here.
+     */
+    void countGuess() {
+        guesses.increment();
+    }
+
+    /**
+     * Counts a turn a session skipped at its deadline.
+     */
+    void countSkippedTurn() {
+        turnsSkipped.increment();
     }
 
     /**
      * Get a specific player's handler (already implemented)
      */
     public ClientHandler getPlayer(String playerId) {
-        return players.get(playerId);
+        return shardFor(playerId).getPlayer(playerId);
+    }
+
+    /**
+     * Runs action for every connected player, shard by shard.
+     */
+    public void forEachPlayer(Consumer<ClientHandler> action) {
+        for (LobbyShard shard : shards) {
+            shard.getPlayers().forEach(action);
+        }
+    }
+
+    public int getSessionCount() {
+        int count = 0;
+        for (LobbyShard shard : shards) {
+            count += shard.getSessionCount();
+        }
+        return count;
+    }
+
+    public int getPlayerCount() {
+        int count = 0;
+        for (LobbyShard shard : shards) {
+            count += shard.getPlayerCount();
+        }
+        return count;
+    }
+
+    public void setCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * The cluster this lobby belongs to, or null for a standalone server.
+     */
+    public ClusterNode getCluster() {
+        return cluster;
+    }
+
+    public void setReplication(ReplicationServer replication) {
+        this.replication = replication;
+    }
+
+    public void setJournal(GameJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * The session event journal; GameJournal.NONE when journaling is off.
+     */
+    public GameJournal getJournal() {
+        return journal;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Session event loops, or an empty array when sessions use locks.
+     */
+    public SessionEventLoop[] getSessionLoops() {
+        return sessionLoops == null ? new SessionEventLoop[0] : sessionLoops.clone();
+    }
+
+    /**
+     * Stops the lobby's background threads.
+     */
+    public void shutdown() {
+        matchmaking.stop();
+        replays.stop();
+        admission.stop();
+        metrics.stop();
+        timers.stop();
+        if (cluster != null) {
+            cluster.stop();
+        }
+        if (replication != null) {
+            replication.stop();
+        }
+        journal.close();
+        if (sessionLoops != null) {
+            for (SessionEventLoop loop : sessionLoops) {
+                loop.shutdown();
+            }
+        }
     }
 }
\ No newline at end of file
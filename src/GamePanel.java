@@ -15,11 +15,17 @@
  */
 
 import java.awt.*;
+import java.io.IOException;
 import java.util.*;
 import java.util.List;
 import javax.swing.*;
 
 public class GamePanel extends JPanel {
+    // how long to keep trying to get our seat back after the connection
+    // drops; a standby takes a few seconds to notice the primary is gone
+    private static final long RESUME_WINDOW_MILLIS = 30_000;
+    private static final long RESUME_RETRY_MILLIS = 1000;
+
     private String myPlayerId;
     private String currentPlayerId;
     private MastermindClient client;
@@ -428,6 +434,7 @@ public class GamePanel extends JPanel {
     private void handleBackToLobby() {
         // sending leave message
         client.send("LEAVE_GAME:" + gameId);
+        client.forgetGame(gameId);
         
         // navigate to lobby
         MastermindApp.showLobby();
@@ -458,6 +465,13 @@ public class GamePanel extends JPanel {
      *     * If your turn: "Your Turn!" in green (Color 46, 204, 113)
      *     * If not: "Waiting for other player..." in orange (Color 243, 156, 18)
      * 
+     * "TURN_DEADLINE:gameId:activePlayerId:seconds"
+     *   - If it's your turn, show the time you have in turnLabel
+     * 
+     * "TURN_SKIPPED:gameId:playerId:playerName:guessNum"
+     *   - Count the lost guess if it was yours
+     *   - Add chat message: "System: " + playerName + " ran out of time"
+     * 
      * "GUESS_RESULT:gameId:playerName:guessNum:black:white"
      *   - Add to history: playerName + " - Guess #" + guessNum + ": " + black + "B " + white + "W"
      * 
@@ -476,6 +490,19 @@ public class GamePanel extends JPanel {
      * "PLAYER_LEFT:gameId:playerName"
      *   - Add chat message: "System: " + playerName + " left the game"
      * 
+     * "THROTTLED:CHAT:retryAfterMillis"
+     *   - Add chat message saying to slow down (the message was not sent)
+     * 
+     * "GAME_EXPIRED:gameId"
+     *   - The game waited too long for players and was closed
+     *   - Show a dialog and go back to the lobby (no LEAVE_GAME; the game is gone)
+     * 
+     * "ERROR:Connection lost"
+     *   - Try to take the seat back with RESUME (see reconnect)
+     * 
+     * "ERROR:Nothing to resume"
+     *   - The server kept no seat for us; show a dialog and go to the main menu
+     * 
      * @param message The message from the server
      */
     private void handleServerMessage(String message) {
@@ -524,6 +551,23 @@ public class GamePanel extends JPanel {
                 }
                 break;
 
+            case "TURN_DEADLINE":
+                if (tokens.length >= 4 && tokens[1].equals(gameId) && tokens[2].trim().equals(myPlayerId)) {
+                    turnLabel.setText("Your Turn! (" + tokens[3] + " s)");
+                }
+                break;
+
+            case "TURN_SKIPPED":
+                if (tokens.length >= 5 && tokens[1].equals(gameId)) {
+                    // names need not be unique, so match on the ID
+                    if (tokens[2].trim().equals(myPlayerId)) {
+                        guessesMade++;
+                        guessesLabel.setText("Guesses Left: " + (totalGuessesAllowed - guessesMade));
+                    }
+                    addChatMessage("System: " + tokens[3] + " ran out of time");
+                }
+                break;
+
             case "GUESS_RESULT":
                 if (tokens.length >= 7 && tokens[1].equals(gameId)) {
                     String playerName = tokens[2];
@@ -547,6 +591,7 @@ public class GamePanel extends JPanel {
                     String winnerName = tokens[2];
                     String guessCount = tokens[3];
                     isMyTurn = false;
+                    client.forgetGame(gameId);
                     addChatMessage("System: " + winnerName + " won in " + guessCount + " guesses!");
                     JOptionPane.showMessageDialog(this, winnerName + " won in " + guessCount + " guesses!", "Game Over", JOptionPane.INFORMATION_MESSAGE);
                     turnLabel.setText("GAME OVER!");
@@ -558,6 +603,7 @@ public class GamePanel extends JPanel {
                 if (tokens.length >= 3 && tokens[1].equals(gameId)) {
                     String secretCode = tokens[2];
                     isMyTurn = false;
+                    client.forgetGame(gameId);
                     revealSecretCode(secretCode);
                     addChatMessage("Game over! The code was: " + secretCode);
                     JOptionPane.showMessageDialog(this, "Game over! The code was: " + secretCode, "Game Over", JOptionPane.INFORMATION_MESSAGE);
@@ -580,9 +626,71 @@ public class GamePanel extends JPanel {
                     addChatMessage("System: " + tokens[2] + " left the game");
                 }
                 break;
+
+            case "THROTTLED":
+                if (tokens.length >= 3 && tokens[1].equals("CHAT")) {
+                    try {
+                        long seconds = (Long.parseLong(tokens[2].trim()) + 999) / 1000;
+                        addChatMessage("System: You are chatting too fast; wait " + seconds + " s");
+                    } catch (NumberFormatException e) {
+                        addChatMessage("System: You are chatting too fast; slow down");
+                    }
+                }
+                break;
+
+            case "GAME_EXPIRED":
+                if (tokens[1].equals(gameId)) {
+                    isMyTurn = false;
+                    client.forgetGame(gameId);
+                    JOptionPane.showMessageDialog(this, "Nobody joined in time, so the game was closed.", "Game Closed", JOptionPane.INFORMATION_MESSAGE);
+                    MastermindApp.showLobby();
+                }
+                break;
+
+            case "ERROR":
+                if (tokens[1].equals("Connection lost") && client.canResume(gameId)) {
+                    reconnect();
+                } else if (tokens[1].equals("Connection lost") || tokens[1].equals("Nothing to resume")) {
+                    client.forgetGame(gameId);
+                    client.disconnect();
+                    JOptionPane.showMessageDialog(this, "Lost the connection to the game.", "Disconnected", JOptionPane.ERROR_MESSAGE);
+                    MastermindApp.showMainMenu();
+                }
+                break;
         }
 }
 
+    /**
+     * Reconnects in the background and sends RESUME with the session
+     * token our seat was taken under, retrying while the server (or the
+     * standby taking over from it) comes back. The reply arrives here as
+     * GAME_JOINED and TURN_UPDATE.
+     */
+    private void reconnect() {
+        isMyTurn = false;
+        submitBtn.setEnabled(false);
+        turnLabel.setText("Reconnecting...");
+        turnLabel.setForeground(new Color(243, 156, 18));
+        addChatMessage("System: Connection lost, trying to get back into the game");
+        Thread t = new Thread(() -> {
+            long deadline = System.currentTimeMillis() + RESUME_WINDOW_MILLIS;
+            while (System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(RESUME_RETRY_MILLIS);
+                    client.resume(gameId, this::handleServerMessage);
+                    return;
+                } catch (IOException e) {
+                    // not back yet
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            SwingUtilities.invokeLater(() -> handleServerMessage("ERROR:Nothing to resume"));
+        }, "Reconnect");
+        t.setDaemon(true);
+        t.start();
+    }
+
 
     /**
      * Helper to update the turn label and submit button state
@@ -0,0 +1,94 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameQuery
+ *
+ * A filtered, sorted, paged lobby query, sent as
+ *
+ *   GET_GAMES:?status=Waiting&open=true&prefix=ab&sort=name&after=YWI&limit=50
+ *
+ * Every parameter is optional:
+ * - status: Waiting, In Progress or Finished (spaces may be sent as '+')
+ * - open:   true to list only waiting games with a free seat
+ * - prefix: case-insensitive game name prefix
+ * - sort:   oldest (default), newest, name or -name
+ * - after:  cursor from the previous page's reply; omit for the first page
+ * - limit:  page size, 1 to MAX_LIMIT (default DEFAULT_LIMIT)
+ *
+ * The reply is GAME_PAGE:version:after:next:json, where next is the cursor
+ * for the following page, or empty after the last one. A cursor belongs to
+ * its sort order. A page can hold fewer than limit games and still have a
+ * next cursor when a name prefix is matched against a long creation order
+ * (see LobbyIndex).
+ */
+
+import java.util.Locale;
+
+public class GameQuery {
+    public enum Sort { OLDEST, NEWEST, NAME, NAME_DESC }
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 200;
+
+    private String status;
+    private boolean openOnly;
+    private String prefix = "";
+    private Sort sort = Sort.OLDEST;
+    private String after;
+    private int limit = DEFAULT_LIMIT;
+
+    /**
+     * Parses the part after '?'.
+     *
+     * @throws IllegalArgumentException if a parameter is unknown or malformed
+     */
+    public static GameQuery parse(String query) {
+        GameQuery q = new GameQuery();
+        if (query == null || query.isEmpty()) return q;
+        for (String param : query.split("&")) {
+            if (param.isEmpty()) continue;
+            int eq = param.indexOf('=');
+            String key = eq == -1 ? param : param.substring(0, eq);
+            String value = eq == -1 ? "" : param.substring(eq + 1).replace('+', ' ');
+            switch (key) {
+                case "status":
+                    q.status = value.isEmpty() ? null : value;
+                    break;
+                case "open":
+                    q.openOnly = value.isEmpty() || Boolean.parseBoolean(value);
+                    break;
+                case "prefix":
+                    q.prefix = value.toLowerCase(Locale.ROOT);
+                    break;
+                case "sort":
+                    q.sort = parseSort(value);
+                    break;
+                case "after":
+                    q.after = value.isEmpty() ? null : value;
+                    break;
+                case "limit":
+                    q.limit = Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(value)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown query parameter: " + key);
+            }
+        }
+        return q;
+    }
+
+    private static Sort parseSort(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "": case "oldest": return Sort.OLDEST;
+            case "newest": return Sort.NEWEST;
+            case "name": return Sort.NAME;
+            case "-name": return Sort.NAME_DESC;
+            default: throw new IllegalArgumentException("Unknown sort: " + value);
+        }
+    }
+
+    // Getters
+    public String getStatus() { return status; }
+    public boolean isOpenOnly() { return openOnly; }
+    public String getPrefix() { return prefix; }
+    public Sort getSort() { return sort; }
+    public String getAfter() { return after; }
+    public int getLimit() { return limit; }
+}
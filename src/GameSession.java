@@ -4,6 +4,24 @@
  * This class represents a single game instance with multiple players.
  * It manages turn-taking, guess evaluation, and game state.
  * 
+ * By default callers serialize on the session lock. A session created with
+ * a SessionEventLoop runs on that loop instead: calls from other threads
+ * are handed to the loop (those returning a value wait for it) and the
+ * lock is skipped, since only the loop thread ever touches the state.
+ * 
+ * Starts, guesses, results, wins and leaves are queued to the lobby's
+ * GameJournal; the journal writes them on its own thread.
+ * 
+ * With a turn limit set on the lobby, every turn gets a deadline on the
+ * lobby's TimingWheel, announced as TURN_DEADLINE:gameId:playerId:seconds
+ * after each TURN_UPDATE. A player who lets it pass loses that guess
+ * (TURN_SKIPPED:gameId:playerId:playerName:guessNum) and the turn moves on, so a
+ * player who walks away cannot stall the game.
+ * 
+ * Guesses are also recorded in a GameHistory. When the game ends the
+ * lobby archives that and drops the session (see GameArchive); players
+ * still at the table get the final messages and nothing after.
+ * 
  * LEARNING OBJECTIVES:
  * - Concurrent access control with locks
  * - Game state management
@@ -13,19 +31,29 @@
  */
 
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
 
 public class GameSession {
+    // times a caller found the lock held and had to park for it
+    private static final LongAdder contendedLocks = new LongAdder();
+
     private final String gameId;
     private final String gameName;
     private final int requiredPlayers;
     private final GameLobbyManager lobby;
     private final ReentrantLock lock = new ReentrantLock();
+    // owning loop, or null to use the lock
+    private final SessionEventLoop loop;
     
     private final Map<String, ClientHandler> players = new LinkedHashMap<>();
     private final Map<String, Integer> guessCount = new HashMap<>();
     private final List<String> turnOrder = new ArrayList<>();
     private final Map<String, String> playerNames = new HashMap<>();
+    // each player's place in join order, which the journal records instead of IDs
+    private final Map<String, Integer> seats = new HashMap<>();
+    private int nextSeat = 0;
     
     private GameState gameState;
     private String secretCode;
@@ -33,12 +61,31 @@ public class GameSession {
     private int totalGuessesMade = 0; 
     private String status = "Waiting";
     private boolean started = false;
+    // when a player last joined or left, for the idle check
+    private long lastChangeNanos = System.nanoTime();
+    // moves so far, from startGame until the game ends
+    private GameHistory.Recorder history;
+    // deadline of the current turn, and a count of turns so a stale one is ignored
+    private TimingWheel.Timeout turnTimer;
+    private long turnDeadlineNanos;
+    private int turnNumber = 0;
+    // set once the session has been handed to another server; it then ignores further changes
+    private boolean frozen = false;
+    // the summary last pushed to the lobby, for callers off the loop
+    private volatile GameSummary published;
 
     public GameSession(String gameId, String gameName, int requiredPlayers, GameLobbyManager lobby) {
+        this(gameId, gameName, requiredPlayers, lobby, null);
+    }
+
+    public GameSession(String gameId, String gameName, int requiredPlayers, GameLobbyManager lobby,
+                       SessionEventLoop loop) {
         this.gameId = gameId;
         this.gameName = gameName;
         this.requiredPlayers = requiredPlayers;
         this.lobby = lobby;
+        this.loop = loop;
+        this.published = summaryLocked();
     }
 
     /**
@@ -57,27 +104,49 @@ public class GameSession {
      * 8. Broadcast updated game list to lobby
      * 9. Release lock and return true
      * 
+     * On a session loop this must run on the loop; other threads use the
+     * callback form below.
+     * 
      * @param playerId The unique ID of the player
      * @param handler The ClientHandler for this player
      * @return true if player was added successfully, false otherwise
      */
     public boolean addPlayer(String playerId, ClientHandler handler) {
-        lock.lock();
+        requireLoop();
+        acquireLock();
         try {
-            // player add logic
-            if (players.size() >= requiredPlayers || started) {
+            // player add logic; a seated player never takes a second seat
+            if (players.size() >= requiredPlayers || started || frozen || players.containsKey(playerId)) {
                 return false;
             }
             
             players.put(playerId, handler);
             playerNames.put(playerId, handler.getPlayerName());
             guessCount.put(playerId, 0);
+            seats.put(playerId, nextSeat);
+            lastChangeNanos = System.nanoTime();
+            lobby.getJournal().playerJoined(gameId, nextSeat++, playerId, handler.getSessionToken(),
+                                            handler.getPlayerName());
+            publishSummary();
             return true;
         } finally {
-            lock.unlock();
+            releaseLock();
         }
     }
 
+    /**
+     * Adds a player without waiting for the session's loop: done gets the
+     * result of addPlayer, on the loop (or right away without one), so a
+     * reply sent from it is ordered with the session's own messages.
+     */
+    public void addPlayer(String playerId, ClientHandler handler, Consumer<Boolean> done) {
+        if (offLoop()) {
+            loop.execute(() -> addPlayer(playerId, handler, done));
+            return;
+        }
+        done.accept(addPlayer(playerId, handler));
+    }
+
     /**
      * TODO 2: Remove Player from Game (15 minutes)
      * 
@@ -94,12 +163,22 @@ public class GameSession {
      * @param playerId The ID of the player to remove
      */
     public void removePlayer(String playerId) {
-        lock.lock();
+        if (offLoop()) {
+            loop.execute(() -> removePlayer(playerId));
+            return;
+        }
+        acquireLock();
         try {
+            if (frozen) return; // the new host sees the player leave instead
             // implementing player removal logic
             players.remove(playerId);
             playerNames.remove(playerId);
             guessCount.remove(playerId);
+            Integer seat = seats.remove(playerId);
+            if (seat != null) {
+                lobby.getJournal().playerLeft(gameId, seat);
+            }
+            lastChangeNanos = System.nanoTime();
             
             if (players.isEmpty()) {
                 lobby.removeSession(gameId);
@@ -129,8 +208,9 @@ public class GameSession {
                     }
                 }
             }
+            publishSummary();
         } finally {
-            lock.unlock();
+            releaseLock();
         }
     }
 
@@ -147,12 +227,13 @@ public class GameSession {
      * @return true if game can start, false otherwise
      */
     public boolean canStart() {
-        lock.lock();
+        if (offLoop()) return loop.call(this::canStart);
+        acquireLock();
         try {
             //game start check
             return players.size() == requiredPlayers && !started;
         } finally {
-            lock.unlock();
+            releaseLock();
         }
     }
 
@@ -175,18 +256,24 @@ public class GameSession {
      * 8. Release the lock
      */
     public void startGame() {
-        lock.lock();
+        if (offLoop()) {
+            loop.execute(this::startGame);
+            return;
+        }
+        acquireLock();
         try {
-            if (started) 
+            if (started || frozen) 
                 return; // don't start twice 
             
             started = true;
             status = "In Progress";
+            publishSummary();
             
             // generate secret code and game state
             secretCode = SecretCodeGenerator.getInstance().getNewSecretCode();
             gameState = new GameState(secretCode);
             System.out.println("[GameSession " + gameId + "] Code: " + secretCode);
+            lobby.getJournal().gameStarted(gameId, secretCode);
             
             // populate turn order
             turnOrder.addAll(players.keySet());
@@ -196,13 +283,35 @@ public class GameSession {
                 return;
             }
             String firstPlayerId = turnOrder.get(currentTurnIndex);
+            history = new GameHistory.Recorder(gameId, gameName, secretCode, turnOrder, playerNames, true);
             
             // Broadcast
             broadcast("GAME_STARTED:" + gameId + ":" + firstPlayerId, null);
             broadcastTurnUpdate();
             
         } finally {
-            lock.unlock();
+            releaseLock();
+        }
+    }
+
+    /**
+     * Starts the game if every seat is now taken; its new status reaches
+     * the lobby like any other change. The check and the start happen in
+     * one step, so two players taking the last seats at once cannot both
+     * start it.
+     */
+    public void startIfReady() {
+        if (offLoop()) {
+            loop.execute(this::startIfReady);
+            return;
+        }
+        acquireLock();
+        try {
+            if (players.size() == requiredPlayers && !started) {
+                startGame();
+            }
+        } finally {
+            releaseLock();
         }
     }
 
@@ -238,8 +347,16 @@ public class GameSession {
      * @param guess The guess string (e.g., "BGRP")
      */
     public void processGuess(String playerId, String guess) {
-        lock.lock();
+        if (offLoop()) {
+            loop.execute(() -> processGuess(playerId, guess));
+            return;
+        }
+        acquireLock();
         try {
+            if (frozen) {
+                players.get(playerId).sendMessage("ERROR:Game is moving to another server, try again.");
+                return;
+            }
             // check if game started
             if (!started) {
                 players.get(playerId).sendMessage("ERROR:Game has not started.");
@@ -263,8 +380,12 @@ public class GameSession {
             
             // Update counts
             totalGuessesMade++;
+            lobby.countGuess();
             int playerGuessNum = guessCount.get(playerId) + 1;
             guessCount.put(playerId, playerGuessNum);
+            lobby.replicate(gameId);
+            int seat = seats.get(playerId);
+            lobby.getJournal().guess(gameId, seat, playerGuessNum, guess, blackPegs, whitePegs);
             
             String playerName = playerNames.get(playerId);
 
@@ -276,27 +397,45 @@ public class GameSession {
             if (blackPegs == GameConfiguration.pegNumber) {
                 status = "Finished";
                 started = false;
+                stopTurnClock();
+                lobby.getMatchmaking().recordWin(playerId, playerNames.keySet());
+                lobby.getJournal().gameWon(gameId, seat, playerGuessNum);
                 broadcast("GAME_WON:" + gameId + ":" + playerName + ":" + playerGuessNum, null);
+                history.guess(playerId, playerGuessNum, guess, blackPegs, whitePegs, null);
+                lobby.archiveSession(history.won(playerId, totalGuessesMade));
                 return;
             }
             
             // check loss
             int maxGuesses = GameConfiguration.guessNumber * requiredPlayers;
             if (totalGuessesMade >= maxGuesses) {
-                status = "Finished";
-                started = false;
-                broadcast("GAME_OVER:" + gameId + ":" + secretCode, null);
+                history.guess(playerId, playerGuessNum, guess, blackPegs, whitePegs, null);
+                endUnsolved();
                 return;
             }
             
             // advance turn
             advanceTurn();
+            history.guess(playerId, playerGuessNum, guess, blackPegs, whitePegs, turnOrder.get(currentTurnIndex));
 
         } finally {
-            lock.unlock();
+            releaseLock();
         }
     }
 
+    /**
+     * Ends a game whose guesses have all been used up. Call with the lock
+     * held (or on the loop).
+     */
+    private void endUnsolved() {
+        status = "Finished";
+        started = false;
+        stopTurnClock();
+        lobby.getJournal().gameLost(gameId);
+        broadcast("GAME_OVER:" + gameId + ":" + secretCode, null);
+        lobby.archiveSession(history.lost(totalGuessesMade));
+    }
+
     /**
      * TODO 6: Advance Turn (15 minutes)
      * 
@@ -320,6 +459,80 @@ public class GameSession {
     private void broadcastTurnUpdate() {
         String nextPlayerId = turnOrder.get(currentTurnIndex);
         broadcast("TURN_UPDATE:" + gameId + ":" + nextPlayerId, null);
+        startTurnClock();
+    }
+
+    /**
+     * Gives the current turn a fresh deadline, if the lobby sets a turn
+     * limit, and tells the players. Call with the lock held (or on the loop).
+     */
+    private void startTurnClock() {
+        stopTurnClock();
+        long limitMillis = lobby.getTurnMillis();
+        if (limitMillis <= 0 || !started || turnOrder.isEmpty()) return;
+        int turn = ++turnNumber;
+        turnDeadlineNanos = System.nanoTime() + limitMillis * 1_000_000;
+        turnTimer = lobby.getTimers().schedule(limitMillis, () -> turnExpired(turn));
+        broadcast("TURN_DEADLINE:" + gameId + ":" + turnOrder.get(currentTurnIndex) + ":"
+                  + (limitMillis + 999) / 1000, null);
+    }
+
+    /**
+     * Starts the turn clock of a session restored mid-game.
+     */
+    void resumeTurnClock() {
+        if (offLoop()) {
+            loop.execute(this::resumeTurnClock);
+            return;
+        }
+        acquireLock();
+        try {
+            startTurnClock();
+        } finally {
+            releaseLock();
+        }
+    }
+
+    private void stopTurnClock() {
+        if (turnTimer != null) {
+            turnTimer.cancel();
+            turnTimer = null;
+        }
+    }
+
+    /**
+     * Runs when a turn's deadline passes: the player loses the guess and
+     * the turn moves on, or the game ends if that was the last guess.
+     */
+    private void turnExpired(int turn) {
+        if (offLoop()) {
+            loop.execute(() -> turnExpired(turn));
+            return;
+        }
+        acquireLock();
+        try {
+            // a guess, leave or restart since then made this deadline stale
+            if (turn != turnNumber || !started || frozen || turnOrder.isEmpty()) return;
+            turnTimer = null;
+            String playerId = turnOrder.get(currentTurnIndex);
+            int playerGuessNum = guessCount.get(playerId) + 1;
+            guessCount.put(playerId, playerGuessNum);
+            totalGuessesMade++;
+            lobby.countSkippedTurn();
+            lobby.replicate(gameId);
+            lobby.getJournal().turnSkipped(gameId, seats.get(playerId), playerGuessNum);
+            broadcast("TURN_SKIPPED:" + gameId + ":" + playerId + ":" + playerNames.get(playerId) + ":" + playerGuessNum,
+                      null);
+            if (totalGuessesMade >= GameConfiguration.guessNumber * requiredPlayers) {
+                history.skip(playerId, playerGuessNum, null);
+                endUnsolved();
+                return;
+            }
+            advanceTurn();
+            history.skip(playerId, playerGuessNum, turnOrder.get(currentTurnIndex));
+        } finally {
+            releaseLock();
+        }
     }
 
     /**
@@ -365,18 +578,289 @@ public class GameSession {
      * Steps:
      * 1. Iterate through all entries in the players map
      * 2. For each entry, check if we should exclude this player
-     * 3. If not excluded, call handler.sendMessage(message)
+     * 3. If not excluded, call handler.send() with the message encoded once up front
      * 
      * @param message The message to broadcast
      * @param excludePlayerId Player ID to exclude, or null to send to all
      */
     public void broadcast(String message, String excludePlayerId) {
+        if (offLoop()) {
+            // keeps it in order with the session's own messages
+            loop.execute(() -> broadcast(message, excludePlayerId));
+            return;
+        }
         System.out.println("Broadcast " + gameId + " - " + message);
+        // encoded once and shared by every recipient's outbound queue
+        EncodedMessage encoded = EncodedMessage.of(message);
+        int recipients = 0;
         for (Map.Entry<String, ClientHandler> entry : players.entrySet()) {
             if (excludePlayerId == null || !entry.getKey().equals(excludePlayerId)) {
-                entry.getValue().sendMessage(message);
+                entry.getValue().send(encoded);
+                recipients++;
             }
         }
+        EncodedMessage.recordBroadcast(recipients);
+    }
+
+    /**
+     * Captures the session's full state (see SessionSnapshot).
+     */
+    public SessionSnapshot snapshot() {
+        if (offLoop()) return loop.call(this::snapshot);
+        acquireLock();
+        try {
+            return snapshotLocked();
+        } finally {
+            releaseLock();
+        }
+    }
+
+    /**
+     * Captures the session's state and stops it, so nothing changes after
+     * the snapshot; used when the session moves to another server. Guesses
+     * made from then on are turned away.
+     */
+    public SessionSnapshot freeze() {
+        if (offLoop()) return loop.call(this::freeze);
+        acquireLock();
+        try {
+            frozen = true;
+            return snapshotLocked();
+        } finally {
+            releaseLock();
+        }
+    }
+
+    private SessionSnapshot snapshotLocked() {
+        List<String> ids = new ArrayList<>(players.keySet());
+        List<String> names = new ArrayList<>(ids.size());
+        List<Integer> guesses = new ArrayList<>(ids.size());
+        List<String> tokens = new ArrayList<>(ids.size());
+        List<Integer> seatList = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            names.add(playerNames.get(id));
+            guesses.add(guessCount.getOrDefault(id, 0));
+            String token = players.get(id).getSessionToken();
+            tokens.add(token != null ? token : "");
+            seatList.add(seats.get(id));
+        }
+        return new SessionSnapshot(gameId, gameName, requiredPlayers, status, started, secretCode,
+                                   totalGuessesMade, currentTurnIndex, ids, names, guesses, turnOrder,
+                                   tokens, seatList);
+    }
+
+    /**
+     * Writes the session's full state to the journal as part of a
+     * checkpoint. Done under the lock, so the journal holds every event
+     * before it in the snapshot and every event after it behind it.
+     */
+    public void checkpoint(GameJournal journal) {
+        if (offLoop()) {
+            loop.call(() -> {
+                checkpoint(journal);
+                return null;
+            });
+            return;
+        }
+        acquireLock();
+        try {
+            if (!frozen) {
+                journal.snapshot(snapshotLocked());
+            }
+        } finally {
+            releaseLock();
+        }
+    }
+
+    /**
+     * Closes this game if it is still waiting once nobody has joined or
+     * left for timeoutMillis (0 never does). Its players get
+     * GAME_EXPIRED:gameId and go back to the lobby. Checked on the lobby's
+     * TimingWheel; the check re-arms itself while players come and go, and
+     * stops once the game starts or leaves the lobby.
+     */
+    void watchIdle(long timeoutMillis) {
+        if (timeoutMillis > 0) {
+            scheduleIdleCheck(timeoutMillis, timeoutMillis);
+        }
+    }
+
+    private void scheduleIdleCheck(long delayMillis, long timeoutMillis) {
+        lobby.getTimers().schedule(delayMillis, () -> checkIdle(timeoutMillis));
+    }
+
+    private void checkIdle(long timeoutMillis) {
+        if (offLoop()) {
+            loop.execute(() -> checkIdle(timeoutMillis));
+            return;
+        }
+        acquireLock();
+        try {
+            if (started || frozen || !status.equals("Waiting") || lobby.getSession(gameId) != this) return;
+            long idleMillis = (System.nanoTime() - lastChangeNanos) / 1_000_000;
+            if (idleMillis < timeoutMillis) {
+                scheduleIdleCheck(timeoutMillis - idleMillis, timeoutMillis);
+                return;
+            }
+            System.out.println("[GameSession " + gameId + "] Closing after " + idleMillis / 1000 + " s waiting");
+            broadcast("GAME_EXPIRED:" + gameId, null);
+            lobby.removeSession(gameId);
+        } finally {
+            releaseLock();
+        }
+    }
+
+    /**
+     * Rebuilds a session from a snapshot. handlers maps each player ID to
+     * the handler to send to; players without one are dropped from the game
+     * as if they had left.
+     */
+    public static GameSession restore(SessionSnapshot snapshot, GameLobbyManager lobby, SessionEventLoop loop,
+                                      Map<String, ClientHandler> handlers) {
+        GameSession session = new GameSession(snapshot.gameId, snapshot.gameName, snapshot.requiredPlayers,
+                                              lobby, loop);
+        session.status = snapshot.status;
+        session.started = snapshot.started;
+        session.secretCode = snapshot.secretCode;
+        session.gameState = snapshot.secretCode != null ? new GameState(snapshot.secretCode) : null;
+        session.totalGuessesMade = snapshot.totalGuessesMade;
+        session.currentTurnIndex = snapshot.currentTurnIndex;
+        session.turnOrder.addAll(snapshot.turnOrder);
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < snapshot.playerIds.size(); i++) {
+            String id = snapshot.playerIds.get(i);
+            ClientHandler handler = handlers.get(id);
+            if (handler == null) {
+                missing.add(id);
+                continue;
+            }
+            session.players.put(id, handler);
+            int seat = snapshot.seats.get(i);
+            session.seats.put(id, seat);
+            session.nextSeat = Math.max(session.nextSeat, seat + 1);
+            session.playerNames.put(id, snapshot.playerNames.get(i));
+            session.guessCount.put(id, snapshot.guessCounts.get(i));
+        }
+        // a player missing from players cannot hold a turn either
+        for (String id : missing) {
+            session.dropMissingPlayer(id);
+        }
+        session.published = session.summaryLocked();
+        if (session.started && !session.turnOrder.isEmpty()) {
+            session.history = new GameHistory.Recorder(session.gameId, session.gameName, session.secretCode,
+                                                       session.turnOrder, session.playerNames, false);
+        }
+        return session;
+    }
+
+    /**
+     * Gives a player's seat to a new handler (a player resuming after a
+     * standby takeover) and sends it the game as it stands now.
+     */
+    public void rebindPlayer(String playerId, ClientHandler handler) {
+        if (offLoop()) {
+            loop.execute(() -> rebindPlayer(playerId, handler));
+            return;
+        }
+        acquireLock();
+        try {
+            if (!players.containsKey(playerId)) return;
+            players.put(playerId, handler);
+            List<String> names = new ArrayList<>();
+            for (String id : players.keySet()) {
+                names.add(playerNames.get(id));
+            }
+            handler.sendMessage("GAME_JOINED:" + gameId + ":" + String.join(",", names));
+            if (started) {
+                String current = turnOrder.get(currentTurnIndex);
+                handler.sendMessage("TURN_UPDATE:" + gameId + ":" + current);
+                if (turnTimer != null) {
+                    long leftMillis = Math.max(0, (turnDeadlineNanos - System.nanoTime()) / 1_000_000);
+                    handler.sendMessage("TURN_DEADLINE:" + gameId + ":" + current + ":" + (leftMillis + 999) / 1000);
+                }
+            }
+        } finally {
+            releaseLock();
+        }
+    }
+
+    private void dropMissingPlayer(String playerId) {
+        if (!turnOrder.contains(playerId) || turnOrder.size() == 1) {
+            turnOrder.remove(playerId);
+            currentTurnIndex = 0;
+            return;
+        }
+        String current = turnOrder.get(currentTurnIndex);
+        turnOrder.remove(playerId);
+        int index = turnOrder.indexOf(current);
+        currentTurnIndex = index >= 0 ? index : currentTurnIndex % turnOrder.size();
+    }
+
+    /**
+     * Takes the session lock, counting acquisitions that had to wait.
+     * Under virtual threads each of these is a park that unmounts the thread.
+     * Sessions on a loop skip it.
+     */
+    private void acquireLock() {
+        if (loop != null) return;
+        if (!lock.tryLock()) {
+            contendedLocks.increment();
+            lock.lock();
+        }
+    }
+
+    private void releaseLock() {
+        if (loop == null) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fails fast when a caller off the session's loop would otherwise have
+     * to block for it.
+     */
+    private void requireLoop() {
+        if (offLoop()) {
+            throw new IllegalStateException(gameId + " must be used from its session loop");
+        }
+    }
+
+    /**
+     * True when this session belongs to a loop and the caller is not on it.
+     */
+    private boolean offLoop() {
+        return loop != null && !loop.inEventLoop();
+    }
+
+    public static long getContendedLockCount() { return contendedLocks.sum(); }
+
+    /**
+     * Pushes this session's current summary to its shard's lobby listing.
+     * Must be called while holding the lock.
+     */
+    private void publishSummary() {
+        GameSummary summary = summaryLocked();
+        published = summary;
+        lobby.sessionChanged(summary);
+        lobby.replicate(gameId);
+    }
+
+    private GameSummary summaryLocked() {
+        return new GameSummary(gameId, gameName, players.size(), requiredPlayers, status);
+    }
+
+    /**
+     * Consistent lobby view of this session (count and status read together).
+     * Off the loop this is the summary last published, which never waits.
+     */
+    public GameSummary getSummary() {
+        if (offLoop()) return published;
+        acquireLock();
+        try {
+            return summaryLocked();
+        } finally {
+            releaseLock();
+        }
     }
 
     // Getters - already implemented
@@ -386,15 +870,38 @@ public class GameSession {
     public int getPlayerCount() { return players.size(); }
     public String getStatus() { return status; }
     
+    /**
+     * On a session loop this must run on the loop, e.g. from an addPlayer
+     * callback.
+     */
     public List<String> getPlayerNames() {
-        List<String> names = new ArrayList<>();
-        for (ClientHandler handler : players.values()) {
-            names.add(handler.getPlayerName());
+        requireLoop();
+        acquireLock();
+        try {
+            List<String> names = new ArrayList<>();
+            for (ClientHandler handler : players.values()) {
+                names.add(handler.getPlayerName());
+            }
+            return names;
+        } finally {
+            releaseLock();
         }
-        return names;
     }
     
     public Set<String> getPlayerIds() {
-        return new HashSet<>(players.keySet());
+        if (offLoop()) return loop.call(this::getPlayerIds);
+        acquireLock();
+        try {
+            return new HashSet<>(players.keySet());
+        } finally {
+            releaseLock();
+        }
+    }
+
+    /**
+     * The loop that owns this session, or null when it uses the lock.
+     */
+    public SessionEventLoop getLoop() {
+        return loop;
     }
 }
\ No newline at end of file
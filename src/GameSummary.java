@@ -0,0 +1,64 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameSummary
+ *
+ * Immutable lobby view of one GameSession, captured under the session's
+ * lock so the player count and status always belong together.
+ */
+
+import java.util.Objects;
+
+public final class GameSummary {
+    private final String id;
+    private final String name;
+    private final int players;
+    private final int maxPlayers;
+    private final String status;
+
+    public GameSummary(String id, String name, int players, int maxPlayers, String status) {
+        this.id = id;
+        this.name = name;
+        this.players = players;
+        this.maxPlayers = maxPlayers;
+        this.status = status;
+    }
+
+    public String getId() { return id; }
+    public String getName() { return name; }
+    public int getPlayers() { return players; }
+    public int getMaxPlayers() { return maxPlayers; }
+    public String getStatus() { return status; }
+
+    /**
+     * Appends this game as a JSON object:
+     * {"id":"g12345","name":"Game1","players":2,"maxPlayers":4,"status":"Waiting"}
+     */
+    public void appendJson(StringBuilder json) {
+        json.append("{");
+        json.append("\"id\":\"").append(id).append("\",");
+        json.append("\"name\":\"").append(name).append("\",");
+        json.append("\"players\":").append(players).append(",");
+        json.append("\"maxPlayers\":").append(maxPlayers).append(",");
+        json.append("\"status\":\"").append(status).append("\"");
+        json.append("}");
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        appendJson(json);
+        return json.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GameSummary)) return false;
+        GameSummary other = (GameSummary) o;
+        return players == other.players && maxPlayers == other.maxPlayers &&
+               id.equals(other.id) && name.equals(other.name) && status.equals(other.status);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name, players, maxPlayers, status);
+    }
+}
@@ -0,0 +1,93 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * HashRing
+ *
+ * Consistent hashing of game IDs onto cluster nodes. Each node owns
+ * VIRTUAL_NODES points on a 64-bit ring and a key belongs to the first
+ * point at or after its hash. Adding or removing a node therefore only
+ * moves the keys next to that node's points, about 1/N of them, instead
+ * of reshuffling everything the way hash % N would.
+ *
+ * The ring is replaced, never mutated, so lookups need no lock.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class HashRing {
+    private static final int VIRTUAL_NODES = 128;
+
+    private volatile NavigableMap<Long, String> ring = new TreeMap<>();
+    // serializes writers; readers just take the current ring
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public void add(String nodeId) {
+        writeLock.lock();
+        try {
+            TreeMap<Long, String> next = new TreeMap<>(ring);
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                next.put(hash(nodeId + "#" + i), nodeId);
+            }
+            ring = next;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void remove(String nodeId) {
+        writeLock.lock();
+        try {
+            TreeMap<Long, String> next = new TreeMap<>(ring);
+            next.values().removeIf(nodeId::equals);
+            ring = next;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Node that owns the key, or null if the ring is empty.
+     */
+    public String nodeFor(String key) {
+        NavigableMap<Long, String> current = ring;
+        if (current.isEmpty()) return null;
+        Map.Entry<Long, String> entry = current.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : current.firstEntry().getValue();
+    }
+
+    /**
+     * Node that would own the key if excluded were gone (the next node
+     * round the ring), or null if there is no other node.
+     */
+    public String nodeFor(String key, String excluded) {
+        NavigableMap<Long, String> current = ring;
+        long h = hash(key);
+        for (String node : current.tailMap(h, true).values()) {
+            if (!node.equals(excluded)) return node;
+        }
+        for (String node : current.headMap(h, false).values()) {
+            if (!node.equals(excluded)) return node;
+        }
+        return null;
+    }
+
+    public Set<String> getNodes() {
+        return new TreeSet<>(ring.values());
+    }
+
+    private static long hash(String key) {
+        try {
+            // MD5 spreads short, similar keys evenly; speed is not a concern here
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xff);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
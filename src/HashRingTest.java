@@ -0,0 +1,157 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * HashRingTest
+ *
+ * Behaviour checks for HashRing: keys spread evenly over the nodes, and
+ * adding or removing a node only moves about 1/N of them, all to or from
+ * that node.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.util.*;
+
+public class HashRingTest {
+    private static final int KEYS = 100_000;
+
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("   HashRing Tests");
+        System.out.println("========================================\n");
+
+        testEmptyRing();
+        testBalance();
+        testAddNode();
+        testRemoveNode();
+        testExcludedNode();
+
+        System.out.println("\n========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        if (testsFailed > 0) System.exit(1);
+    }
+
+    private static void testEmptyRing() {
+        HashRing ring = new HashRing();
+        check("empty ring owns nothing", ring.nodeFor("g00000001") == null);
+        ring.add("a");
+        check("single node owns everything", "a".equals(ring.nodeFor("g00000001")));
+        check("no other node to fall back to", ring.nodeFor("g00000001", "a") == null);
+    }
+
+    /**
+     * With four nodes every node holds within half of its fair share.
+     */
+    private static void testBalance() {
+        HashRing ring = ring("a", "b", "c", "d");
+        Map<String, Integer> counts = new HashMap<>();
+        for (String key : keys()) {
+            counts.merge(ring.nodeFor(key), 1, Integer::sum);
+        }
+        int fair = KEYS / 4;
+        boolean balanced = counts.size() == 4
+            && counts.values().stream().allMatch(c -> c > fair / 2 && c < fair * 3 / 2);
+        check("keys spread over all four nodes " + counts, balanced);
+    }
+
+    /**
+     * Going from three nodes to four moves about a quarter of the keys,
+     * and every moved key lands on the new node.
+     */
+    private static void testAddNode() {
+        HashRing ring = ring("a", "b", "c");
+        List<String> keys = keys();
+        Map<String, String> before = owners(ring, keys);
+        ring.add("d");
+        int moved = 0;
+        boolean onlyToNew = true;
+        for (String key : keys) {
+            String owner = ring.nodeFor(key);
+            if (owner.equals(before.get(key))) continue;
+            moved++;
+            if (!owner.equals("d")) onlyToNew = false;
+        }
+        double fraction = (double) moved / KEYS;
+        check(String.format("adding a 4th node moves about 1/4 (%.3f)", fraction),
+              fraction > 0.15 && fraction < 0.35);
+        check("moved keys all go to the new node", onlyToNew);
+    }
+
+    /**
+     * Removing one of four nodes moves only that node's keys.
+     */
+    private static void testRemoveNode() {
+        HashRing ring = ring("a", "b", "c", "d");
+        List<String> keys = keys();
+        Map<String, String> before = owners(ring, keys);
+        ring.remove("b");
+        int moved = 0;
+        boolean onlyFromRemoved = true;
+        for (String key : keys) {
+            String owner = ring.nodeFor(key);
+            if (owner.equals(before.get(key))) continue;
+            moved++;
+            if (!before.get(key).equals("b")) onlyFromRemoved = false;
+        }
+        double fraction = (double) moved / KEYS;
+        check(String.format("removing a node moves about 1/4 (%.3f)", fraction),
+              fraction > 0.15 && fraction < 0.35);
+        check("only the removed node's keys move", onlyFromRemoved);
+        check("removed node is gone", !ring.getNodes().contains("b"));
+    }
+
+    /**
+     * nodeFor(key, excluded) names the node that takes the key over once
+     * excluded leaves, which is what draining a node relies on.
+     */
+    private static void testExcludedNode() {
+        HashRing ring = ring("a", "b", "c", "d");
+        List<String> keys = keys();
+        Map<String, String> fallback = new HashMap<>();
+        for (String key : keys) {
+            fallback.put(key, ring.nodeFor(key, "c"));
+        }
+        ring.remove("c");
+        boolean matches = true;
+        for (String key : keys) {
+            if (!ring.nodeFor(key).equals(fallback.get(key))) matches = false;
+        }
+        check("excluded lookup matches the ring without the node", matches);
+    }
+
+    private static HashRing ring(String... nodes) {
+        HashRing ring = new HashRing();
+        for (String node : nodes) {
+            ring.add(node);
+        }
+        return ring;
+    }
+
+    private static List<String> keys() {
+        List<String> keys = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            keys.add(String.format("g%08x", i));
+        }
+        return keys;
+    }
+
+    private static Map<String, String> owners(HashRing ring, List<String> keys) {
+        Map<String, String> owners = new HashMap<>();
+        for (String key : keys) {
+            owners.put(key, ring.nodeFor(key));
+        }
+        return owners;
+    }
+
+    private static void check(String testName, boolean passed) {
+        if (passed) {
+            System.out.println("  ✓ PASS: " + testName);
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName);
+            testsFailed++;
+        }
+    }
+}
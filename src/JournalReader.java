@@ -0,0 +1,116 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * JournalReader
+ *
+ * Reads GameJournal segments back as events, joining each event with the
+ * TEXT records that follow it. Reading a segment stops at its unwritten
+ * tail or at the first damaged record; an event whose text was cut off is
+ * dropped.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+public final class JournalReader {
+    private JournalReader() {}
+
+    /**
+     * One journaled event. text is null for events that carry none.
+     */
+    public static final class Entry {
+        public final int segment;
+        public final long time;
+        public final int gameKey;
+        public final byte type;
+        public final int seat;
+        public final int number;
+        public final int code;
+        public final int black;
+        public final int white;
+        String text;
+
+        Entry(int segment, ByteBuffer record) {
+            this.segment = segment;
+            this.time = record.getLong(0);
+            this.gameKey = record.getInt(8);
+            this.type = record.get(12);
+            this.seat = record.get(13) & 0xFF;
+            this.number = record.getShort(14);
+            this.code = record.getInt(16);
+            this.black = record.get(20);
+            this.white = record.get(21);
+        }
+
+        public String getText() { return text; }
+    }
+
+    /**
+     * Whether an event of this type is followed by TEXT records.
+     */
+    static boolean hasText(byte type) {
+        return type == GameJournal.CREATED || type == GameJournal.JOINED || type == GameJournal.SNAPSHOT;
+    }
+
+    /**
+     * Passes every complete event in one segment file to consumer, in order.
+     *
+     * @return The number of records read
+     */
+    public static long read(Path file, Consumer<Entry> consumer) throws IOException {
+        return read(file, 0, consumer);
+    }
+
+    /**
+     * Same, starting at record index firstRecord of the segment.
+     */
+    public static long read(Path file, int firstRecord, Consumer<Entry> consumer) throws IOException {
+        int segment = GameJournal.segmentNumber(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            Entry pending = null;
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            byte[] chunk = new byte[GameJournal.RECORD_SIZE];
+            long records = 0;
+            for (int pos = firstRecord * GameJournal.RECORD_SIZE; pos + GameJournal.RECORD_SIZE <= data.limit(); pos += GameJournal.RECORD_SIZE) {
+                ByteBuffer record = data.slice(pos, GameJournal.RECORD_SIZE);
+                if (record.getLong(0) == 0) break;
+                crc.reset();
+                crc.update(record.slice(0, GameJournal.RECORD_SIZE - 4));
+                if ((int) crc.getValue() != record.getInt(GameJournal.RECORD_SIZE - 4)) {
+                    System.err.println("JournalReader - Damaged record at " + file.getFileName() + ":" + pos);
+                    break;
+                }
+                records++;
+                byte type = record.get(12);
+                if (type == GameJournal.TEXT) {
+                    if (pending == null) continue;
+                    int flags = record.get(13) & 0xFF;
+                    int length = flags & ~GameJournal.TEXT_MORE;
+                    record.get(14, chunk, 0, length);
+                    text.write(chunk, 0, length);
+                    if ((flags & GameJournal.TEXT_MORE) == 0) {
+                        pending.text = text.toString(StandardCharsets.UTF_8);
+                        consumer.accept(pending);
+                        pending = null;
+                    }
+                    continue;
+                }
+                // an event still waiting for its text here lost it
+                pending = null;
+                Entry entry = new Entry(segment, record);
+                if (hasText(type)) {
+                    pending = entry;
+                    text.reset();
+                } else {
+                    consumer.accept(entry);
+                }
+            }
+            return records;
+        }
+    }
+}
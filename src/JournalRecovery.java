@@ -0,0 +1,271 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * JournalRecovery
+ *
+ * Rebuilds the sessions that were waiting or in progress when the server
+ * stopped, from its GameJournal directory.
+ *
+ * Replay starts at the CHECKPOINT_BEGIN of the last complete checkpoint
+ * (found by scanning back from the newest segment for a CHECKPOINT_END),
+ * so recovery reads about one checkpoint interval of events however long
+ * the journal is. From there each game's state is built up event by event
+ * with the same rules GameSession applies; a SNAPSHOT replaces whatever
+ * was built for its game so far. Events of games that were created before
+ * the checkpoint and never snapshotted (finished or removed by then) are
+ * ignored.
+ *
+ * Games that finished or that nobody had joined are not restored.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public final class JournalRecovery {
+    private final Map<Integer, Game> games = new HashMap<>();
+    private long recordsRead;
+    private int firstSegment;
+    private int firstRecord;
+
+    private JournalRecovery() {}
+
+    /**
+     * What recovery found.
+     */
+    public static final class Result {
+        public final List<SessionSnapshot> sessions;
+        public final long recordsRead;
+        // where replay started
+        public final int firstSegment;
+        public final int firstRecord;
+        public final long millis;
+
+        Result(List<SessionSnapshot> sessions, long recordsRead, int firstSegment, int firstRecord, long millis) {
+            this.sessions = sessions;
+            this.recordsRead = recordsRead;
+            this.firstSegment = firstSegment;
+            this.firstRecord = firstRecord;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return sessions.size() + " sessions from " + recordsRead + " records (replayed from segment "
+                   + firstSegment + " record " + firstRecord + ") in " + millis + " ms";
+        }
+    }
+
+    public static Result recover(Path directory) throws IOException {
+        long start = System.nanoTime();
+        JournalRecovery recovery = new JournalRecovery();
+        List<Path> segments = GameJournal.segments(directory);
+        List<SessionSnapshot> sessions = segments.isEmpty() ? new ArrayList<>() : recovery.replay(segments);
+        return new Result(sessions, recovery.recordsRead, recovery.firstSegment, recovery.firstRecord,
+                          (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private List<SessionSnapshot> replay(List<Path> segments) throws IOException {
+        findLastCheckpoint(segments);
+        for (Path segment : segments) {
+            int number = GameJournal.segmentNumber(segment);
+            if (number < firstSegment) continue;
+            recordsRead += JournalReader.read(segment, number == firstSegment ? firstRecord : 0, this::apply);
+        }
+        List<SessionSnapshot> sessions = new ArrayList<>();
+        for (Game game : games.values()) {
+            if (!game.status.equals("Finished") && !game.players.isEmpty()) {
+                sessions.add(game.toSnapshot());
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Sets the replay start to the BEGIN of the newest complete checkpoint,
+     * or to the start of the journal if there is none.
+     */
+    private void findLastCheckpoint(List<Path> segments) throws IOException {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            // {segment, record} of the BEGIN
+            int[] begin = { -1, 0 };
+            recordsRead += JournalReader.read(segments.get(i), entry -> {
+                if (entry.type == GameJournal.CHECKPOINT_END) {
+                    begin[0] = entry.gameKey;
+                    begin[1] = entry.code;
+                }
+            });
+            if (begin[0] >= 0) {
+                firstSegment = begin[0];
+                firstRecord = begin[1];
+                return;
+            }
+        }
+        firstSegment = GameJournal.segmentNumber(segments.get(0));
+        firstRecord = 0;
+    }
+
+    private void apply(JournalReader.Entry entry) {
+        switch (entry.type) {
+            case GameJournal.CREATED: {
+                String[] idAndName = entry.getText().split("\t", 2);
+                games.put(entry.gameKey, new Game(idAndName[0], idAndName.length > 1 ? idAndName[1] : "",
+                                                  entry.number));
+                return;
+            }
+            case GameJournal.SNAPSHOT:
+                try {
+                    games.put(entry.gameKey, Game.from(SessionSnapshot.decode(
+                        Base64.getDecoder().decode(entry.getText()))));
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("JournalRecovery - Unreadable snapshot: " + e.getMessage());
+                }
+                return;
+            case GameJournal.CHECKPOINT_BEGIN:
+            case GameJournal.CHECKPOINT_END:
+                return;
+            default:
+                break;
+        }
+        Game game = games.get(entry.gameKey);
+        if (game == null) return;
+        switch (entry.type) {
+            case GameJournal.JOINED: {
+                String[] fields = entry.getText().split("\t", 3);
+                game.players.put(entry.seat, new Player(fields[0], fields[1], fields.length > 2 ? fields[2] : ""));
+                break;
+            }
+            case GameJournal.STARTED:
+                game.started = true;
+                game.status = "In Progress";
+                game.secret = GameJournal.unpackCode(entry.code);
+                game.turnOrder.clear();
+                game.turnOrder.addAll(game.players.keySet());
+                game.turnIndex = 0;
+                break;
+            case GameJournal.GUESS:
+            case GameJournal.TURN_SKIPPED: {
+                Player player = game.players.get(entry.seat);
+                if (player != null) player.guesses = entry.number;
+                game.totalGuesses++;
+                // a winning or last guess is followed by WON or LOST instead
+                if (!game.turnOrder.isEmpty()) {
+                    game.turnIndex = (game.turnIndex + 1) % game.turnOrder.size();
+                }
+                break;
+            }
+            case GameJournal.WON:
+            case GameJournal.LOST:
+                game.status = "Finished";
+                game.started = false;
+                break;
+            case GameJournal.LEFT:
+                if (game.remove(entry.seat)) {
+                    games.remove(entry.gameKey);
+                }
+                break;
+            case GameJournal.REMOVED:
+                games.remove(entry.gameKey);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static final class Player {
+        final String id;
+        final String token;
+        final String name;
+        int guesses;
+
+        Player(String id, String token, String name) {
+            this.id = id;
+            this.token = token;
+            this.name = name;
+        }
+    }
+
+    /**
+     * A game as replayed so far; players are keyed by seat in join order.
+     */
+    private static final class Game {
+        final String id;
+        final String name;
+        final int requiredPlayers;
+        final LinkedHashMap<Integer, Player> players = new LinkedHashMap<>();
+        final List<Integer> turnOrder = new ArrayList<>();
+        String status = "Waiting";
+        boolean started;
+        String secret;
+        int totalGuesses;
+        int turnIndex;
+
+        Game(String id, String name, int requiredPlayers) {
+            this.id = id;
+            this.name = name;
+            this.requiredPlayers = requiredPlayers;
+        }
+
+        static Game from(SessionSnapshot state) {
+            Game game = new Game(state.gameId, state.gameName, state.requiredPlayers);
+            game.status = state.status;
+            game.started = state.started;
+            game.secret = state.secretCode;
+            game.totalGuesses = state.totalGuessesMade;
+            game.turnIndex = state.currentTurnIndex;
+            Map<String, Integer> seatOf = new HashMap<>();
+            for (int i = 0; i < state.playerIds.size(); i++) {
+                Player player = new Player(state.playerIds.get(i), state.tokens.get(i), state.playerNames.get(i));
+                player.guesses = state.guessCounts.get(i);
+                game.players.put(state.seats.get(i), player);
+                seatOf.put(player.id, state.seats.get(i));
+            }
+            for (String id : state.turnOrder) {
+                Integer seat = seatOf.get(id);
+                if (seat != null) game.turnOrder.add(seat);
+            }
+            return game;
+        }
+
+        /**
+         * Removes a player the way GameSession.removePlayer does.
+         *
+         * @return true if the game is now gone
+         */
+        boolean remove(int seat) {
+            if (players.remove(seat) == null) return false;
+            if (players.isEmpty()) return true;
+            if (started) {
+                int current = turnOrder.get(turnIndex);
+                turnOrder.remove(Integer.valueOf(seat));
+                if (turnOrder.isEmpty()) return true;
+                if (current == seat) {
+                    turnIndex = turnIndex % turnOrder.size();
+                } else {
+                    turnIndex = Math.max(0, turnOrder.indexOf(current));
+                }
+            }
+            return false;
+        }
+
+        SessionSnapshot toSnapshot() {
+            List<String> ids = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            List<Integer> guesses = new ArrayList<>();
+            List<String> tokens = new ArrayList<>();
+            List<Integer> seats = new ArrayList<>();
+            for (Map.Entry<Integer, Player> entry : players.entrySet()) {
+                Player player = entry.getValue();
+                ids.add(player.id);
+                names.add(player.name);
+                guesses.add(player.guesses);
+                tokens.add(player.token);
+                seats.add(entry.getKey());
+            }
+            List<String> order = new ArrayList<>();
+            for (int seat : turnOrder) {
+                order.add(players.get(seat).id);
+            }
+            return new SessionSnapshot(id, name, requiredPlayers, status, started, secret, totalGuesses,
+                                       turnIndex, ids, names, guesses, order, tokens, seats);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * JournalRecoveryTest
+ *
+ * Behaviour checks for JournalRecovery: games played through a real lobby
+ * and journal are recovered exactly as GameSession.snapshot() describes
+ * them, whether replay starts at the first segment or at a checkpoint,
+ * and finished games are left out.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class JournalRecoveryTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+    private static int nextPlayer = 0;
+    // sessions log every broadcast to System.out, so results go here
+    private static final PrintStream results = System.out;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("========================================");
+        System.out.println("   JournalRecovery Tests");
+        System.out.println("========================================\n");
+
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            testWithoutCheckpoint();
+            testWithCheckpoint();
+        } finally {
+            System.setOut(results);
+        }
+
+        System.out.println("\n========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        if (testsFailed > 0) System.exit(1);
+    }
+
+    /**
+     * Replay from the first segment: a running game, a waiting game a
+     * player left, a running game a player left, and a finished game.
+     */
+    private static void testWithoutCheckpoint() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameLobbyManager lobby = lobby(directory);
+
+        GameSession running = game(lobby, 2, 2);
+        guess(running, 3);
+        GameSession waiting = game(lobby, 3, 2);
+        leave(lobby, waiting, 0);
+        GameSession deserted = game(lobby, 3, 3);
+        guess(deserted, 4);
+        leave(lobby, deserted, 1);
+        GameSession won = game(lobby, 2, 2);
+        guess(won, 1);
+        win(won);
+
+        Map<String, SessionSnapshot> expected = snapshots(running, waiting, deserted);
+        lobby.shutdown();
+        JournalRecovery.Result result = JournalRecovery.recover(directory);
+        checkRecovered("without a checkpoint", expected, result);
+        check("replay started at the first record", result.firstRecord == 0);
+    }
+
+    /**
+     * Replay from a checkpoint: games change after it (guesses, a leave, a
+     * new game, a win) and recovery still matches the live sessions.
+     */
+    private static void testWithCheckpoint() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        GameLobbyManager lobby = lobby(directory);
+
+        GameSession running = game(lobby, 2, 2);
+        guess(running, 2);
+        GameSession deserted = game(lobby, 3, 3);
+        guess(deserted, 2);
+        GameSession won = game(lobby, 2, 2);
+        GameSession waiting = game(lobby, 4, 3);
+
+        lobby.checkpoint();
+
+        guess(running, 3);
+        guess(deserted, 1);
+        leave(lobby, deserted, 0);
+        guess(deserted, 2);
+        win(won);
+        leave(lobby, waiting, 2);
+        GameSession late = game(lobby, 2, 2);
+        guess(late, 1);
+
+        Map<String, SessionSnapshot> expected = snapshots(running, deserted, waiting, late);
+        lobby.shutdown();
+        JournalRecovery.Result result = JournalRecovery.recover(directory);
+        checkRecovered("with a checkpoint", expected, result);
+        check("replay started at the checkpoint", result.firstRecord > 0);
+    }
+
+    private static GameLobbyManager lobby(Path directory) throws IOException {
+        GameLobbyManager lobby = new GameLobbyManager(2, 0);
+        GameJournal journal = new GameJournal(directory, 64 * 1024, 1);
+        journal.start();
+        lobby.setJournal(journal);
+        return lobby;
+    }
+
+    /**
+     * A game for requiredPlayers with joined players seated; it starts if
+     * that fills it.
+     */
+    private static GameSession game(GameLobbyManager lobby, int requiredPlayers, int joined) {
+        String gameId = lobby.createGame("recovery " + requiredPlayers, requiredPlayers, null);
+        GameSession session = lobby.getSession(gameId);
+        for (int i = 0; i < joined; i++) {
+            String playerId = "r" + nextPlayer++;
+            lobby.addPlayer(playerId, "Player " + playerId,
+                            new ClientHandler(playerId, "Player " + playerId, "t" + playerId, lobby));
+            // no session loops, so the seat is taken before this returns
+            lobby.joinGame(gameId, playerId, added -> { });
+        }
+        session.startIfReady();
+        return session;
+    }
+
+    /**
+     * Guesses that cannot win, by whoever's turn it is.
+     */
+    private static void guess(GameSession session, int guesses) {
+        for (int i = 0; i < guesses; i++) {
+            SessionSnapshot state = session.snapshot();
+            String guess = "RRRR".equals(state.secretCode) ? "GGGG" : "RRRR";
+            session.processGuess(state.turnOrder.get(state.currentTurnIndex), guess);
+        }
+    }
+
+    private static void win(GameSession session) {
+        SessionSnapshot state = session.snapshot();
+        session.processGuess(state.turnOrder.get(state.currentTurnIndex), state.secretCode);
+    }
+
+    private static void leave(GameLobbyManager lobby, GameSession session, int player) {
+        lobby.leaveGame(session, session.snapshot().playerIds.get(player));
+    }
+
+    private static Map<String, SessionSnapshot> snapshots(GameSession... sessions) {
+        Map<String, SessionSnapshot> snapshots = new HashMap<>();
+        for (GameSession session : sessions) {
+            snapshots.put(session.getGameId(), session.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Exactly the expected games come back, each one as its snapshot.
+     */
+    private static void checkRecovered(String name, Map<String, SessionSnapshot> expected,
+                                       JournalRecovery.Result result) {
+        Map<String, SessionSnapshot> recovered = new HashMap<>();
+        for (SessionSnapshot snapshot : result.sessions) {
+            recovered.put(snapshot.gameId, snapshot);
+        }
+        check(name + ": the live games and no others (" + recovered.size() + " of " + expected.size() + ")",
+              recovered.keySet().equals(expected.keySet()));
+        for (SessionSnapshot snapshot : expected.values()) {
+            SessionSnapshot copy = recovered.get(snapshot.gameId);
+            check(name + ": " + snapshot.status + " game with " + snapshot.playerIds.size() + " of "
+                       + snapshot.requiredPlayers + " players and " + snapshot.totalGuessesMade + " guesses",
+                  copy != null && Arrays.equals(copy.encode(), snapshot.encode()));
+        }
+    }
+
+    private static void check(String testName, boolean passed) {
+        if (passed) {
+            results.println("  ✓ PASS: " + testName);
+            testsPassed++;
+        } else {
+            results.println("  ✗ FAIL: " + testName);
+            testsFailed++;
+        }
+    }
+}
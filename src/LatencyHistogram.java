@@ -0,0 +1,77 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * LatencyHistogram
+ *
+ * Lock-free histogram for percentiles of non-negative values such as
+ * waiting times. Values fall into power-of-two buckets, so recording is
+ * one LongAdder increment and a percentile is accurate to within a factor
+ * of two, which is plenty for spotting a p99 that has drifted.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+    public static final int BUCKETS = 64;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        value = Math.max(0, value);
+        // bucket i holds values from 2^(i-1) up to 2^i - 1; bucket 0 holds 0
+        counts[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        total.increment();
+        sum.add(value);
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile (0-100), or 0
+     * if nothing has been recorded.
+     */
+    public long percentile(double percentile) {
+        long count = total.sum();
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i].sum();
+            if (seen >= Math.max(1, rank)) {
+                return bucketUpperBound(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Values recorded in the given bucket (not cumulative).
+     */
+    public long getBucketCount(int bucket) {
+        return counts[bucket].sum();
+    }
+
+    /**
+     * Largest value the given bucket holds.
+     */
+    public static long bucketUpperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    public double getMean() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+}
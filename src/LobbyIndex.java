@@ -0,0 +1,247 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * LobbyIndex
+ *
+ * Secondary indexes over the lobby's game summaries, so filtered and
+ * paged GET_GAMES queries never scan every session.
+ *
+ * Each filter (all games, one per status, and "open" = waiting with a free
+ * seat) keeps two sorted maps: by lower-cased name and by creation order.
+ * A query picks the narrowest index for its filters and walks only the
+ * page it needs. Pages are keyset paged: a page ends with a cursor, the
+ * sort key of its last entry, and the next page starts right after it,
+ * so a deep page costs no more than the first.
+ *
+ * A name prefix on a name-sorted query becomes a range. Sorted by
+ * creation, a prefix whose range holds at most SCAN_LIMIT games is
+ * answered from the range, re-sorted; a wider one scans the creation
+ * order, but never more than SCAN_LIMIT entries per query, and may then
+ * return a short page whose cursor continues the scan.
+ *
+ * GameLobbyManager updates the indexes in step with every listing it
+ * publishes, under the listing lock of the game's shard. Updates from
+ * different shards run at once; every key includes the game's ID or
+ * creation number, so they never touch the same entry.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LobbyIndex {
+    // most entries one query examines before it returns what it has
+    static final int SCAN_LIMIT = 1000;
+
+    private static final String ALL = "*";
+    private static final String OPEN = "open";
+
+    /**
+     * One game in one index, with both of its sort keys.
+     */
+    private static final class Entry {
+        final long sequence;
+        final String nameKey;
+        final GameSummary summary;
+
+        Entry(long sequence, String nameKey, GameSummary summary) {
+            this.sequence = sequence;
+            this.nameKey = nameKey;
+            this.summary = summary;
+        }
+    }
+
+    private static final class Index {
+        final ConcurrentSkipListMap<String, Entry> byName = new ConcurrentSkipListMap<>();
+        final ConcurrentSkipListMap<Long, Entry> byCreated = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * One page of a query: the games, and the cursor to pass as "after"
+     * for the next page, or null if this was the last.
+     */
+    public static final class Page {
+        private final List<GameSummary> games;
+        private final String next;
+
+        Page(List<GameSummary> games, String next) {
+            this.games = games;
+            this.next = next;
+        }
+
+        public List<GameSummary> getGames() { return games; }
+        public String getNext() { return next; }
+    }
+
+    private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+    private final Map<String, Long> createdOrder = new ConcurrentHashMap<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * A game is open when it is still waiting and has a free seat.
+     */
+    public static boolean isOpen(GameSummary summary) {
+        return "Waiting".equals(summary.getStatus()) && summary.getPlayers() < summary.getMaxPlayers();
+    }
+
+    /**
+     * Moves a game between indexes. previous is null for a new game and
+     * current is null for a removed one.
+     */
+    public void update(GameSummary previous, GameSummary current) {
+        String gameId = current != null ? current.getId() : previous.getId();
+        Long sequence = createdOrder.get(gameId);
+        if (sequence == null) {
+            sequence = nextSequence.getAndIncrement();
+            createdOrder.put(gameId, sequence);
+        }
+        if (previous != null) {
+            for (String filter : filtersFor(previous)) {
+                Index index = indexes.get(filter);
+                if (index != null) {
+                    index.byName.remove(nameKey(previous));
+                    index.byCreated.remove(sequence);
+                }
+            }
+        }
+        if (current == null) {
+            createdOrder.remove(gameId);
+            return;
+        }
+        Entry entry = new Entry(sequence, nameKey(current), current);
+        for (String filter : filtersFor(current)) {
+            Index index = indexes.computeIfAbsent(filter, f -> new Index());
+            index.byName.put(entry.nameKey, entry);
+            index.byCreated.put(sequence, entry);
+        }
+    }
+
+    /**
+     * Returns the page of games matching the query that follows its
+     * "after" cursor, or the first page without one.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public Page query(GameQuery query) {
+        Index index = indexes.get(indexFor(query));
+        if (index == null) return new Page(Collections.emptyList(), null);
+
+        String prefix = query.getPrefix();
+        String after = query.getAfter() == null ? null : decodeCursor(query.getAfter());
+        switch (query.getSort()) {
+            case NAME:
+            case NAME_DESC: {
+                NavigableMap<String, Entry> names = index.byName;
+                if (!prefix.isEmpty()) {
+                    names = names.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+                }
+                if (query.getSort() == GameQuery.Sort.NAME) {
+                    if (after != null) names = names.tailMap(after, false);
+                } else {
+                    names = (after != null ? names.headMap(after, false) : names).descendingMap();
+                }
+                return walk(names.values(), "", true, query.getLimit());
+            }
+            default: {
+                boolean newest = query.getSort() == GameQuery.Sort.NEWEST;
+                Long afterSequence = after == null ? null : Long.valueOf(after);
+                if (!prefix.isEmpty()) {
+                    Page page = fromNameRange(index, prefix, newest, afterSequence, query.getLimit());
+                    if (page != null) return page;
+                }
+                NavigableMap<Long, Entry> created = index.byCreated;
+                if (newest) {
+                    created = (afterSequence != null ? created.headMap(afterSequence, false) : created).descendingMap();
+                } else if (afterSequence != null) {
+                    created = created.tailMap(afterSequence, false);
+                }
+                return walk(created.values(), prefix, false, query.getLimit());
+            }
+        }
+    }
+
+    /**
+     * Walks entries in order, keeping those whose name starts with prefix,
+     * until the page is full or SCAN_LIMIT entries have been examined.
+     */
+    private static Page walk(Collection<Entry> source, String prefix, boolean byName, int limit) {
+        List<GameSummary> games = new ArrayList<>();
+        Entry last = null;
+        int examined = 0;
+        for (Entry entry : source) {
+            if (games.size() == limit || examined == SCAN_LIMIT) {
+                // more to come; the next page starts after the last one examined
+                return new Page(games, cursor(last, byName));
+            }
+            examined++;
+            last = entry;
+            if (prefix.isEmpty() || entry.nameKey.startsWith(prefix)) {
+                games.add(entry.summary);
+            }
+        }
+        return new Page(games, null);
+    }
+
+    /**
+     * Answers a creation-sorted prefix query from the prefix's name range,
+     * if that range holds at most SCAN_LIMIT games.
+     *
+     * @return The page, or null if the range is wider
+     */
+    private static Page fromNameRange(Index index, String prefix, boolean newest, Long after, int limit) {
+        List<Entry> matches = new ArrayList<>();
+        int examined = 0;
+        for (Entry entry : index.byName.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            if (examined++ == SCAN_LIMIT) return null;
+            if (after == null || (newest ? entry.sequence < after : entry.sequence > after)) {
+                matches.add(entry);
+            }
+        }
+        Comparator<Entry> order = Comparator.comparingLong(entry -> entry.sequence);
+        matches.sort(newest ? order.reversed() : order);
+        List<GameSummary> games = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            games.add(matches.get(i).summary);
+        }
+        String next = matches.size() > limit ? cursor(matches.get(limit - 1), false) : null;
+        return new Page(games, next);
+    }
+
+    /**
+     * A cursor is the entry's sort key, base64url encoded so it can travel
+     * inside a query string and a colon-separated reply.
+     */
+    private static String cursor(Entry entry, boolean byName) {
+        String key = byName ? entry.nameKey : Long.toString(entry.sequence);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
+    private static String indexFor(GameQuery query) {
+        if (query.isOpenOnly()) {
+            // open implies Waiting; any other status filter matches nothing
+            if (query.getStatus() != null && !query.getStatus().equalsIgnoreCase("Waiting")) return "none";
+            return OPEN;
+        }
+        return query.getStatus() == null ? ALL : statusKey(query.getStatus());
+    }
+
+    private static List<String> filtersFor(GameSummary summary) {
+        List<String> filters = new ArrayList<>(3);
+        filters.add(ALL);
+        filters.add(statusKey(summary.getStatus()));
+        if (isOpen(summary)) filters.add(OPEN);
+        return filters;
+    }
+
+    private static String statusKey(String status) {
+        return "status:" + status.toLowerCase(Locale.ROOT);
+    }
+
+    private static String nameKey(GameSummary summary) {
+        // the id keeps games with the same name apart
+        return summary.getName().toLowerCase(Locale.ROOT) + '\u0000' + summary.getId();
+    }
+}
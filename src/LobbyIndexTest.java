@@ -0,0 +1,213 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * LobbyIndexTest
+ *
+ * Behaviour checks for LobbyIndex: cursor paging visits every matching
+ * game exactly once in each sort order, a name prefix sorted by creation
+ * works both from its name range and through a capped scan, filters
+ * follow updates, and names are matched the same in every locale.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.util.*;
+
+public class LobbyIndexTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("   LobbyIndex Tests");
+        System.out.println("========================================\n");
+
+        testPaging();
+        testPrefixRange();
+        testPrefixScan();
+        testFilters();
+        testLocale();
+        testBadCursor();
+
+        System.out.println("\n========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        if (testsFailed > 0) System.exit(1);
+    }
+
+    /**
+     * 25 games in pages of 10: three pages per sort, in order, no repeats.
+     */
+    private static void testPaging() {
+        LobbyIndex index = new LobbyIndex();
+        List<String> created = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            // created in a different order than their names sort
+            String name = "game" + (char) ('a' + (i * 7) % 25);
+            add(index, String.format("g%08d", i), name);
+            created.add(String.format("g%08d", i));
+        }
+        List<String> byName = new ArrayList<>(created);
+        byName.sort(Comparator.comparing(id -> "game" + (char) ('a' + (Integer.parseInt(id.substring(1)) * 7) % 25)));
+
+        check("oldest pages in creation order", ids(index, "sort=oldest&limit=10").equals(created));
+        List<String> newest = new ArrayList<>(created);
+        Collections.reverse(newest);
+        check("newest pages in reverse creation order", ids(index, "sort=newest&limit=10").equals(newest));
+        check("name pages in name order", ids(index, "sort=name&limit=10").equals(byName));
+        List<String> nameDesc = new ArrayList<>(byName);
+        Collections.reverse(nameDesc);
+        check("-name pages in reverse name order", ids(index, "sort=-name&limit=10").equals(nameDesc));
+
+        LobbyIndex.Page last = index.query(GameQuery.parse("limit=25"));
+        check("one page holds everything, no cursor", last.getGames().size() == 25 && last.getNext() == null);
+    }
+
+    /**
+     * A narrow prefix sorted by creation is answered from its name range.
+     */
+    private static void testPrefixRange() {
+        LobbyIndex index = new LobbyIndex();
+        add(index, "g00000001", "beta");
+        add(index, "g00000002", "alpha");
+        add(index, "g00000003", "Alpine");
+        add(index, "g00000004", "gamma");
+        add(index, "g00000005", "ALTO");
+        check("prefix, oldest first",
+              ids(index, "prefix=al&sort=oldest&limit=2").equals(List.of("g00000002", "g00000003", "g00000005")));
+        check("prefix, newest first",
+              ids(index, "prefix=AL&sort=newest&limit=2").equals(List.of("g00000005", "g00000003", "g00000002")));
+        check("prefix, by name", ids(index, "prefix=al&sort=name&limit=1")
+                                     .equals(List.of("g00000002", "g00000003", "g00000005")));
+    }
+
+    /**
+     * A prefix wider than SCAN_LIMIT falls back to the creation order; no
+     * query examines more than SCAN_LIMIT entries, so pages can come back
+     * short, but following the cursors still finds every match once.
+     */
+    private static void testPrefixScan() {
+        LobbyIndex index = new LobbyIndex();
+        // every tenth game matches: more than SCAN_LIMIT in the "abc" range,
+        // but only SCAN_LIMIT / 10 of them in any SCAN_LIMIT entries created
+        int games = LobbyIndex.SCAN_LIMIT * 11;
+        List<String> matching = new ArrayList<>();
+        for (int i = 0; i < games; i++) {
+            String id = String.format("g%08d", i);
+            boolean match = i % 10 == 0;
+            add(index, id, (match ? "abc" : "xyz") + i);
+            if (match) matching.add(id);
+        }
+        List<String> found = new ArrayList<>();
+        int pages = 0;
+        boolean shortPages = true;
+        String after = null;
+        do {
+            LobbyIndex.Page page = index.query(GameQuery.parse("prefix=abc&sort=oldest&limit=200"
+                                                               + (after == null ? "" : "&after=" + after)));
+            for (GameSummary summary : page.getGames()) {
+                found.add(summary.getId());
+            }
+            if (page.getGames().size() > LobbyIndex.SCAN_LIMIT / 10) shortPages = false;
+            pages++;
+            after = page.getNext();
+        } while (after != null && pages < 100);
+        check("every match found once, in order (" + found.size() + " of " + matching.size() + ")",
+              found.equals(matching));
+        check("no page examined more than SCAN_LIMIT games (" + pages + " pages)", shortPages && pages >= 11);
+
+        LobbyIndex.Page newest = index.query(GameQuery.parse("prefix=abc&sort=newest&limit=10"));
+        check("newest first through the scan too",
+              newest.getGames().size() == 10 && newest.getNext() != null
+              && newest.getGames().get(0).getId().equals(matching.get(matching.size() - 1)));
+    }
+
+    /**
+     * Games move between the open and status indexes as they change.
+     */
+    private static void testFilters() {
+        LobbyIndex index = new LobbyIndex();
+        GameSummary waiting = new GameSummary("g00000001", "one", 0, 2, "Waiting");
+        index.update(null, waiting);
+        add(index, "g00000002", "two");
+        check("open lists waiting games", ids(index, "open=true").size() == 2);
+
+        GameSummary full = new GameSummary("g00000001", "one", 2, 2, "In Progress");
+        index.update(waiting, full);
+        check("started game leaves open", ids(index, "open=true").equals(List.of("g00000002")));
+        check("and shows under its status", ids(index, "status=In+Progress").equals(List.of("g00000001")));
+        check("open with another status matches nothing", ids(index, "open=true&status=In+Progress").isEmpty());
+
+        index.update(full, null);
+        check("removed game gone from every index", ids(index, "").equals(List.of("g00000002"))
+                                                    && ids(index, "status=In+Progress").isEmpty());
+    }
+
+    /**
+     * Under a Turkish default locale "I" lower-cases to a dotless i; names
+     * and prefixes must still match.
+     */
+    private static void testLocale() {
+        Locale saved = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr"));
+        try {
+            LobbyIndex index = new LobbyIndex();
+            add(index, "g00000001", "IRIS");
+            check("prefix matches in a Turkish locale", ids(index, "prefix=iri&sort=name").size() == 1
+                                                        && ids(index, "prefix=IRI&sort=newest").size() == 1);
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+    private static void testBadCursor() {
+        LobbyIndex index = new LobbyIndex();
+        add(index, "g00000001", "one");
+        boolean refused;
+        try {
+            // "one" as a cursor of a creation-sorted query
+            index.query(GameQuery.parse("sort=oldest&after=b25l"));
+            refused = false;
+        } catch (IllegalArgumentException e) {
+            refused = true;
+        }
+        check("cursor of another sort refused", refused);
+        try {
+            index.query(GameQuery.parse("after=!!"));
+            refused = false;
+        } catch (IllegalArgumentException e) {
+            refused = true;
+        }
+        check("malformed cursor refused", refused);
+    }
+
+    private static void add(LobbyIndex index, String id, String name) {
+        index.update(null, new GameSummary(id, name, 0, 2, "Waiting"));
+    }
+
+    /**
+     * Runs a query page by page, following the cursors, and returns the
+     * IDs in the order they came.
+     */
+    private static List<String> ids(LobbyIndex index, String query) {
+        List<String> ids = new ArrayList<>();
+        String after = null;
+        for (int pages = 0; pages < 1000; pages++) {
+            LobbyIndex.Page page = index.query(GameQuery.parse(query + (after == null ? "" : "&after=" + after)));
+            for (GameSummary summary : page.getGames()) {
+                ids.add(summary.getId());
+            }
+            after = page.getNext();
+            if (after == null) break;
+        }
+        return ids;
+    }
+
+    private static void check(String testName, boolean passed) {
+        if (passed) {
+            System.out.println("  ✓ PASS: " + testName);
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName);
+            testsFailed++;
+        }
+    }
+}
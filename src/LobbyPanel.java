@@ -3,6 +3,17 @@
  * 
  * This panel displays available games and allows players to create or join them.
  * 
+ * The lobby runs in paged delta mode. The server announces the current
+ * lobby version (LOBBY_VERSION) and the panel pulls the game list one page
+ * at a time with GET_GAMES:?query as the user scrolls, each page asking
+ * for the games after the cursor the previous one ended with. After that the
+ * server only sends GAME_ADDED / GAME_UPDATED / GAME_REMOVED for games that
+ * changed. The server numbers changes per lobby shard, so a lobby version
+ * is one number per shard ("12.0.7.3") and each delta names its shard and
+ * that shard's next version. If a shard's version is skipped (e.g. an
+ * update was dropped for a slow connection) the panel starts over from the
+ * first page.
+ * 
  * LEARNING OBJECTIVES:
  * - JTable for displaying data
  * - JSON parsing (manual)
@@ -15,13 +26,25 @@ import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
 import javax.swing.table.DefaultTableModel;
 
 public class LobbyPanel extends JPanel {
+    private static final int PAGE_SIZE = 50;
+
     private MastermindClient client;
     private JTable gamesTable;
+    private JScrollPane scrollPane;
+    private JCheckBox openOnlyBox;
+    private JButton findMatchBtn;
+    private volatile boolean searching = false;
     private DefaultTableModel tableModel;
     private List<GameInfo> games = new ArrayList<>();
+    // last version seen of each lobby shard; null until the server sends one
+    private long[] lobbyVersion = null;
+    // cursor of the next page to load: "" for the first, null once all are loaded
+    private String nextPage = null;
+    private boolean pageRequested = false;
 
     public LobbyPanel(MastermindClient client) {
         this.client = client;
@@ -33,8 +56,8 @@ public class LobbyPanel extends JPanel {
         // Set this panel as the message handler
         client.setMessageCallback(this::handleServerMessage);
         
-        // Request game list when lobby opens
-        client.send("GET_GAMES");
+        // Switch to paged delta updates; the server answers with LOBBY_VERSION
+        client.send("LOBBY_MODE:DELTA_PAGED");
     }
 
     /**
@@ -50,6 +73,12 @@ public class LobbyPanel extends JPanel {
         titleLabel.setForeground(Color.WHITE);
         headerPanel.add(titleLabel, BorderLayout.WEST);
         
+        openOnlyBox = new JCheckBox("Open games only");
+        openOnlyBox.setOpaque(false);
+        openOnlyBox.setForeground(Color.WHITE);
+        openOnlyBox.addActionListener(e -> reloadPages());
+        headerPanel.add(openOnlyBox, BorderLayout.EAST);
+        
         String[] columnNames = {"Game Name", "Players", "Status"};
         tableModel = new DefaultTableModel(columnNames, 0) {
             @Override
@@ -63,14 +92,18 @@ public class LobbyPanel extends JPanel {
         gamesTable.setRowHeight(30);
         gamesTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         
-        JScrollPane scrollPane = new JScrollPane(gamesTable);
+        scrollPane = new JScrollPane(gamesTable);
         scrollPane.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
+        // fetch the next page when the user scrolls near the bottom
+        scrollPane.getViewport().addChangeListener(this::onViewportChanged);
         
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 15));
         buttonPanel.setOpaque(false);
         
         JButton createGameBtn = new JButton("Create Game");
         JButton joinGameBtn = new JButton("Join Game");
+        JButton quickJoinBtn = new JButton("Quick Join");
+        findMatchBtn = new JButton("Find Match");
         JButton refreshBtn = new JButton("Refresh");
         JButton backBtn = new JButton("Back to Menu");
         
@@ -81,11 +114,15 @@ public class LobbyPanel extends JPanel {
         
         createGameBtn.addActionListener(e -> handleCreateGame());
         joinGameBtn.addActionListener(e -> handleJoinGame());
-        refreshBtn.addActionListener(e -> client.send("GET_GAMES"));
+        quickJoinBtn.addActionListener(e -> handleQuickJoin());
+        findMatchBtn.addActionListener(e -> handleFindMatch());
+        refreshBtn.addActionListener(e -> requestGameList());
         backBtn.addActionListener(e -> MastermindApp.showMainMenu());
         
         buttonPanel.add(createGameBtn);
         buttonPanel.add(joinGameBtn);
+        buttonPanel.add(quickJoinBtn);
+        buttonPanel.add(findMatchBtn);
         buttonPanel.add(refreshBtn);
         buttonPanel.add(backBtn);
         
@@ -159,6 +196,39 @@ public class LobbyPanel extends JPanel {
         }
     }
 
+    /**
+     * Asks the server to seat us in any open game of the chosen size.
+     */
+    private void handleQuickJoin() {
+        String[] options = {"2", "3", "4", "5", "6", "7", "8"};
+        String requiredPlayers = (String) JOptionPane.showInputDialog(this, "Select number of players:", "Quick Join",
+            JOptionPane.PLAIN_MESSAGE, null, options, "2");
+        if (requiredPlayers != null) {
+            client.send("QUICK_JOIN:" + requiredPlayers);
+        }
+    }
+
+    /**
+     * Joins the ranked matchmaking queue, or leaves it if already searching.
+     */
+    private void handleFindMatch() {
+        if (searching) {
+            client.send("LEAVE_QUEUE:");
+            return;
+        }
+        String[] options = {"2", "3", "4", "5", "6", "7", "8"};
+        String requiredPlayers = (String) JOptionPane.showInputDialog(this, "Select number of players:", "Find Match",
+            JOptionPane.PLAIN_MESSAGE, null, options, "2");
+        if (requiredPlayers != null) {
+            client.send("QUEUE:" + requiredPlayers + ":ranked");
+        }
+    }
+
+    private void setSearching(boolean searching) {
+        this.searching = searching;
+        SwingUtilities.invokeLater(() -> findMatchBtn.setText(searching ? "Cancel Search" : "Find Match"));
+    }
+
     /**
      * TODO 3: Handle Server Messages (45 minutes)
      * 
@@ -171,14 +241,27 @@ public class LobbyPanel extends JPanel {
      * 2. Find first ':' in message and split into command and data
      * 3. Use switch statement to handle each message type:
      * 
+     * Case "LOBBY_VERSION":
+     *   - Remember the version and load the first page
+     * 
+     * Case "GAME_PAGE":
+     *   - Append the page with handleGamePage(data)
+     * 
      * Case "GAME_LIST":
-     *   - If data is not empty, call parseGameList(data)
+     *   - If data is not empty, call handleGameList(data)
+     * 
+     * Case "GAME_ADDED" / "GAME_UPDATED" / "GAME_REMOVED":
+     *   - Apply the delta with handleGameDelta(command, data)
+     * 
+     * Case "NOT_MODIFIED":
+     *   - Nothing to do; the table is already current
      * 
      * Case "GAME_CREATED":
-     *   - If data is not empty, send "GET_GAMES" to refresh the list
+     *   - Nothing to do; the new game arrives as a GAME_ADDED delta
      * 
      * Case "GAME_JOINED":
      *   - Split data by ":" to get gameId (first part)
+     *   - Remember the seat for a later RESUME: client.rememberGame(gameId)
      *   - Navigate to game board: MastermindApp.showGameBoard(gameId)
      * 
      * Case "GAME_STARTED":
@@ -206,22 +289,56 @@ public class LobbyPanel extends JPanel {
 
         // handling each method type
         switch (command) {
+            case "LOBBY_VERSION":
+                lobbyVersion = parseVersion(data.trim());
+                if (lobbyVersion != null) {
+                    reloadPages();
+                } else {
+                    System.err.println("Bad lobby version: " + data);
+                }
+                break;
+            case "GAME_PAGE":
+                handleGamePage(data);
+                break;
             case "GAME_LIST":
                 if (!data.isEmpty()) 
-                    parseGameList(data);
+                    handleGameList(data);
+                break;
+            case "GAME_ADDED":
+            case "GAME_UPDATED":
+            case "GAME_REMOVED":
+                handleGameDelta(command, data);
+                break;
+            case "NOT_MODIFIED":
+                // our copy is already current
                 break;
             case "GAME_CREATED":
-                if (!data.isEmpty()) 
-                    client.send("GET_GAMES");
+                // the new game shows up through a GAME_ADDED delta
+                break;
+            case "QUEUED":
+                setSearching(true);
+                break;
+            case "QUEUE_LEFT":
+                setSearching(false);
                 break;
             case "GAME_JOINED":
+                setSearching(false);
                 String gameIdJoined = data.split(":")[0];
+                // our seat can be taken back with RESUME if the server goes away
+                client.rememberGame(gameIdJoined);
                 SwingUtilities.invokeLater(() -> MastermindApp.showGameBoard(gameIdJoined));
                 break;
             case "GAME_STARTED":
                 String gameIdStarted = data.split(":")[0];
                 SwingUtilities.invokeLater(() -> MastermindApp.showGameBoard(gameIdStarted));
                 break;
+            case "THROTTLED":
+                handleThrottled(data);
+                break;
+            case "BUSY":
+                SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this, data, "Server busy", JOptionPane.WARNING_MESSAGE));
+                break;
             case "ERROR":
                 System.err.println("Server error: " + data);
                 SwingUtilities.invokeLater(() ->
@@ -230,6 +347,267 @@ public class LobbyPanel extends JPanel {
         }
     }
 
+    /**
+     * A request was over the server's rate limit ("command:retryAfterMillis").
+     * A page request is simply retried once the limit allows it; anything
+     * else the user asked for is reported.
+     */
+    private void handleThrottled(String data) {
+        String[] parts = data.split(":");
+        long retryMillis = parts.length > 1 ? Long.parseLong(parts[1].trim()) : 1000;
+        if (parts[0].equals("GET_GAMES")) {
+            pageRequested = false;
+            Timer retry = new Timer((int) retryMillis, e -> requestNextPage());
+            retry.setRepeats(false);
+            retry.start();
+            return;
+        }
+        SwingUtilities.invokeLater(() ->
+            JOptionPane.showMessageDialog(this, "Too many requests, try again in " + (retryMillis + 999) / 1000
+                                                + " s", "Slow down", JOptionPane.WARNING_MESSAGE));
+    }
+
+    /**
+     * Asks for the game list, passing the version we already have so the
+     * server can answer NOT_MODIFIED instead of resending everything.
+     */
+    private void requestGameList() {
+        if (lobbyVersion != null) {
+            client.send("GET_GAMES:" + formatVersion(lobbyVersion));
+        } else {
+            client.send("GET_GAMES");
+        }
+    }
+
+    /**
+     * Clears the table and requests the first page for the current filter.
+     */
+    private void reloadPages() {
+        games.clear();
+        tableModel.setRowCount(0);
+        nextPage = "";
+        pageRequested = false;
+        requestNextPage();
+    }
+
+    private void requestNextPage() {
+        if (lobbyVersion == null || nextPage == null || pageRequested) return;
+        pageRequested = true;
+        String query = "?sort=oldest&limit=" + PAGE_SIZE;
+        if (!nextPage.isEmpty()) {
+            query += "&after=" + nextPage;
+        }
+        if (openOnlyBox.isSelected()) {
+            query += "&open=true";
+        }
+        client.send("GET_GAMES:" + query);
+    }
+
+    /**
+     * Loads the next page once the last rows come into view.
+     */
+    private void onViewportChanged(ChangeEvent e) {
+        Rectangle view = scrollPane.getViewport().getViewRect();
+        int lastVisibleRow = gamesTable.rowAtPoint(new Point(0, view.y + view.height - 1));
+        if (lastVisibleRow == -1 || lastVisibleRow >= games.size() - 5) {
+            requestNextPage();
+        }
+    }
+
+    /**
+     * Appends one page of games.
+     * 
+     * Format: "version:after:next:json", where after is the cursor we
+     * asked for and next the one to ask for next (empty after the last page)
+     */
+    private void handleGamePage(String data) {
+        String[] parts = data.split(":", 4);
+        if (parts.length < 4) return;
+        long[] version = parseVersion(parts[0]);
+        if (version == null || lobbyVersion == null || !parts[1].equals(nextPage)) return; // answer to a query we have since reset
+        if (isNewer(version, lobbyVersion)) {
+            // the page is newer than our deltas, so some were lost
+            resync();
+            return;
+        }
+        pageRequested = false;
+        nextPage = parts[2].isEmpty() ? null : parts[2];
+
+        String json = parts[3].trim();
+        if (!"[]".equals(json)) {
+            for (String gameObj : json.substring(1, json.length() - 1).split("\\},\\{")) {
+                GameInfo game = parseGameObject(gameObj.replace("{", "").replace("}", ""));
+                // deltas may have added it already
+                if (indexOfGame(game.id) == -1) {
+                    games.add(game);
+                    tableModel.addRow(new Object[]{game.name, game.players, game.status});
+                }
+            }
+        }
+        // keep going until the view is filled
+        onViewportChanged(null);
+    }
+
+    /**
+     * Starts over after a missed delta: re-subscribing returns a fresh
+     * LOBBY_VERSION, which reloads the first page.
+     */
+    private void resync() {
+        lobbyVersion = null;
+        client.send("LOBBY_MODE:DELTA_PAGED");
+    }
+
+    /**
+     * Whether a game belongs in the table under the current filter.
+     */
+    private boolean matchesFilter(GameInfo game) {
+        if (!openOnlyBox.isSelected()) return true;
+        String[] counts = game.players.split("/");
+        try {
+            return "Waiting".equalsIgnoreCase(game.status) &&
+                   Integer.parseInt(counts[0].trim()) < Integer.parseInt(counts[1].trim());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Handles a full game list: "json" from a full-list server or
+     * "version:json" after a conditional GET_GAMES.
+     */
+    private void handleGameList(String data) {
+        if (data.startsWith("[")) {
+            parseGameList(data);
+            return;
+        }
+        int colonIndex = data.indexOf(':');
+        if (colonIndex == -1) return;
+        long[] version = parseVersion(data.substring(0, colonIndex));
+        if (version == null) return;
+        if (lobbyVersion != null && lobbyVersion.length == version.length && isNewer(lobbyVersion, version)) {
+            return; // a newer delta already arrived
+        }
+        lobbyVersion = version;
+        parseGameList(data.substring(colonIndex + 1));
+        for (int row = games.size() - 1; row >= 0; row--) {
+            if (!matchesFilter(games.get(row))) {
+                games.remove(row);
+                tableModel.removeRow(row);
+            }
+        }
+        // everything is loaded now
+        nextPage = null;
+        pageRequested = false;
+    }
+
+    /**
+     * Applies one lobby delta.
+     * 
+     * Formats:
+     *   GAME_ADDED:shard:version:{"id":...}
+     *   GAME_UPDATED:shard:version:{"id":...}
+     *   GAME_REMOVED:shard:version:gameId
+     */
+    private void handleGameDelta(String command, String data) {
+        String[] parts = data.split(":", 3);
+        if (parts.length < 3) return;
+        int shard;
+        long version;
+        try {
+            shard = Integer.parseInt(parts[0]);
+            version = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (lobbyVersion == null) return; // no baseline yet
+        if (shard < 0 || shard >= lobbyVersion.length) {
+            // the server's shards changed under us
+            resync();
+            return;
+        }
+        if (version <= lobbyVersion[shard]) return; // stale
+        if (version != lobbyVersion[shard] + 1) {
+            // missed an update; start over from the first page
+            resync();
+            return;
+        }
+        lobbyVersion[shard] = version;
+        String payload = parts[2];
+
+        if (command.equals("GAME_REMOVED")) {
+            int row = indexOfGame(payload);
+            if (row >= 0) {
+                games.remove(row);
+                tableModel.removeRow(row);
+            }
+            return;
+        }
+
+        GameInfo game = parseGameObject(payload.replace("{", "").replace("}", ""));
+        int row = indexOfGame(game.id);
+        if (row >= 0 && !matchesFilter(game)) {
+            games.remove(row);
+            tableModel.removeRow(row);
+        } else if (row >= 0) {
+            games.set(row, game);
+            tableModel.setValueAt(game.name, row, 0);
+            tableModel.setValueAt(game.players, row, 1);
+            tableModel.setValueAt(game.status, row, 2);
+        } else if (nextPage == null && matchesFilter(game)) {
+            // only once every page is loaded; otherwise a later page brings it
+            games.add(game);
+            tableModel.addRow(new Object[]{game.name, game.players, game.status});
+        }
+    }
+
+    /**
+     * Parses a lobby version, one number per shard joined with '.'.
+     * 
+     * @return The shard versions, or null if malformed
+     */
+    private static long[] parseVersion(String text) {
+        String[] fields = text.split("\\.");
+        long[] version = new long[fields.length];
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                version[i] = Long.parseLong(fields[i]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return version;
+    }
+
+    private static String formatVersion(long[] version) {
+        StringBuilder sb = new StringBuilder();
+        for (long shardVersion : version) {
+            if (sb.length() > 0)
+                sb.append('.');
+            sb.append(shardVersion);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Whether a is ahead of b in any shard. Versions with a different
+     * number of shards come from a different server and always count as
+     * newer.
+     */
+    private static boolean isNewer(long[] a, long[] b) {
+        if (a.length != b.length) return true;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] > b[i]) return true;
+        }
+        return false;
+    }
+
+    private int indexOfGame(String gameId) {
+        for (int i = 0; i < games.size(); i++) {
+            if (games.get(i).id.equals(gameId)) return i;
+        }
+        return -1;
+    }
+
     /**
      * TODO 4: Parse Game List JSON (60 minutes)
      * 
@@ -247,7 +625,7 @@ public class LobbyPanel extends JPanel {
      * 5. Split by "},{"  to separate game objects
      * 6. For each gameObj string:
      *    a. Remove any remaining braces: replace("{", "").replace("}", "")
-     *    b. Extract values using extractJsonValue() helper:
+     *    b. Extract values using extractJsonValue() helper (see parseGameObject):
      *       - id = extractJsonValue(gameObj, "id")
      *       - name = extractJsonValue(gameObj, "name")
      *       - playerCount = extractJsonValue(gameObj, "players")
@@ -278,20 +656,27 @@ public class LobbyPanel extends JPanel {
         for (String gameObj : gameObjects) {
             gameObj = gameObj.replace("{", "").replace("}", "");
 
-            String id = extractJsonValue(gameObj, "id");
-            String name = extractJsonValue(gameObj, "name");
-            String playerCount = extractJsonValue(gameObj, "players");
-            String maxPlayers = extractJsonValue(gameObj, "maxPlayers");
-            String status = extractJsonValue(gameObj, "status");
-
-            String players = playerCount + "/" + maxPlayers;
-
-            GameInfo game = new GameInfo(id, name, players, status);
+            GameInfo game = parseGameObject(gameObj);
             games.add(game);
             // add to table
-            tableModel.addRow(new Object[]{name, players, status});
+            tableModel.addRow(new Object[]{game.name, game.players, game.status});
         }
     }
+
+    /**
+     * Builds a GameInfo from one game object with its braces removed.
+     */
+    private GameInfo parseGameObject(String gameObj) {
+        String id = extractJsonValue(gameObj, "id");
+        String name = extractJsonValue(gameObj, "name");
+        String playerCount = extractJsonValue(gameObj, "players");
+        String maxPlayers = extractJsonValue(gameObj, "maxPlayers");
+        String status = extractJsonValue(gameObj, "status");
+
+        String players = playerCount + "/" + maxPlayers;
+
+        return new GameInfo(id, name, players, status);
+    }
     
     /**
      * Helper method to extract JSON values (PROVIDED)
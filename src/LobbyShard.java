@@ -0,0 +1,203 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * LobbyShard
+ *
+ * One partition of the lobby. GameLobbyManager routes every player to a
+ * shard by player ID hash and every session by game ID hash, so unrelated
+ * creates, joins and disconnects touch different maps and never contend.
+ *
+ * A shard also publishes the lobby listing of the games that hash to it
+ * (see LobbySnapshot.Part), under its own listingLock, so lobby changes
+ * in different shards never wait on each other either.
+ *
+ * A shard only knows its own players and sessions. Anything that spans
+ * shards (a player joining a game that lives elsewhere, removing a game
+ * whose players live elsewhere, lobby-wide broadcasts) is coordinated by
+ * GameLobbyManager, one shard at a time.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class LobbyShard {
+    private final int index;
+    private final ConcurrentHashMap<String, ClientHandler> players = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, GameSession> sessions = new ConcurrentHashMap<>();
+    // game of each of this shard's players; the game itself may live in another shard
+    private final ConcurrentHashMap<String, String> playerToGame = new ConcurrentHashMap<>();
+    // delta subscribers, each mapped to whether it pages through the lobby
+    private final ConcurrentHashMap<ClientHandler, Boolean> deltaSubscribers = new ConcurrentHashMap<>();
+    // this shard's games in the lobby listing; replaced under listingLock
+    private volatile LobbySnapshot.Part listing = LobbySnapshot.Part.EMPTY;
+    private final ReentrantLock listingLock = new ReentrantLock();
+
+    public LobbyShard(int index) {
+        this.index = index;
+    }
+
+    // players
+
+    public void addPlayer(String playerId, ClientHandler handler) {
+        players.put(playerId, handler);
+    }
+
+    /**
+     * Removes a player along with its subscription and game mapping.
+     *
+     * @return the player's handler, or null if it was not here
+     */
+    public ClientHandler removePlayer(String playerId) {
+        ClientHandler handler = players.remove(playerId);
+        if (handler != null) {
+            deltaSubscribers.remove(handler);
+        }
+        return handler;
+    }
+
+    /**
+     * Removes a player only if handler is still the one registered.
+     *
+     * @return true if it was removed
+     */
+    public boolean removePlayer(String playerId, ClientHandler handler) {
+        if (!players.remove(playerId, handler)) return false;
+        deltaSubscribers.remove(handler);
+        return true;
+    }
+
+    /**
+     * Swaps in a new handler for a player, only if current is still the one
+     * registered.
+     */
+    public boolean replacePlayer(String playerId, ClientHandler current, ClientHandler replacement) {
+        return players.replace(playerId, current, replacement);
+    }
+
+    public ClientHandler getPlayer(String playerId) {
+        return players.get(playerId);
+    }
+
+    public Collection<ClientHandler> getPlayers() {
+        return players.values();
+    }
+
+    public void setGame(String playerId, String gameId) {
+        playerToGame.put(playerId, gameId);
+    }
+
+    /**
+     * Records the player's game unless they already have one.
+     *
+     * @return true if the player had no game and now has gameId
+     */
+    public boolean claimGame(String playerId, String gameId) {
+        return playerToGame.putIfAbsent(playerId, gameId) == null;
+    }
+
+    public String getGame(String playerId) {
+        return playerToGame.get(playerId);
+    }
+
+    public String removeGame(String playerId) {
+        return playerToGame.remove(playerId);
+    }
+
+    /**
+     * Clears a player's game only if it is still gameId, so removing an old
+     * game cannot unlink a player who has since joined another.
+     */
+    public void removeGame(String playerId, String gameId) {
+        playerToGame.remove(playerId, gameId);
+    }
+
+    // sessions
+
+    public void addSession(GameSession session) {
+        sessions.put(session.getGameId(), session);
+    }
+
+    public GameSession getSession(String gameId) {
+        return sessions.get(gameId);
+    }
+
+    public GameSession removeSession(String gameId) {
+        return sessions.remove(gameId);
+    }
+
+    public Collection<GameSession> getSessions() {
+        return sessions.values();
+    }
+
+    // lobby listing
+
+    public LobbySnapshot.Part getListing() {
+        return listing;
+    }
+
+    /**
+     * Installs the next listing; call with getListingLock() held.
+     */
+    public void setListing(LobbySnapshot.Part next) {
+        listing = next;
+    }
+
+    public ReentrantLock getListingLock() {
+        return listingLock;
+    }
+
+    // lobby updates
+
+    public void subscribe(ClientHandler handler, boolean paged) {
+        deltaSubscribers.put(handler, paged);
+    }
+
+    public void unsubscribe(ClientHandler handler) {
+        deltaSubscribers.remove(handler);
+    }
+
+    public boolean isSubscriber(ClientHandler handler) {
+        return deltaSubscribers.containsKey(handler);
+    }
+
+    public boolean isPagedSubscriber(ClientHandler handler) {
+        return Boolean.TRUE.equals(deltaSubscribers.get(handler));
+    }
+
+    public boolean hasSubscribers() {
+        return !deltaSubscribers.isEmpty();
+    }
+
+    /**
+     * Sends a delta to this shard's delta subscribers.
+     *
+     * @return the number of recipients
+     */
+    public int sendToSubscribers(EncodedMessage message) {
+        int recipients = 0;
+        for (ClientHandler handler : deltaSubscribers.keySet()) {
+            handler.send(message);
+            recipients++;
+        }
+        return recipients;
+    }
+
+    /**
+     * Sends a message to this shard's players, optionally leaving out delta
+     * subscribers. Relayed players get their lobby from their own node.
+     *
+     * @return the number of recipients
+     */
+    public int broadcast(EncodedMessage message, boolean skipSubscribers) {
+        int recipients = 0;
+        for (ClientHandler handler : players.values()) {
+            if (handler.isRelay() || (skipSubscribers && deltaSubscribers.containsKey(handler))) continue;
+            handler.send(message);
+            recipients++;
+        }
+        return recipients;
+    }
+
+    public int getIndex() { return index; }
+    public int getPlayerCount() { return players.size(); }
+    public int getSessionCount() { return sessions.size(); }
+}
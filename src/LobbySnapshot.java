@@ -0,0 +1,177 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * LobbySnapshot
+ *
+ * Immutable, versioned view of every game in the lobby.
+ *
+ * The lobby is published per shard: every LobbyShard lists the games whose
+ * IDs hash to it in its own Part, which it replaces (never mutates) under
+ * its own lock whenever one of them changes. A change therefore copies one
+ * shard's games and never waits on another shard.
+ *
+ * A LobbySnapshot is the parts of every shard at one moment. Its version
+ * is theirs joined with '.', e.g. "12.0.7.3", so a delta subscriber can
+ * tell exactly which per-shard deltas it already has. Readers just grab
+ * the current one; its JSON and the encoded messages are built once on
+ * first use, from each part's cached JSON, and then shared.
+ */
+
+import java.util.*;
+
+public final class LobbySnapshot {
+    /**
+     * One shard's games at one version. Versions increase by one per change.
+     */
+    public static final class Part {
+        public static final Part EMPTY = new Part(0, new LinkedHashMap<>());
+
+        private final long version;
+        private final Map<String, GameSummary> games;
+        // the games as comma-separated JSON objects, built on first use
+        private volatile String json;
+
+        private Part(long version, LinkedHashMap<String, GameSummary> games) {
+            this.version = version;
+            this.games = Collections.unmodifiableMap(games);
+        }
+
+        /**
+         * Returns a part with the game added or replaced, or this part if
+         * the summary is unchanged.
+         */
+        public Part with(GameSummary summary) {
+            if (summary.equals(games.get(summary.getId()))) return this;
+            LinkedHashMap<String, GameSummary> next = new LinkedHashMap<>(games);
+            next.put(summary.getId(), summary);
+            return new Part(version + 1, next);
+        }
+
+        /**
+         * Returns a part without the game, or this part if it was not listed.
+         */
+        public Part without(String gameId) {
+            if (!games.containsKey(gameId)) return this;
+            LinkedHashMap<String, GameSummary> next = new LinkedHashMap<>(games);
+            next.remove(gameId);
+            return new Part(version + 1, next);
+        }
+
+        public long getVersion() { return version; }
+        public Collection<GameSummary> getGames() { return games.values(); }
+        public GameSummary get(String gameId) { return games.get(gameId); }
+        public boolean contains(String gameId) { return games.containsKey(gameId); }
+        public int size() { return games.size(); }
+
+        private String json() {
+            String cached = json;
+            if (cached == null) {
+                StringBuilder sb = new StringBuilder();
+                for (GameSummary summary : games.values()) {
+                    if (sb.length() > 0)
+                        sb.append(",");
+                    summary.appendJson(sb);
+                }
+                cached = sb.toString();
+                json = cached;
+            }
+            return cached;
+        }
+    }
+
+    private final Part[] parts;
+    private final String version;
+    private volatile String json;
+    private volatile EncodedMessage gameListMessage;
+    private volatile EncodedMessage versionedGameListMessage;
+    private volatile EncodedMessage notModifiedMessage;
+
+    /**
+     * @param parts Every shard's part, by shard index; not copied
+     */
+    LobbySnapshot(Part[] parts) {
+        this.parts = parts;
+        StringBuilder sb = new StringBuilder();
+        for (Part part : parts) {
+            if (sb.length() > 0)
+                sb.append('.');
+            sb.append(part.getVersion());
+        }
+        this.version = sb.toString();
+    }
+
+    /**
+     * Whether a lobby version is well formed: one number per shard,
+     * joined with '.'.
+     */
+    public static boolean isVersion(String version) {
+        return version.matches("\\d{1,18}(\\.\\d{1,18})*");
+    }
+
+    public String getVersion() { return version; }
+    public Part getPart(int shard) { return parts[shard]; }
+
+    public int size() {
+        int size = 0;
+        for (Part part : parts) {
+            size += part.size();
+        }
+        return size;
+    }
+
+    /**
+     * The JSON array of all games, built on first use.
+     */
+    public String toJson() {
+        String cached = json;
+        if (cached == null) {
+            StringBuilder sb = new StringBuilder("[");
+            for (Part part : parts) {
+                String games = part.json();
+                if (games.isEmpty()) continue;
+                if (sb.length() > 1)
+                    sb.append(",");
+                sb.append(games);
+            }
+            sb.append("]");
+            cached = sb.toString();
+            json = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * "GAME_LIST:json" encoded once as a lobby update and shared by every send.
+     */
+    public EncodedMessage getGameListMessage() {
+        EncodedMessage cached = gameListMessage;
+        if (cached == null) {
+            cached = EncodedMessage.lobbyUpdate("GAME_LIST:" + toJson());
+            gameListMessage = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * "GAME_LIST:version:json", the baseline sent to delta-mode clients.
+     */
+    public EncodedMessage getVersionedGameListMessage() {
+        EncodedMessage cached = versionedGameListMessage;
+        if (cached == null) {
+            cached = EncodedMessage.lobbyUpdate("GAME_LIST:" + version + ":" + toJson());
+            versionedGameListMessage = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * "NOT_MODIFIED:version", the answer to GET_GAMES:version when the
+     * client's copy is current.
+     */
+    public EncodedMessage getNotModifiedMessage() {
+        EncodedMessage cached = notModifiedMessage;
+        if (cached == null) {
+            cached = EncodedMessage.of("NOT_MODIFIED:" + version);
+            notModifiedMessage = cached;
+        }
+        return cached;
+    }
+}
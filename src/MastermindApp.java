@@ -19,6 +19,12 @@ public class MastermindApp {
     private static JFrame mainFrame;
 
     public static void main(String[] args) {
+        // --heartbeat-secs=N (0 for none) and --heartbeat-misses=N, as on the server
+        ServerOptions options = ServerOptions.parse(args);
+        long heartbeatMillis = options.getInt("heartbeat-secs",
+                                              (int) (MastermindClient.DEFAULT_HEARTBEAT_MILLIS / 1000)) * 1000L;
+        int heartbeatMisses = options.getInt("heartbeat-misses", MastermindClient.DEFAULT_HEARTBEAT_MISSES);
+
         // Set system look and feel
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -29,6 +35,7 @@ public class MastermindApp {
         // Initialize on Event Dispatch Thread
         SwingUtilities.invokeLater(() -> {
             client = new MastermindClient();
+            client.setHeartbeat(heartbeatMillis, heartbeatMisses);
             mainFrame = new JFrame("Mastermind - Multiplayer Edition");
             mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             mainFrame.setSize(600, 500);
@@ -14,10 +14,15 @@
 
 import java.io.*;
 import java.net.*;
+import java.util.Map;
+import java.util.concurrent.*;
 import java.util.function.Consumer;
 import javax.swing.SwingUtilities;
 
 public class MastermindClient {
+    static final long DEFAULT_HEARTBEAT_MILLIS = 10_000;
+    static final int DEFAULT_HEARTBEAT_MISSES = 3;
+
     private Socket socket;
     private PrintWriter out;
     private BufferedReader in;
@@ -27,6 +32,22 @@ public class MastermindClient {
     private volatile boolean shuttingDown = false;
     private String playerId;
     private String playerName;
+    // where connect() went, for resume()
+    private String host;
+    private int port;
+    // the server's latest SESSION_TOKEN, and the token that holds our seat
+    // in each game we are playing, so a lost connection can RESUME it
+    private volatile String sessionToken;
+    private final Map<String, String> resumeTokens = new ConcurrentHashMap<>();
+    // a PING goes out every heartbeatMillis (0 for none); the server is taken
+    // for gone once heartbeatMisses of them in a row get no answer
+    private long heartbeatMillis = DEFAULT_HEARTBEAT_MILLIS;
+    private int heartbeatMisses = DEFAULT_HEARTBEAT_MISSES;
+    private ScheduledExecutorService heartbeat;
+    private volatile int unansweredPings;
+    // payload of the last PING, and the smoothed round trip (-1 until measured)
+    private volatile long pingMicros = -1;
+    private volatile long rttMicros = -1;
 
     /**
      * TODO 1: Connect to Server (30 minutes)
@@ -52,6 +73,8 @@ public class MastermindClient {
     public void connect(String host, int port, Consumer<String> messageCallback) throws IOException {
         // creating socket connection
         socket = new Socket(host, port);
+        this.host = host;
+        this.port = port;
         // I/O streams
         out = new PrintWriter(socket.getOutputStream(), true);
         in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
@@ -67,6 +90,7 @@ public class MastermindClient {
         listenerThread.start();
         //sending initial handshake
         send("HELLO:1");
+        startHeartbeat();
     }
 
     /**
@@ -103,6 +127,21 @@ public class MastermindClient {
             while (connected) {
                 String line = in.readLine();
                 if (line == null) break;
+                unansweredPings = 0;
+                // heartbeats never reach the GUI
+                if (line.startsWith("PING:")) {
+                    send("PONG:" + line.substring(5));
+                    continue;
+                }
+                if (line.startsWith("PONG:")) {
+                    handlePong(line.substring(5));
+                    continue;
+                }
+                // kept here so it is never lost between panels
+                if (line.startsWith("SESSION_TOKEN:")) {
+                    sessionToken = line.substring(14);
+                    continue;
+                }
 
                 final String message = line;
                 if (!shuttingDown) {
@@ -113,19 +152,70 @@ public class MastermindClient {
                     });
                 }
             }
+            // the server closed the connection
+            if (connected && !shuttingDown) reportConnectionLost();
         } catch (IOException e) {
             if (connected && !shuttingDown) {
                 System.err.println("Error in listenLoop: " + e.getMessage());
-                SwingUtilities.invokeLater(() -> {
-                    if (onMessage != null) 
-                        onMessage.accept("ERROR:Connection lost");
-                });
+                reportConnectionLost();
             }
         } finally {
             disconnect();
         }
     }
 
+    private void reportConnectionLost() {
+        SwingUtilities.invokeLater(() -> {
+            if (onMessage != null) 
+                onMessage.accept("ERROR:Connection lost");
+        });
+    }
+
+    /**
+     * Sends PING:n every heartbeatMillis and closes the socket once
+     * heartbeatMisses PINGs in a row have gone unanswered, so a server
+     * that vanished without closing the connection shows up as
+     * "ERROR:Connection lost" instead of a silent game. Anything the server
+     * sends counts as an answer; a PONG:n echoing the latest PING also
+     * measures the round trip.
+     */
+    private void startHeartbeat() {
+        if (heartbeatMillis <= 0) return;
+        unansweredPings = 0;
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendHeartbeat() {
+        if (!connected) return;
+        if (unansweredPings >= heartbeatMisses) {
+            System.err.println("No heartbeat from server after " + unansweredPings + " pings, closing connection");
+            // the listener fails its read and reports the lost connection
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+            return;
+        }
+        unansweredPings++;
+        long micros = System.nanoTime() / 1000;
+        pingMicros = micros;
+        send("PING:" + micros);
+    }
+
+    private void handlePong(String data) {
+        try {
+            long micros = Long.parseLong(data.trim());
+            if (micros != pingMicros) return;
+            long rtt = System.nanoTime() / 1000 - micros;
+            long smoothed = rttMicros;
+            rttMicros = smoothed < 0 ? rtt : smoothed + (rtt - smoothed) / 8;
+        } catch (NumberFormatException ignored) {}
+    }
+
     /**
      * TODO 3: Send Message (10 minutes)
      * 
@@ -166,6 +256,7 @@ public class MastermindClient {
 
         connected = false;
         shuttingDown = true;
+        if (heartbeat != null) heartbeat.shutdownNow();
 
         // trying to send diconnect message
         try { 
@@ -204,6 +295,61 @@ public class MastermindClient {
         return connected && socket != null && !socket.isClosed();
     }
 
+    /**
+     * Notes that we hold a seat in gameId under the current session token.
+     */
+    public void rememberGame(String gameId) {
+        String token = sessionToken;
+        if (token != null) resumeTokens.put(gameId, token);
+    }
+
+    /**
+     * Forgets a game we left or that ended; there is nothing to resume.
+     */
+    public void forgetGame(String gameId) {
+        resumeTokens.remove(gameId);
+    }
+
+    public boolean canResume(String gameId) {
+        return resumeTokens.containsKey(gameId);
+    }
+
+    /**
+     * Reconnects to the same server address after the connection was lost
+     * and asks for our seat in gameId back with RESUME. The server answers
+     * CONNECTED, GAME_JOINED and TURN_UPDATE, or "ERROR:Nothing to resume"
+     * if it holds no seat for us.
+     *
+     * @throws IOException if the server cannot be reached (yet)
+     */
+    public void resume(String gameId, Consumer<String> messageCallback) throws IOException, InterruptedException {
+        String token = resumeTokens.get(gameId);
+        if (token == null) throw new IllegalStateException("No seat to resume in " + gameId);
+        // the old listener closes its socket on the way out; let it finish first
+        Thread old = listenerThread;
+        if (old != null && old != Thread.currentThread()) old.join();
+        connect(host, port, messageCallback);
+        send("RESUME:" + token);
+    }
+
+    /**
+     * Sets the heartbeat used by the next connect(); an interval of 0
+     * turns it off.
+     */
+    public void setHeartbeat(long intervalMillis, int misses) {
+        this.heartbeatMillis = intervalMillis;
+        this.heartbeatMisses = Math.max(1, misses);
+    }
+
+    /**
+     * Smoothed round trip to the server in milliseconds, or -1 before the
+     * first PONG.
+     */
+    public double getRttMillis() {
+        long rtt = rttMicros;
+        return rtt < 0 ? -1 : rtt / 1000.0;
+    }
+
     // Provided methods - already implemented
     
     public void setMessageCallback(Consumer<String> callback) {
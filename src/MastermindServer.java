@@ -4,26 +4,126 @@
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
 import java.util.concurrent.*;
 
 public class MastermindServer {
+    /**
+     * How client connections are served.
+     * THREADED: one blocking ClientHandler thread per connection (default).
+     * NIO: a fixed set of selector event loops shared by all connections.
+     * VIRTUAL: one blocking ClientHandler per connection on a JDK 21 virtual thread.
+     */
+    public enum Mode { THREADED, NIO, VIRTUAL }
+
+    // pending-connection queue; the JDK default of 50 drops connects during storms
+    private static final int ACCEPT_BACKLOG = 1024;
+
     private final int port;
+    private final Mode mode;
+    private final int eventLoopCount;
+    private final ConnectionSettings connectionSettings;
     private ServerSocket serverSocket;
-    private final ExecutorService pool = Executors.newCachedThreadPool();
-    private final GameLobbyManager lobby = new GameLobbyManager();
+    private ServerSocketChannel serverChannel;
+    private NioEventLoop[] eventLoops;
+    private final ExecutorService pool;
+    private final VirtualThreadMonitor virtualThreads;
+    private ScheduledExecutorService statsReporter;
+    private final GameLobbyManager lobby;
     private volatile boolean running = true;
 
     public MastermindServer(int port) {
+        this(port, Mode.THREADED, 1, ConnectionSettings.defaults());
+    }
+
+    public MastermindServer(int port, Mode mode, int eventLoopCount, ConnectionSettings connectionSettings) {
+        this(port, mode, eventLoopCount, connectionSettings, new GameLobbyManager());
+    }
+
+    public MastermindServer(int port, Mode mode, int eventLoopCount, ConnectionSettings connectionSettings,
+                            GameLobbyManager lobby) {
         this.port = port;
+        this.lobby = lobby;
+        this.eventLoopCount = Math.max(1, eventLoopCount);
+        this.connectionSettings = connectionSettings;
+
+        ExecutorService virtualPool = mode == Mode.VIRTUAL ? VirtualThreadMonitor.newVirtualThreadExecutor() : null;
+        if (mode == Mode.VIRTUAL && virtualPool == null) {
+            System.err.println("Virtual threads need Java 21+ (running " +
+                               System.getProperty("java.version") + "). Using threaded mode.");
+            mode = Mode.THREADED;
+        }
+        this.mode = mode;
+        this.pool = virtualPool != null ? virtualPool : Executors.newCachedThreadPool();
+        this.virtualThreads = virtualPool != null ? new VirtualThreadMonitor() : null;
+
+        RateLimits rateLimits = connectionSettings.rateLimits;
+        lobby.getMetrics().counters("mastermind_commands_throttled_total", "command",
+                                    "Commands rejected with THROTTLED", rateLimits::getThrottledCounts);
+        lobby.getMetrics().counter("mastermind_read_pauses_total", "Times a connection's reads were held back",
+                                   rateLimits::getPauseCount);
+        if (virtualThreads != null) {
+            virtualThreads.register(lobby.getMetrics());
+        }
     }
 
     public void start() throws IOException {
-        serverSocket = new ServerSocket(port);
-        
+        lobby.getAdmission().start();
+        if (mode == Mode.NIO) {
+            startNio();
+            return;
+        }
+        serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
+        if (virtualThreads != null) {
+            startVirtualThreadStats();
+        }
+
         while (running && !pool.isShutdown()) {
             try {
                 Socket clientSocket = serverSocket.accept();
-                pool.execute(new ClientHandler(clientSocket, lobby));
+                String busy = lobby.getAdmission().admitConnection();
+                if (busy != null) {
+                    refuse(clientSocket.getOutputStream(), clientSocket, busy);
+                    continue;
+                }
+                Runnable handler = new ClientHandler(clientSocket, lobby, connectionSettings, pool);
+                pool.execute(virtualThreads != null ? virtualThreads.track(handler) : handler);
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error accepting client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts on this thread and spreads channels round-robin over the
+     * event loops; each loop then handles reads, writes and dispatch.
+     */
+    private void startNio() throws IOException {
+        eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new NioEventLoop("NioEventLoop-" + i, lobby, connectionSettings);
+            eventLoops[i].start();
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        System.out.println("MastermindServer: NIO mode with " + eventLoops.length + " event loops on port " + port);
+
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                String busy = lobby.getAdmission().admitConnection();
+                if (busy != null) {
+                    refuse(Channels.newOutputStream(channel), channel, busy);
+                    continue;
+                }
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
             } catch (IOException e) {
                 if (running) {
                     System.err.println("Error accepting client: " + e.getMessage());
@@ -32,31 +132,175 @@ public class MastermindServer {
         }
     }
 
+    /**
+     * Turns away a connection AdmissionControl refused: one BUSY line, then
+     * the socket is closed. The line fits in the empty send buffer of a
+     * fresh connection, so the accept thread never blocks on it.
+     */
+    private static void refuse(OutputStream out, Closeable connection, String reason) {
+        try (connection) {
+            out.write(("BUSY:" + reason + "\n").getBytes());
+            out.flush();
+        } catch (IOException e) {
+            // the client is being turned away anyway
+        }
+    }
+
+    /**
+     * Starts JFR pinning tracking and logs the virtual thread counters
+     * every 30 seconds.
+     */
+    private void startVirtualThreadStats() {
+        virtualThreads.startPinningMonitor();
+        System.out.println("MastermindServer: virtual thread mode on port " + port);
+        statsReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "VirtualThreadStats");
+            t.setDaemon(true);
+            return t;
+        });
+        statsReporter.scheduleAtFixedRate(() -> System.out.println("MastermindServer: " + virtualThreads),
+                                          30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Virtual thread counters, or null when not running in VIRTUAL mode.
+     */
+    public VirtualThreadMonitor getVirtualThreadMonitor() {
+        return virtualThreads;
+    }
+
     public void stop() {
         running = false;
         pool.shutdown();
+        lobby.shutdown();
+        if (statsReporter != null) {
+            statsReporter.shutdownNow();
+        }
+        if (virtualThreads != null) {
+            virtualThreads.stop();
+        }
         try {
             if (serverSocket != null) {
                 serverSocket.close();
             }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
         } catch (IOException e) {
             System.err.println("Error closing server: " + e.getMessage());
         }
+        if (eventLoops != null) {
+            for (NioEventLoop loop : eventLoops) {
+                loop.shutdown();
+            }
+        }
     }
 
     public static void main(String[] args) {
-        int port = GameConfiguration.DEFAULT_PORT;
-        
-        if (args.length > 0) {
+        ServerOptions options = ServerOptions.parse(args);
+
+        Mode mode;
+        try {
+            mode = Mode.valueOf(options.getString("mode", "threaded").trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown mode: " + options.getString("mode", "") + ". Using threaded.");
+            mode = Mode.THREADED;
+        }
+        int loops = options.getInt("event-loops", Runtime.getRuntime().availableProcessors());
+        int shards = options.getInt("lobby-shards", Runtime.getRuntime().availableProcessors());
+        int sessionLoops = options.getInt("session-loops", 0);
+
+        GameLobbyManager lobby = new GameLobbyManager(shards, sessionLoops);
+        lobby.getArchive().setLimits(options.getInt("archive-size", GameArchive.DEFAULT_MAX_GAMES),
+                                     options.getInt("archive-mins", (int) (GameArchive.DEFAULT_MAX_AGE_MILLIS / 60_000)) * 60_000L);
+        lobby.setTurnMillis(options.getInt("turn-secs", (int) (GameLobbyManager.DEFAULT_TURN_MILLIS / 1000)) * 1000L);
+        lobby.getAdmission().setLimits(options.getInt("max-connections", AdmissionControl.DEFAULT_MAX_CONNECTIONS),
+                                       options.getInt("max-games", AdmissionControl.DEFAULT_MAX_SESSIONS),
+                                       options.getInt("max-games-per-player", AdmissionControl.DEFAULT_MAX_SESSIONS_PER_PLAYER));
+        lobby.getAdmission().setHighWater(options.getInt("heap-high-water", (int) (AdmissionControl.DEFAULT_HEAP_HIGH_WATER * 100)) / 100.0,
+                                          options.getInt("queue-high-water", (int) AdmissionControl.DEFAULT_QUEUE_HIGH_WATER));
+        lobby.setIdleSessionMillis(options.getInt("idle-session-secs",
+                                                  (int) (GameLobbyManager.DEFAULT_IDLE_SESSION_MILLIS / 1000)) * 1000L);
+        String clusterSpec = options.getString("cluster", null);
+        if (clusterSpec != null) {
+            try {
+                Map<String, InetSocketAddress> members = ClusterNode.parseMembers(clusterSpec);
+                String nodeId = options.getString("node", members.keySet().iterator().next());
+                ClusterNode cluster = new ClusterNode(nodeId, members, lobby,
+                                                      SharedSecret.fromOptions(options, "cluster"));
+                ClientHandler.setPlayerIdSuffix("-" + nodeId);
+                lobby.setCluster(cluster);
+                cluster.start();
+            } catch (IllegalArgumentException | IOException e) {
+                System.err.println("Cluster setup failed: " + e.getMessage());
+                return;
+            }
+        }
+
+        new AdminConsole(lobby, lobby.getCluster()).start();
+
+        String journalDir = options.getString("journal", null);
+        if (journalDir != null) {
+            Path directory = Paths.get(journalDir);
+            GameJournal journal = new GameJournal(directory, GameJournal.DEFAULT_SEGMENT_SIZE,
+                                                  options.getInt("journal-sync-ms", (int) GameJournal.DEFAULT_SYNC_MILLIS));
+            try {
+                // games that were running when the last server stopped
+                JournalRecovery.Result recovered = JournalRecovery.recover(directory);
+                System.out.println("MastermindServer: recovered " + recovered);
+                journal.start();
+                lobby.setJournal(journal);
+                lobby.restoreHeld(recovered.sessions);
+            } catch (IOException e) {
+                System.err.println("Journal setup failed: " + e.getMessage());
+                return;
+            }
+            // a checkpoint straight away, so the next recovery can skip the old segments
+            lobby.checkpoint();
+            journal.checkpointEvery(options.getInt("checkpoint-secs", 60), lobby::checkpoint);
+        }
+        String standbyOf = options.getString("standby-of", null);
+        if (standbyOf != null) {
+            StandbyReplica replica;
             try {
-                port = Integer.parseInt(args[0]);
-            } catch (NumberFormatException e) {
-                System.err.println("Invalid port number. Using default: " + 
-                                   GameConfiguration.DEFAULT_PORT);
+                replica = new StandbyReplica(StandbyReplica.parseAddress(standbyOf),
+                                             SharedSecret.fromOptions(options, "replication"));
+            } catch (IllegalArgumentException | IOException e) {
+                System.err.println("Standby setup failed: " + e.getMessage());
+                return;
+            }
+            System.out.println("MastermindServer: standby for " + standbyOf + ", port " + options.getPort());
+            replica.awaitTakeover();
+            replica.restoreInto(lobby);
+        }
+        int replicationPort = options.getInt("replication-port", 0);
+        if (replicationPort > 0) {
+            try {
+                InetSocketAddress bind = new InetSocketAddress(
+                    options.getString("replication-bind", ReplicationServer.DEFAULT_BIND), replicationPort);
+                ReplicationServer replication = new ReplicationServer(bind, lobby,
+                                                                      SharedSecret.fromOptions(options, "replication"));
+                lobby.setReplication(replication);
+                replication.start();
+            } catch (IllegalArgumentException | IOException e) {
+                System.err.println("Replication setup failed: " + e.getMessage());
+                return;
+            }
+        }
+
+        lobby.getMetrics().registerMBean();
+        int metricsPort = options.getInt("metrics-port", 0);
+        if (metricsPort > 0) {
+            try {
+                lobby.getMetrics().startHttp(metricsPort);
+            } catch (IOException e) {
+                System.err.println("Metrics setup failed: " + e.getMessage());
+                return;
             }
         }
 
-        MastermindServer server = new MastermindServer(port);
+        MastermindServer server = new MastermindServer(options.getPort(), mode, loops,
+                                                       ConnectionSettings.from(options), lobby);
         try {
             server.start();
         } catch (IOException e) {
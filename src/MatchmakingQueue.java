@@ -0,0 +1,372 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * MatchmakingQueue
+ *
+ * Rating-aware matchmaking. Players queue with a mode and a player count
+ * (QUEUE:4:ranked); a background matcher groups players of similar rating
+ * into new GameSessions.
+ *
+ * Each (mode, players) pool keeps its tickets in rating buckets
+ * BUCKET_WIDTH wide, oldest first within a bucket. Every tick the matcher
+ * tries the head of each bucket as an anchor and collects partners from
+ * the nearest buckets that fall inside the anchor's window. The window
+ * starts at BASE_WINDOW and widens with the anchor's waiting time up to
+ * MAX_WINDOW, so nobody waits forever for a perfect match. A tick costs
+ * buckets x window buckets, not the number of queued players.
+ *
+ * Ratings are Elo, kept per player ID while the player is connected (a
+ * RESUME keeps the ID, and with it the rating). Names are neither unique
+ * nor owned, so keying by name would let anyone play on, or sink,
+ * someone else's rating.
+ *
+ * Metrics: queue depth, time-to-match percentiles and match quality (the
+ * rating spread of each formed game).
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class MatchmakingQueue {
+    public static final int DEFAULT_RATING = 1500;
+
+    private static final int BUCKET_WIDTH = 50;
+    private static final int BASE_WINDOW = 50;
+    private static final int WIDEN_PER_SECOND = 25;
+    private static final int MAX_WINDOW = 1000;
+    private static final int ELO_K = 32;
+    private static final long TICK_MILLIS = 100;
+    private static final long STATS_INTERVAL_SECONDS = 30;
+
+    private static final class Ticket {
+        final String playerId;
+        final int rating;
+        final Pool pool;
+        final long enqueuedNanos = System.nanoTime();
+
+        Ticket(String playerId, int rating, Pool pool) {
+            this.playerId = playerId;
+            this.rating = rating;
+            this.pool = pool;
+        }
+
+        int window(long now) {
+            long waitedSeconds = TimeUnit.NANOSECONDS.toSeconds(now - enqueuedNanos);
+            return (int) Math.min(MAX_WINDOW, BASE_WINDOW + WIDEN_PER_SECOND * waitedSeconds);
+        }
+    }
+
+    private static final class Pool {
+        final String mode;
+        final int requiredPlayers;
+        final TreeMap<Integer, ArrayDeque<Ticket>> buckets = new TreeMap<>();
+        int size = 0;
+
+        Pool(String mode, int requiredPlayers) {
+            this.mode = mode;
+            this.requiredPlayers = requiredPlayers;
+        }
+    }
+
+    private final GameLobbyManager lobby;
+    private final ConcurrentHashMap<String, Integer> ratings = new ConcurrentHashMap<>();
+
+    // pools and tickets are guarded by lock; the matcher holds it only while
+    // picking players, never while creating sessions or sending messages
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Pool> pools = new HashMap<>();
+    private final Map<String, Ticket> tickets = new HashMap<>();
+    private ScheduledExecutorService matcher;
+
+    private final LatencyHistogram timeToMatchMillis = new LatencyHistogram();
+    private final LatencyHistogram matchSpread = new LatencyHistogram();
+    private final LongAdder matchesFormed = new LongAdder();
+    private final LongAdder playersMatched = new LongAdder();
+
+    public MatchmakingQueue(GameLobbyManager lobby) {
+        this.lobby = lobby;
+    }
+
+    /**
+     * Queues a player. The matcher thread starts with the first ticket.
+     *
+     * @return false if the player is already queued
+     */
+    public boolean enqueue(String playerId, String mode, int requiredPlayers) {
+        int rating = getRating(playerId);
+        lock.lock();
+        try {
+            if (tickets.containsKey(playerId)) return false;
+            String key = mode + ":" + requiredPlayers;
+            Pool pool = pools.computeIfAbsent(key, k -> new Pool(mode, requiredPlayers));
+            Ticket ticket = new Ticket(playerId, rating, pool);
+            pool.buckets.computeIfAbsent(rating / BUCKET_WIDTH, b -> new ArrayDeque<>()).add(ticket);
+            pool.size++;
+            tickets.put(playerId, ticket);
+            if (matcher == null) {
+                startMatcher();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a player out of the queue.
+     *
+     * @return false if the player was not queued
+     */
+    public boolean cancel(String playerId) {
+        lock.lock();
+        try {
+            Ticket ticket = tickets.remove(playerId);
+            if (ticket == null) return false;
+            int bucketKey = ticket.rating / BUCKET_WIDTH;
+            ArrayDeque<Ticket> bucket = ticket.pool.buckets.get(bucketKey);
+            bucket.remove(ticket);
+            if (bucket.isEmpty()) ticket.pool.buckets.remove(bucketKey);
+            ticket.pool.size--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startMatcher() {
+        matcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Matchmaker");
+            t.setDaemon(true);
+            return t;
+        });
+        matcher.scheduleWithFixedDelay(this::matchAll, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        matcher.scheduleAtFixedRate(() -> System.out.println("MatchmakingQueue: " + this),
+                                    STATS_INTERVAL_SECONDS, STATS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        lock.lock();
+        try {
+            if (matcher != null) {
+                matcher.shutdownNow();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * One matcher tick: pick every match available now, then seat them.
+     * Each match's game is admitted on its own; once one is refused the
+     * rest go back in the queue for the next tick.
+     */
+    void matchAll() {
+        // skip the tick while the server sheds load or is at its cap; players stay queued
+        if (lobby.getAdmission().sessionRefusal(null) != null) return;
+        List<List<Ticket>> matches = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (Pool pool : pools.values()) {
+                if (pool.size >= pool.requiredPlayers) {
+                    matchPool(pool, now, matches);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        boolean admitted = true;
+        for (List<Ticket> match : matches) {
+            if (!admitted) {
+                requeue(match);
+                continue;
+            }
+            try {
+                admitted = startMatch(match);
+            } catch (Exception e) {
+                System.err.println("MatchmakingQueue: failed to start match: " + e.getMessage());
+            }
+        }
+    }
+
+    private void matchPool(Pool pool, long now, List<List<Ticket>> matches) {
+        // snapshot the keys; matching removes buckets as they empty
+        for (Integer bucketKey : new ArrayList<>(pool.buckets.keySet())) {
+            while (pool.size >= pool.requiredPlayers) {
+                ArrayDeque<Ticket> bucket = pool.buckets.get(bucketKey);
+                if (bucket == null) break;
+                List<Ticket> match = collect(pool, bucket.peekFirst(), now);
+                if (match == null) break;
+                for (Ticket ticket : match) {
+                    int key = ticket.rating / BUCKET_WIDTH;
+                    ArrayDeque<Ticket> from = pool.buckets.get(key);
+                    from.remove(ticket);
+                    if (from.isEmpty()) pool.buckets.remove(key);
+                    tickets.remove(ticket.playerId);
+                    pool.size--;
+                }
+                matches.add(match);
+            }
+        }
+    }
+
+    /**
+     * Gathers anchor plus the closest-rated partners inside its window,
+     * searching buckets outward from the anchor's own.
+     *
+     * @return the match, or null if the window does not hold enough players
+     */
+    private static List<Ticket> collect(Pool pool, Ticket anchor, long now) {
+        int window = anchor.window(now);
+        int home = anchor.rating / BUCKET_WIDTH;
+        int reach = window / BUCKET_WIDTH + 1;
+        List<Ticket> match = new ArrayList<>(pool.requiredPlayers);
+        match.add(anchor);
+        for (int distance = 0; distance <= reach && match.size() < pool.requiredPlayers; distance++) {
+            addFrom(pool.buckets.get(home - distance), anchor, window, match, pool.requiredPlayers);
+            if (distance > 0) {
+                addFrom(pool.buckets.get(home + distance), anchor, window, match, pool.requiredPlayers);
+            }
+        }
+        return match.size() == pool.requiredPlayers ? match : null;
+    }
+
+    private static void addFrom(ArrayDeque<Ticket> bucket, Ticket anchor, int window,
+                                List<Ticket> match, int requiredPlayers) {
+        if (bucket == null) return;
+        for (Ticket ticket : bucket) {
+            if (match.size() >= requiredPlayers) return;
+            if (ticket != anchor && Math.abs(ticket.rating - anchor.rating) <= window) {
+                match.add(ticket);
+            }
+        }
+    }
+
+    /**
+     * Creates the session for a match and seats everyone in it. Players who
+     * disconnected since the match was picked are simply left out; the game
+     * stays open for others to join. The game is the server's, so it counts
+     * against nobody's own game cap.
+     *
+     * @return false if AdmissionControl refused the game and the players
+     *         were put back in the queue
+     */
+    private boolean startMatch(List<Ticket> match) {
+        Pool pool = match.get(0).pool;
+        long now = System.nanoTime();
+        int minRating = Integer.MAX_VALUE;
+        int maxRating = Integer.MIN_VALUE;
+        for (Ticket ticket : match) {
+            minRating = Math.min(minRating, ticket.rating);
+            maxRating = Math.max(maxRating, ticket.rating);
+            timeToMatchMillis.record(TimeUnit.NANOSECONDS.toMillis(now - ticket.enqueuedNanos));
+        }
+        matchSpread.record(maxRating - minRating);
+        matchesFormed.increment();
+        playersMatched.add(match.size());
+
+        String gameName = Character.toUpperCase(pool.mode.charAt(0)) + pool.mode.substring(1) + " Match";
+        String gameId = lobby.createGame(gameName, pool.requiredPlayers, null);
+        if (gameId == null) {
+            // refused by AdmissionControl; the players keep their place
+            requeue(match);
+            return false;
+        }
+        // the joins finish on the session's loop; the last one announces them
+        Queue<ClientHandler> seated = new ConcurrentLinkedQueue<>();
+        AtomicInteger pending = new AtomicInteger(match.size());
+        for (Ticket ticket : match) {
+            ClientHandler handler = lobby.getPlayer(ticket.playerId);
+            lobby.joinGame(gameId, ticket.playerId, joined -> {
+                if (joined && handler != null) seated.add(handler);
+                if (pending.decrementAndGet() == 0) matchSeated(gameId, seated);
+            });
+        }
+        return true;
+    }
+
+    private void matchSeated(String gameId, Queue<ClientHandler> seated) {
+        if (seated.isEmpty()) {
+            lobby.removeSession(gameId);
+            return;
+        }
+        for (ClientHandler handler : seated) {
+            handler.announceJoin(gameId);
+        }
+    }
+
+    /**
+     * Drops a player who left the server: their ticket and their rating.
+     */
+    public void playerLeft(String playerId) {
+        cancel(playerId);
+        ratings.remove(playerId);
+    }
+
+    /**
+     * Puts a match's players back in their buckets with their original
+     * tickets, so their waiting time still counts. Players who left or
+     * queued again meanwhile are skipped.
+     */
+    private void requeue(List<Ticket> match) {
+        lock.lock();
+        try {
+            for (Ticket ticket : match) {
+                if (lobby.getPlayer(ticket.playerId) == null || tickets.containsKey(ticket.playerId)) continue;
+                ticket.pool.buckets.computeIfAbsent(ticket.rating / BUCKET_WIDTH, b -> new ArrayDeque<>()).addFirst(ticket);
+                ticket.pool.size++;
+                tickets.put(ticket.playerId, ticket);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Elo update for a finished game: the winner beat every other player.
+     */
+    public void recordWin(String winnerId, Collection<String> playerIds) {
+        List<String> losers = new ArrayList<>(playerIds);
+        losers.remove(winnerId);
+        if (losers.isEmpty()) return;
+        int winnerRating = getRating(winnerId);
+        double winnerGain = 0;
+        for (String loser : losers) {
+            int loserRating = getRating(loser);
+            double expected = 1.0 / (1.0 + Math.pow(10, (loserRating - winnerRating) / 400.0));
+            // spread over all opponents so big games don't swing ratings more
+            double change = ELO_K * (1.0 - expected) / losers.size();
+            winnerGain += change;
+            ratings.merge(loser, DEFAULT_RATING - (int) Math.round(change), (old, init) -> old - (int) Math.round(change));
+        }
+        int gain = (int) Math.round(winnerGain);
+        ratings.merge(winnerId, DEFAULT_RATING + gain, (old, init) -> old + gain);
+    }
+
+    public int getRating(String playerId) {
+        return ratings.getOrDefault(playerId, DEFAULT_RATING);
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return tickets.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMatchesFormed() { return matchesFormed.sum(); }
+    public long getPlayersMatched() { return playersMatched.sum(); }
+    public LatencyHistogram getTimeToMatchMillis() { return timeToMatchMillis; }
+    public LatencyHistogram getMatchSpread() { return matchSpread; }
+
+    @Override
+    public String toString() {
+        return String.format("queued=%d matches=%d players=%d timeToMatch p50/p95/p99=%d/%d/%dms spread mean/p95=%.0f/%d",
+                             getQueueDepth(), getMatchesFormed(), getPlayersMatched(),
+                             timeToMatchMillis.percentile(50), timeToMatchMillis.percentile(95),
+                             timeToMatchMillis.percentile(99), matchSpread.getMean(), matchSpread.percentile(95));
+    }
+}
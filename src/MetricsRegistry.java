@@ -0,0 +1,431 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * MetricsRegistry
+ *
+ * One place to read the server's numbers from outside the process, instead
+ * of grepping the stats lines each component prints. Metrics come in three
+ * kinds:
+ *
+ *   - counters only go up. Either the registry owns one (a LongAdder, so
+ *     counting a guess on the hot path is one striped increment and never
+ *     allocates) or it reads a count a component already keeps;
+ *   - gauges are read when the metrics are: connections, sessions by
+ *     status, queue depths, guesses per second;
+ *   - histograms are LatencyHistograms, exported with their power-of-two
+ *     buckets.
+ *
+ * Everything is read on demand, so registering costs nothing until someone
+ * looks. The registry is exported two ways: as the JMX MBean
+ * "mastermind:type=Metrics" (one read-only attribute per series, for
+ * jconsole), and, with startHttp(), as Prometheus text on
+ * http://127.0.0.1:port/metrics. The HTTP endpoint only listens on the
+ * loopback interface.
+ */
+
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.*;
+import javax.management.*;
+
+public class MetricsRegistry implements DynamicMBean {
+    public static final String OBJECT_NAME = "mastermind:type=Metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // by name, in registration order; registration is rare, reads copy the list
+    private final Map<String, Family> families = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private HttpServer http;
+    private ExecutorService httpExecutor;
+    private ObjectName registeredAs;
+
+    /**
+     * A counter the registry owns. Safe to bump from any thread.
+     */
+    public static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() { count.increment(); }
+        public void add(long amount) { count.add(amount); }
+        public long get() { return count.sum(); }
+    }
+
+    /**
+     * Receives the samples of one family while the metrics are read.
+     * suffix is "" or "_bucket"/"_sum"/"_count"; labels is "" or
+     * name="value" pairs, already escaped.
+     */
+    private interface Sink {
+        void sample(String suffix, String labels, double value);
+    }
+
+    private abstract static class Family {
+        final String name;
+        final String help;
+        final String type;
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        abstract void collect(Sink sink);
+    }
+
+    /**
+     * A counter owned by the registry, created on first use. Asking again
+     * for the same name returns the same counter.
+     *
+     * @throws IllegalArgumentException if name is already taken by
+     *         another kind of metric
+     */
+    public Counter counter(String name, String help) {
+        lock.lock();
+        try {
+            Family existing = families.get(name);
+            if (existing instanceof OwnedCounter) return ((OwnedCounter) existing).counter;
+            OwnedCounter family = new OwnedCounter(name, help);
+            add(family);
+            return family.counter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A counter a component keeps itself, read through value.
+     */
+    public void counter(String name, String help, LongSupplier value) {
+        register(new Family(name, help, "counter") {
+            @Override
+            void collect(Sink sink) {
+                sink.sample("", "", value.getAsLong());
+            }
+        });
+    }
+
+    /**
+     * Counters split by one label, e.g. commands throttled by command.
+     */
+    public void counters(String name, String label, String help, Supplier<Map<String, ? extends Number>> values) {
+        register(new Labeled(name, help, "counter", label, values));
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value) {
+        register(new Family(name, help, "gauge") {
+            @Override
+            void collect(Sink sink) {
+                sink.sample("", "", value.getAsDouble());
+            }
+        });
+    }
+
+    /**
+     * Gauges split by one label, e.g. sessions by status.
+     */
+    public void gauges(String name, String label, String help, Supplier<Map<String, ? extends Number>> values) {
+        register(new Labeled(name, help, "gauge", label, values));
+    }
+
+    /**
+     * How fast total grows, per second: averaged since the previous read
+     * that is at least a second old, so a scraper polling every 15 seconds
+     * sees the average over those 15 seconds.
+     */
+    public void rate(String name, String help, LongSupplier total) {
+        register(new Rate(name, help, total));
+    }
+
+    public void histogram(String name, String help, LatencyHistogram histogram) {
+        register(new Family(name, help, "histogram") {
+            @Override
+            void collect(Sink sink) {
+                // buckets are cumulative; stop after the last one in use
+                int last = -1;
+                long[] counts = new long[LatencyHistogram.BUCKETS];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = histogram.getBucketCount(i);
+                    if (counts[i] > 0) last = i;
+                }
+                long seen = 0;
+                for (int i = 0; i <= last && i < 63; i++) {
+                    seen += counts[i];
+                    sink.sample("_bucket", "le=\"" + LatencyHistogram.bucketUpperBound(i) + "\"", seen);
+                }
+                if (last == 63) seen += counts[63];
+                sink.sample("_bucket", "le=\"+Inf\"", seen);
+                sink.sample("_sum", "", histogram.getSum());
+                sink.sample("_count", "", seen);
+            }
+        });
+    }
+
+    private void register(Family family) {
+        lock.lock();
+        try {
+            add(family);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(Family family) {
+        if (families.containsKey(family.name)) {
+            throw new IllegalArgumentException("Metric already registered: " + family.name);
+        }
+        families.put(family.name, family);
+    }
+
+    private List<Family> snapshot() {
+        lock.lock();
+        try {
+            return new ArrayList<>(families.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class OwnedCounter extends Family {
+        final Counter counter = new Counter();
+
+        OwnedCounter(String name, String help) {
+            super(name, help, "counter");
+        }
+
+        @Override
+        void collect(Sink sink) {
+            sink.sample("", "", counter.get());
+        }
+    }
+
+    private static final class Labeled extends Family {
+        private final String label;
+        private final Supplier<Map<String, ? extends Number>> values;
+
+        Labeled(String name, String help, String type, String label, Supplier<Map<String, ? extends Number>> values) {
+            super(name, help, type);
+            this.label = label;
+            this.values = values;
+        }
+
+        @Override
+        void collect(Sink sink) {
+            for (Map.Entry<String, ? extends Number> entry : values.get().entrySet()) {
+                sink.sample("", label + "=\"" + escape(entry.getKey()) + "\"", entry.getValue().doubleValue());
+            }
+        }
+    }
+
+    private static final class Rate extends Family {
+        private final LongSupplier total;
+        private final ReentrantLock lock = new ReentrantLock();
+        private long lastNanos = System.nanoTime();
+        private long lastTotal;
+        private double perSecond;
+
+        Rate(String name, String help, LongSupplier total) {
+            super(name, help, "gauge");
+            this.total = total;
+            this.lastTotal = total.getAsLong();
+        }
+
+        @Override
+        void collect(Sink sink) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                if (now - lastNanos >= 1_000_000_000L) {
+                    long current = total.getAsLong();
+                    perSecond = (current - lastTotal) * 1e9 / (now - lastNanos);
+                    lastNanos = now;
+                    lastTotal = current;
+                }
+                sink.sample("", "", perSecond);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Every metric in the Prometheus text exposition format.
+     */
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Family family : snapshot()) {
+            text.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\\", "\\\\")
+                                                                            .replace("\n", "\\n")).append('\n');
+            text.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            family.collect((suffix, labels, value) -> {
+                text.append(family.name).append(suffix);
+                if (!labels.isEmpty()) text.append('{').append(labels).append('}');
+                text.append(' ').append(format(value)).append('\n');
+            });
+        }
+        return text.toString();
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Serves GET /metrics on 127.0.0.1:port from one daemon thread.
+     */
+    public void startHttp(int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", this::serve);
+        httpExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "MetricsHttp");
+            t.setDaemon(true);
+            return t;
+        });
+        http.setExecutor(httpExecutor);
+        http.start();
+        System.out.println("MetricsRegistry: serving http://127.0.0.1:" + http.getAddress().getPort() + "/metrics");
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    /**
+     * Port the HTTP endpoint listens on, or 0 if it is not running.
+     */
+    public int getHttpPort() {
+        return http == null ? 0 : http.getAddress().getPort();
+    }
+
+    /**
+     * Registers this registry with the platform MBean server as
+     * OBJECT_NAME.
+     */
+    public void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            registeredAs = name;
+        } catch (JMException e) {
+            System.err.println("MetricsRegistry: JMX registration failed: " + e.getMessage());
+        }
+    }
+
+    public void stop() {
+        if (http != null) {
+            http.stop(0);
+            httpExecutor.shutdownNow();
+        }
+        if (registeredAs != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredAs);
+            } catch (JMException e) {
+                // already gone
+            }
+            registeredAs = null;
+        }
+    }
+
+    // JMX: one attribute per series, named family[suffix][.labelValue]
+
+    private Map<String, Double> attributes() {
+        Map<String, Double> attributes = new LinkedHashMap<>();
+        for (Family family : snapshot()) {
+            family.collect((suffix, labels, value) -> {
+                // bucket counts are for Prometheus; jconsole gets _sum and _count
+                if (suffix.equals("_bucket")) return;
+                String name = family.name + suffix;
+                if (!labels.isEmpty()) {
+                    name += "." + labels.substring(labels.indexOf('"') + 1, labels.length() - 1);
+                }
+                attributes.put(name, value);
+            });
+        }
+        return attributes;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Double value = attributes().get(attribute);
+        if (value == null) throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Double> attributes = attributes();
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            Double value = attributes.get(name);
+            if (value != null) list.add(new Attribute(name, value));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String action, Object[] params, String[] signature) throws MBeanException {
+        throw new MBeanException(new UnsupportedOperationException(action));
+    }
+
+    /**
+     * Lists the series there are right now; labeled families (sessions by
+     * status, say) can gain attributes later.
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, String> help = new HashMap<>();
+        for (Family family : snapshot()) {
+            help.put(family.name, family.help);
+        }
+        List<MBeanAttributeInfo> infos = new ArrayList<>();
+        for (String name : attributes().keySet()) {
+            String family = name.replaceFirst("(_sum|_count)?(\\..*)?$", "");
+            infos.add(new MBeanAttributeInfo(name, "java.lang.Double", help.getOrDefault(family, name),
+                                             true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Mastermind server metrics",
+                             infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().size() + " metrics" + (http != null ? ", http port " + getHttpPort() : "");
+    }
+}
@@ -0,0 +1,246 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * NioConnection
+ *
+ * Per-channel state for a client served by an NioEventLoop: the partial
+ * line being read, and the bytes still waiting to be written.
+ *
+ * Reads and writes happen only on the owning loop thread. send() may be
+ * called from any thread (game broadcasts come from other connections),
+ * so it just queues the encoded message and asks the loop to flush. A
+ * flush hands every queued message to a single gathering write, straight
+ * from the shared broadcast bytes.
+ *
+ * A client over its connection-wide rate limit is not read for a while:
+ * OP_READ is dropped and whatever is left in the read buffer waits until
+ * the pause is over, so its backlog stays in its own socket.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class NioConnection {
+    // same encoding the blocking BufferedReader uses
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(128);
+    private final OutboundQueue outbound;
+    private final List<EncodedMessage> batch = new ArrayList<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private ByteBuffer[] pending = new ByteBuffer[16];
+    private int pendingStart = 0;
+    private int pendingEnd = 0;
+    private ClientHandler handler;
+    private SelectionKey key;
+    private volatile boolean closed = false;
+    // reading is paused for the rate limit; loop thread only
+    private boolean paused = false;
+
+    NioConnection(SocketChannel channel, NioEventLoop loop, ConnectionSettings settings) {
+        this.channel = channel;
+        this.loop = loop;
+        this.outbound = settings.newOutboundQueue();
+    }
+
+    void attach(ClientHandler handler, SelectionKey key) {
+        this.handler = handler;
+        this.key = key;
+    }
+
+    /**
+     * Reads whatever is available and dispatches every complete line.
+     */
+    void onReadable() {
+        int n;
+        try {
+            n = channel.read(readBuffer);
+        } catch (IOException e) {
+            onPeerClosed();
+            return;
+        }
+        if (n < 0) {
+            onPeerClosed();
+            return;
+        }
+
+        readBuffer.flip();
+        dispatchBuffered();
+    }
+
+    /**
+     * Dispatches the complete lines in the read buffer, stopping early if
+     * the client has to pause.
+     */
+    private void dispatchBuffered() {
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                dispatchLine();
+                if (closed) return;
+                long pause = handler.takeReadPause();
+                if (pause > 0) {
+                    pauseReading(pause);
+                    return;
+                }
+            } else if (b != '\r') {
+                lineBuffer.write(b);
+                if (lineBuffer.size() > MAX_LINE_BYTES) {
+                    System.err.println("NioConnection - Line too long, closing " + describe());
+                    onPeerClosed();
+                    return;
+                }
+            }
+        }
+        readBuffer.clear();
+    }
+
+    private void pauseReading(long nanos) {
+        paused = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        loop.schedule(Math.max(1, nanos / 1_000_000), this::resumeReading);
+    }
+
+    private void resumeReading() {
+        if (closed) return;
+        paused = false;
+        dispatchBuffered();
+        if (!paused && !closed) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    private void dispatchLine() {
+        String line = new String(lineBuffer.toByteArray(), CHARSET);
+        lineBuffer.reset();
+        handler.handleLine(line);
+        if (!handler.isRunning()) {
+            // DISCONNECT was received
+            onPeerClosed();
+        }
+    }
+
+    /**
+     * Queues a message for this client. Safe to call from any thread.
+     */
+    public void send(EncodedMessage message) {
+        if (closed) return;
+        if (!outbound.offer(message)) {
+            System.err.println("NioConnection - Slow consumer, disconnecting " + describe());
+            loop.execute(this::onPeerClosed);
+            return;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            if (loop.inEventLoop()) {
+                flush();
+            } else {
+                loop.execute(this::flush);
+            }
+        }
+    }
+
+    void onWritable() {
+        flush();
+    }
+
+    /**
+     * Writes as much of the queue as the socket accepts; if the kernel buffer
+     * fills up, waits for OP_WRITE instead of spinning.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        if (closed) return;
+        try {
+            while (true) {
+                if (pendingStart == pendingEnd) {
+                    outbound.drainTo(batch);
+                    if (batch.isEmpty()) break;
+                    stage(batch);
+                    batch.clear();
+                }
+                EncodedMessage.recordWrite(channel.write(pending, pendingStart, pendingEnd - pendingStart));
+                while (pendingStart < pendingEnd && !pending[pendingStart].hasRemaining()) {
+                    pending[pendingStart++] = null;
+                }
+                if (pendingStart < pendingEnd) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException | CancelledKeyException e) {
+            onPeerClosed();
+        }
+    }
+
+    /**
+     * Lines the batch up for one gathering write. Each buffer is a view over
+     * the shared message bytes.
+     */
+    private void stage(List<EncodedMessage> messages) {
+        if (pending.length < messages.size()) {
+            pending = new ByteBuffer[Integer.highestOneBit(messages.size()) << 1];
+        }
+        pendingStart = 0;
+        pendingEnd = 0;
+        for (EncodedMessage message : messages) {
+            pending[pendingEnd++] = message.buffer();
+        }
+    }
+
+    public int getOutboundQueueDepth() {
+        return outbound.size();
+    }
+
+    /**
+     * Called on the loop thread when the peer goes away; lets the handler run
+     * its usual lobby cleanup, which in turn closes this connection.
+     */
+    void onPeerClosed() {
+        if (closed) return;
+        if (handler != null) {
+            handler.cleanup();
+        } else {
+            close();
+        }
+    }
+
+    /**
+     * Drops the client from any thread, with the same cleanup as when the
+     * peer goes away.
+     */
+    public void closeLater() {
+        loop.execute(this::onPeerClosed);
+    }
+
+    /**
+     * Closes the channel. Idempotent.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        outbound.close();
+        Arrays.fill(pending, null);
+        pendingStart = pendingEnd = 0;
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("NioConnection - Error closing channel: " + e.getMessage());
+        }
+    }
+
+    private String describe() {
+        try {
+            return String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return "client";
+        }
+    }
+}
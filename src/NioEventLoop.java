@@ -0,0 +1,145 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * NioEventLoop
+ *
+ * A single-threaded selector loop that multiplexes many client connections.
+ * The server runs a small fixed set of these in NIO mode, so the number of
+ * connected players is no longer tied to the number of threads.
+ *
+ * Everything that touches a channel or its SelectionKey runs on the loop
+ * thread; other threads hand work over with execute().
+ */
+
+import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final GameLobbyManager lobby;
+    private final ConnectionSettings settings;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public NioEventLoop(String name, GameLobbyManager lobby, ConnectionSettings settings) throws IOException {
+        this.selector = Selector.open();
+        this.lobby = lobby;
+        this.settings = settings;
+        this.thread = new Thread(this, name);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Hands a freshly accepted channel to this loop. Registration happens
+     * on the loop thread since Selector.register blocks while select() runs.
+     */
+    public void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                NioConnection connection = new NioConnection(channel, this, settings);
+                ClientHandler handler = new ClientHandler(connection, lobby, settings);
+                connection.attach(handler, channel.register(selector, SelectionKey.OP_READ, connection));
+                handler.watchIdle(settings.idleTimeoutMillis);
+                handler.startHeartbeat(settings.heartbeatMillis, settings.heartbeatMisses);
+                System.out.println("NioEventLoop: Accepted " + channel.getRemoteAddress());
+            } catch (IOException e) {
+                System.err.println("NioEventLoop - Error registering client: " + e.getMessage());
+                lobby.getAdmission().connectionClosed();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the loop thread, waking the selector if needed.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs a task on the loop thread after delayMillis, timed on the
+     * lobby's TimingWheel.
+     */
+    void schedule(long delayMillis, Runnable task) {
+        lobby.getTimers().schedule(delayMillis, () -> execute(task));
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (Exception e) {
+                // a misbehaving connection must never take the whole loop down
+                System.err.println("NioEventLoop - Error in select loop: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                System.err.println("NioEventLoop - Task failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void closeAll() {
+        try {
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                Object attachment = key.attachment();
+                if (attachment instanceof NioConnection) {
+                    ((NioConnection) attachment).onPeerClosed();
+                }
+            }
+            selector.close();
+        } catch (Exception e) {
+            System.err.println("NioEventLoop - Error closing selector: " + e.getMessage());
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,161 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * OutboundQueue
+ *
+ * Bounded queue of encoded messages waiting to be written to one client.
+ * Broadcast messages are shared between queues, never copied.
+ *
+ * Senders (often a GameSession broadcasting under its lock) only enqueue,
+ * so a slow or stalled reader can never hold up a turn. The connection's
+ * writer drains everything queued at once and flushes it in one write.
+ *
+ * When the queue is full the overflow policy decides what happens:
+ * - DROP_OLDEST: discard the oldest lobby update (GAME_LIST etc.), which a
+ *   newer one supersedes anyway. Game messages are never dropped; if the
+ *   queue is full of them the client is disconnected.
+ * - DISCONNECT: disconnect the client as soon as the queue overflows.
+ */
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+public class OutboundQueue {
+    public enum OverflowPolicy {
+        DROP_OLDEST, DISCONNECT;
+
+        public static OverflowPolicy parse(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final ArrayDeque<EncodedMessage> entries = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private boolean closed = false;
+    private long dropped = 0;
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+    }
+
+    /**
+     * Queues a message for the writer. Lobby updates may be discarded under pressure.
+     *
+     * @return false if the client is too slow and must be disconnected
+     */
+    public boolean offer(EncodedMessage message) {
+        lock.lock();
+        try {
+            if (closed) return true;
+            if (entries.size() >= capacity) {
+                if (policy == OverflowPolicy.DISCONNECT) {
+                    closeLocked();
+                    return false;
+                }
+                if (!dropOldestLobbyUpdate()) {
+                    if (message.isLobbyUpdate()) {
+                        // nothing older to drop, so the incoming update goes instead
+                        dropped++;
+                        return true;
+                    }
+                    closeLocked();
+                    return false;
+                }
+            }
+            entries.add(message);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean dropOldestLobbyUpdate() {
+        Iterator<EncodedMessage> it = entries.iterator();
+        while (it.hasNext()) {
+            if (it.next().isLobbyUpdate()) {
+                it.remove();
+                dropped++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Blocks until at least one message is queued, then moves every queued
+     * message into batch.
+     *
+     * @return false once the queue is closed and there is nothing left to write
+     */
+    public boolean awaitDrain(List<EncodedMessage> batch) throws InterruptedException {
+        lock.lock();
+        try {
+            while (entries.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            if (entries.isEmpty()) return false;
+            drainLocked(batch);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Non-blocking drain for event-loop writers.
+     */
+    public void drainTo(List<EncodedMessage> batch) {
+        lock.lock();
+        try {
+            drainLocked(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drainLocked(List<EncodedMessage> batch) {
+        EncodedMessage message;
+        while ((message = entries.poll()) != null) {
+            batch.add(message);
+        }
+    }
+
+    /**
+     * Stops accepting messages and wakes the writer so it can exit.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closeLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeLocked() {
+        closed = true;
+        entries.clear();
+        notEmpty.signalAll();
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * PeerLink
+ *
+ * A socket link between two cluster nodes. It carries the same kind of
+ * "COMMAND:data" lines as the client protocol (see ClusterNode for the
+ * commands), one link per pair of nodes.
+ *
+ * Outgoing lines go through an OutboundQueue drained by a writer thread,
+ * so forwarding a guess or a lobby change never waits on the network.
+ * A peer that falls too far behind is disconnected like a slow client.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PeerLink implements Runnable {
+    private static final int OUTBOUND_CAPACITY = 65536;
+
+    private final ClusterNode cluster;
+    private final Socket socket;
+    private final OutboundQueue outbound =
+        new OutboundQueue(OUTBOUND_CAPACITY, OutboundQueue.OverflowPolicy.DISCONNECT);
+    // remote players using games on this node through this link
+    private final Map<String, ClientHandler> relayed = new ConcurrentHashMap<>();
+    private volatile String remoteNodeId;
+    // the challenge this side sent, and whether the peer has answered it
+    private volatile String challenge;
+    private volatile boolean authenticated;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param remoteNodeId The peer's ID if we dialed it, or null until its
+     *                     PEER handshake arrives
+     */
+    public PeerLink(ClusterNode cluster, Socket socket, String remoteNodeId) {
+        this.cluster = cluster;
+        this.socket = socket;
+        this.remoteNodeId = remoteNodeId;
+    }
+
+    public void start() {
+        Thread reader = new Thread(this, "PeerLink-" + socket.getPort());
+        reader.setDaemon(true);
+        reader.start();
+        Thread writer = new Thread(this::writeLoop, "PeerWriter-" + socket.getPort());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a line for the peer.
+     */
+    public void send(String line) {
+        if (!outbound.offer(EncodedMessage.of(line))) {
+            System.err.println("PeerLink - Peer " + remoteNodeId + " too slow, closing link");
+            close();
+        }
+    }
+
+    private void writeLoop() {
+        List<EncodedMessage> batch = new ArrayList<>();
+        try (OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (outbound.awaitDrain(batch)) {
+                for (EncodedMessage message : batch) {
+                    message.writeTo(out);
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            String line;
+            while (!closed.get() && (line = in.readLine()) != null) {
+                cluster.onPeerMessage(this, line);
+            }
+        } catch (IOException e) {
+            if (!closed.get()) {
+                System.err.println("PeerLink - Link to " + remoteNodeId + " failed: " + e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Closes the link once; the cluster then forgets the peer's games and
+     * the relayed players.
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        outbound.close();
+        try {
+            socket.close();
+        } catch (IOException ignored) {}
+        cluster.onLinkClosed(this);
+    }
+
+    public Map<String, ClientHandler> getRelayed() { return relayed; }
+    public String getRemoteNodeId() { return remoteNodeId; }
+    public SocketAddress getRemoteAddress() { return socket.getRemoteSocketAddress(); }
+    void setRemoteNodeId(String nodeId) { this.remoteNodeId = nodeId; }
+    String getChallenge() { return challenge; }
+    void setChallenge(String challenge) { this.challenge = challenge; }
+    boolean isAuthenticated() { return authenticated; }
+
+    /**
+     * Marks the handshake done and lifts its read timeout.
+     */
+    void setAuthenticated() {
+        authenticated = true;
+        try {
+            socket.setSoTimeout(0);
+        } catch (SocketException ignored) {
+            // the link is closing anyway
+        }
+    }
+    public boolean isClosed() { return closed.get(); }
+    public int getQueueDepth() { return outbound.size(); }
+}
@@ -0,0 +1,81 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * QuickJoinIndex
+ *
+ * Waiting games with a free seat, bucketed by (requiredPlayers, open
+ * slots), for QUICK_JOIN. A lookup checks at most requiredPlayers buckets,
+ * fullest first, so players fill games that are about to start instead of
+ * spreading over many half-empty ones.
+ *
+ * Each bucket is a concurrent skip list of game IDs in the order they
+ * entered it, and slotOf records where each game sits, so a game that
+ * changes bucket or closes is taken out of its old bucket straight away:
+ * the index only ever holds the open games, and a lookup never has to
+ * skip stale entries.
+ *
+ * GameLobbyManager calls update() in step with every published summary,
+ * never concurrently for the same game; lookups need no lock.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QuickJoinIndex {
+    /**
+     * Where a game sits: its bucket and its place in that bucket.
+     */
+    private static final class Slot {
+        final int key;
+        final long sequence;
+
+        Slot(int key, long sequence) {
+            this.key = key;
+            this.sequence = sequence;
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, ConcurrentSkipListMap<Long, String>> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Slot> slotOf = new ConcurrentHashMap<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private static int bucketKey(int requiredPlayers, int openSlots) {
+        return requiredPlayers * 1000 + openSlots;
+    }
+
+    /**
+     * Moves a game to the bucket for its new summary. current is null when
+     * the game was removed.
+     */
+    public void update(GameSummary current, String gameId) {
+        Slot old = slotOf.get(gameId);
+        if (current == null || !LobbyIndex.isOpen(current)) {
+            if (old != null) {
+                slotOf.remove(gameId);
+                buckets.get(old.key).remove(old.sequence);
+            }
+            return;
+        }
+        int key = bucketKey(current.getMaxPlayers(), current.getMaxPlayers() - current.getPlayers());
+        if (old != null && old.key == key) return;
+        Slot slot = new Slot(key, nextSequence.incrementAndGet());
+        // listed in the new bucket before it leaves the old one, so lookups always find it
+        buckets.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>()).put(slot.sequence, gameId);
+        slotOf.put(gameId, slot);
+        if (old != null) {
+            buckets.get(old.key).remove(old.sequence);
+        }
+    }
+
+    /**
+     * Returns the open game for this player count that is closest to
+     * starting, or null if there is none.
+     */
+    public String candidate(int requiredPlayers) {
+        for (int openSlots = 1; openSlots <= requiredPlayers; openSlots++) {
+            ConcurrentSkipListMap<Long, String> bucket = buckets.get(bucketKey(requiredPlayers, openSlots));
+            Map.Entry<Long, String> first = bucket == null ? null : bucket.firstEntry();
+            if (first != null) return first.getValue();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,199 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * RateLimits
+ *
+ * Token-bucket limits on what one connection may send, shared by every
+ * connection the server accepts (see ConnectionSettings). Each rule is a
+ * rate per second and a burst:
+ *
+ *   - a rule for a command (CHAT, CREATE_GAME, ...) rejects that command
+ *     once its bucket is empty, and the client gets
+ *     THROTTLED:command:retryAfterMillis (once per empty bucket, so a
+ *     flood does not turn into a flood of replies);
+ *   - the "*" rule covers every line, heartbeats included. It never
+ *     rejects: a connection that overdraws it is not read again until its
+ *     bucket has refilled, so a heavy client waits on its own socket and
+ *     the others keep their share of the reader threads and event loops.
+ *
+ * Each connection keeps its buckets in a Limiter, which only its own
+ * reader (its thread, or its event loop) touches, so a check is a couple
+ * of arithmetic operations with no locks or atomics. Buckets are kept as
+ * GCRA "theoretical arrival times": one long per bucket, which is the same
+ * token bucket without a separate refill step.
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class RateLimits {
+    public static final String ALL = "*";
+    // rate per second / burst
+    public static final String DEFAULTS = "*=50/100,CHAT=5/10,CREATE_GAME=0.5/3,GET_GAMES=5/20,LOBBY_MODE=1/3,"
+                                          + "JOIN_GAME=2/5,QUICK_JOIN=2/5,QUEUE=1/3,REPLAY=1/3,RESULT=5/10";
+
+    // rule 0 is ALL when there is one; the rest are looked up by command
+    private final Map<String, Integer> ruleIndex = new HashMap<>();
+    private final String[] names;
+    // GCRA emission interval and tolerance, (burst - 1) intervals
+    private final long[] intervalNanos;
+    private final long[] toleranceNanos;
+    private final boolean limitsAll;
+
+    private final LongAdder[] throttled;
+    private final LongAdder pauses = new LongAdder();
+    private final LongAdder pausedMillis = new LongAdder();
+
+    private RateLimits(List<String> names, List<Double> rates, List<Integer> bursts) {
+        int n = names.size();
+        this.names = names.toArray(new String[0]);
+        this.intervalNanos = new long[n];
+        this.toleranceNanos = new long[n];
+        this.throttled = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            intervalNanos[i] = (long) (1_000_000_000L / rates.get(i));
+            toleranceNanos[i] = (bursts.get(i) - 1) * intervalNanos[i];
+            throttled[i] = new LongAdder();
+            ruleIndex.put(names.get(i), i);
+        }
+        this.limitsAll = n > 0 && names.get(0).equals(ALL);
+    }
+
+    public static RateLimits defaults() {
+        return parse(DEFAULTS);
+    }
+
+    /**
+     * Parses "COMMAND=rate/burst,..." where rate is per second and "*"
+     * stands for every line; "off" (or an empty spec) limits nothing.
+     *
+     * @throws IllegalArgumentException if a rule is malformed
+     */
+    public static RateLimits parse(String spec) {
+        List<String> names = new ArrayList<>();
+        List<Double> rates = new ArrayList<>();
+        List<Integer> bursts = new ArrayList<>();
+        if (!spec.trim().equalsIgnoreCase("off")) {
+            for (String rule : spec.split(",")) {
+                if (rule.isBlank()) continue;
+                String[] nameAndLimit = rule.trim().split("=", 2);
+                String[] rateAndBurst = nameAndLimit.length == 2 ? nameAndLimit[1].split("/", 2) : new String[0];
+                if (rateAndBurst.length != 2) {
+                    throw new IllegalArgumentException("Expected COMMAND=rate/burst: " + rule);
+                }
+                double rate = Double.parseDouble(rateAndBurst[0]);
+                int burst = Integer.parseInt(rateAndBurst[1]);
+                if (!(rate > 0) || burst < 1) {
+                    throw new IllegalArgumentException("Rate and burst must be positive: " + rule);
+                }
+                String name = nameAndLimit[0].trim().toUpperCase();
+                int existing = names.indexOf(name);
+                if (existing >= 0) {
+                    names.remove(existing);
+                    rates.remove(existing);
+                    bursts.remove(existing);
+                }
+                // keep ALL first
+                int at = name.equals(ALL) ? 0 : names.size();
+                names.add(at, name);
+                rates.add(at, rate);
+                bursts.add(at, burst);
+            }
+        }
+        return new RateLimits(names, rates, bursts);
+    }
+
+    /**
+     * Buckets for one connection, all full.
+     */
+    public Limiter newLimiter() {
+        return new Limiter();
+    }
+
+    /**
+     * One connection's buckets. Not thread-safe: only the connection's
+     * reader calls it.
+     */
+    public final class Limiter {
+        // when each bucket will be full again; anything in the past means it is
+        private final long[] theoreticalArrival = new long[names.length];
+        // whether THROTTLED went out since the bucket last admitted a command
+        private final boolean[] notified = new boolean[names.length];
+
+        private Limiter() {
+            Arrays.fill(theoreticalArrival, Long.MIN_VALUE);
+        }
+
+        /**
+         * Charges one line to the "*" bucket.
+         *
+         * @return How long to hold off reading more from this connection,
+         *         in nanoseconds; 0 if it is within its rate
+         */
+        public long charge() {
+            if (!limitsAll) return 0;
+            long now = System.nanoTime();
+            long arrival = Math.max(theoreticalArrival[0], now) + intervalNanos[0];
+            theoreticalArrival[0] = arrival;
+            long pause = arrival - toleranceNanos[0] - now;
+            if (pause <= 0) return 0;
+            pauses.increment();
+            pausedMillis.add(pause / 1_000_000);
+            return pause;
+        }
+
+        /**
+         * Takes a token for command from its bucket, if it has one.
+         *
+         * @return -1 if the command may run; otherwise the milliseconds
+         *         until it may, or 0 if the client was already told
+         */
+        public long admit(String command) {
+            Integer rule = ruleIndex.get(command);
+            if (rule == null || (rule == 0 && limitsAll)) return -1;
+            int i = rule;
+            long now = System.nanoTime();
+            long arrival = Math.max(theoreticalArrival[i], now);
+            long wait = arrival - toleranceNanos[i] - now;
+            if (wait <= 0) {
+                theoreticalArrival[i] = arrival + intervalNanos[i];
+                notified[i] = false;
+                return -1;
+            }
+            throttled[i].increment();
+            if (notified[i]) return 0;
+            notified[i] = true;
+            return Math.max(1, wait / 1_000_000);
+        }
+    }
+
+    /**
+     * Commands rejected, by rule name; "*" is left out since it only
+     * delays.
+     */
+    public Map<String, Long> getThrottledCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = limitsAll ? 1 : 0; i < names.length; i++) {
+            counts.put(names[i], throttled[i].sum());
+        }
+        return counts;
+    }
+
+    public long getThrottledCount() {
+        long total = 0;
+        for (int i = limitsAll ? 1 : 0; i < names.length; i++) {
+            total += throttled[i].sum();
+        }
+        return total;
+    }
+
+    /**
+     * Times a connection's reads were held back for overdrawing "*".
+     */
+    public long getPauseCount() { return pauses.sum(); }
+    public long getPausedMillis() { return pausedMillis.sum(); }
+
+    @Override
+    public String toString() {
+        return getThrottledCount() + " commands throttled " + getThrottledCounts() + ", " + pauses.sum()
+               + " read pauses (" + pausedMillis.sum() + " ms)";
+    }
+}
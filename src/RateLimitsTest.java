@@ -0,0 +1,136 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * RateLimitsTest
+ *
+ * Behaviour checks for RateLimits: rule parsing, a command bucket admits
+ * its full burst and then throttles (telling the client once), refills at
+ * its rate, and the "*" bucket delays reads instead of rejecting.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.util.*;
+
+public class RateLimitsTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("========================================");
+        System.out.println("   RateLimits Tests");
+        System.out.println("========================================\n");
+
+        testParse();
+        testBurst();
+        testRefill();
+        testReadPause();
+        testSeparateConnections();
+
+        System.out.println("\n========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        if (testsFailed > 0) System.exit(1);
+    }
+
+    private static void testParse() {
+        RateLimits limits = RateLimits.parse("chat=1/2, *=10/20, CHAT=5/10");
+        RateLimits.Limiter limiter = limits.newLimiter();
+        int admitted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (limiter.admit("CHAT") == -1) admitted++;
+        }
+        check("later rule for a command wins", admitted == 10
+                                               && limits.getThrottledCounts().keySet().equals(Set.of("CHAT")));
+        check("defaults parse", RateLimits.defaults().getThrottledCounts().containsKey("CREATE_GAME"));
+        RateLimits off = RateLimits.parse("off");
+        check("off limits nothing", off.newLimiter().admit("CHAT") == -1 && off.newLimiter().charge() == 0);
+        check("missing burst refused", refuses("CHAT=5"));
+        check("zero rate refused", refuses("CHAT=0/5"));
+        check("zero burst refused", refuses("CHAT=5/0"));
+    }
+
+    /**
+     * CHAT=1/10 admits ten at once, then throttles; only the first
+     * rejection asks for a THROTTLED reply.
+     */
+    private static void testBurst() {
+        RateLimits limits = RateLimits.parse("CHAT=1/10");
+        RateLimits.Limiter limiter = limits.newLimiter();
+        int admitted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (limiter.admit("CHAT") == -1) admitted++;
+        }
+        check("full burst admitted (" + admitted + ")", admitted == 10);
+        long retry = limiter.admit("CHAT");
+        check("next one throttled with a retry time (" + retry + " ms)", retry > 0 && retry <= 1000);
+        check("client only told once", limiter.admit("CHAT") == 0);
+        check("other commands unaffected", limiter.admit("GUESS") == -1);
+        check("rejections counted", limits.getThrottledCount() == 2);
+    }
+
+    /**
+     * At 20 per second a spent bucket admits again after about 50 ms, and
+     * the retry time it reports is no shorter than that.
+     */
+    private static void testRefill() throws InterruptedException {
+        RateLimits limits = RateLimits.parse("JOIN_GAME=20/2");
+        RateLimits.Limiter limiter = limits.newLimiter();
+        limiter.admit("JOIN_GAME");
+        limiter.admit("JOIN_GAME");
+        long retry = limiter.admit("JOIN_GAME");
+        check("retry after about one interval (" + retry + " ms)", retry > 0 && retry <= 50);
+        Thread.sleep(retry + 5);
+        check("admitted again once refilled", limiter.admit("JOIN_GAME") == -1);
+        check("and throttled again straight after", limiter.admit("JOIN_GAME") > 0);
+    }
+
+    /**
+     * "*=10/5": five lines are read without a pause; after that the reader
+     * holds off for about one 100 ms interval per line. "*" never rejects.
+     */
+    private static void testReadPause() {
+        RateLimits limits = RateLimits.parse("*=10/5");
+        RateLimits.Limiter limiter = limits.newLimiter();
+        boolean noPause = true;
+        for (int i = 0; i < 4; i++) {
+            if (limiter.charge() != 0) noPause = false;
+        }
+        check("first lines of the burst not paused", noPause);
+        long pauseMillis = limiter.charge() / 1_000_000;
+        check("pause once the burst is spent (" + pauseMillis + " ms)", pauseMillis > 50 && pauseMillis <= 100);
+        long nextMillis = limiter.charge() / 1_000_000;
+        check("each further line adds an interval (" + nextMillis + " ms)", nextMillis > 150 && nextMillis <= 200);
+        check("pauses counted", limits.getPauseCount() == 2);
+        check("\"*\" never rejects a command", limiter.admit("*") == -1);
+    }
+
+    /**
+     * Each connection has its own buckets.
+     */
+    private static void testSeparateConnections() {
+        RateLimits limits = RateLimits.parse("CHAT=1/1");
+        RateLimits.Limiter first = limits.newLimiter();
+        RateLimits.Limiter second = limits.newLimiter();
+        first.admit("CHAT");
+        check("first connection throttled", first.admit("CHAT") > 0);
+        check("second connection still admitted", second.admit("CHAT") == -1);
+    }
+
+    private static boolean refuses(String spec) {
+        try {
+            RateLimits.parse(spec);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private static void check(String testName, boolean passed) {
+        if (passed) {
+            System.out.println("  ✓ PASS: " + testName);
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName);
+            testsFailed++;
+        }
+    }
+}
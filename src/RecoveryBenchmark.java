@@ -0,0 +1,131 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * RecoveryBenchmark
+ *
+ * Measures how long JournalRecovery takes against the size of the
+ * journal, with and without checkpoints:
+ *
+ *   java RecoveryBenchmark [events ...]
+ *
+ * For each size it plays two-player games through a real lobby and
+ * journal until that many events are journaled, with TABLES games always
+ * in progress, then times recovery of the directory. With checkpoints on,
+ * one is taken every CHECKPOINT_EVENTS events, the way --checkpoint-secs
+ * would under steady load; recovery time should then stay flat as the
+ * journal grows.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class RecoveryBenchmark {
+    private static final int TABLES = 200;
+    private static final int CHECKPOINT_EVENTS = 50_000;
+
+    public static void main(String[] args) throws Exception {
+        long[] sizes = args.length > 0
+            ? Arrays.stream(args).mapToLong(Long::parseLong).toArray()
+            : new long[] { 100_000, 1_000_000, 3_000_000 };
+        PrintStream results = System.out;
+        // sessions log every broadcast
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        // warm up the reader and the replay code
+        run(50_000, true);
+        results.printf("%10s  %10s  %11s  %12s  %9s  %8s%n",
+                       "events", "journal MB", "checkpoints", "records read", "recovered", "ms");
+        for (long size : sizes) {
+            for (boolean checkpoints : new boolean[] { false, true }) {
+                Measurement m = run(size, checkpoints);
+                results.printf("%10d  %10.1f  %11s  %12d  %9d  %8d%n", size, m.journalBytes / 1e6,
+                               checkpoints ? "every " + CHECKPOINT_EVENTS : "none", m.result.recordsRead,
+                               m.result.sessions.size(), m.result.millis);
+            }
+        }
+    }
+
+    private static final class Measurement {
+        long journalBytes;
+        JournalRecovery.Result result;
+    }
+
+    private static Measurement run(long events, boolean checkpoints) throws IOException {
+        Path directory = Files.createTempDirectory("mm-journal");
+        GameLobbyManager lobby = new GameLobbyManager(4, 0);
+        GameJournal journal = new GameJournal(directory, GameJournal.DEFAULT_SEGMENT_SIZE, 10);
+        journal.start();
+        lobby.setJournal(journal);
+
+        Random random = new Random(42);
+        Table[] tables = new Table[TABLES];
+        long nextCheckpoint = CHECKPOINT_EVENTS;
+        int nextPlayer = 0;
+        while (journal.getEventsQueued() < events) {
+            for (int i = 0; i < tables.length && journal.getEventsQueued() < events; i++) {
+                if (tables[i] == null || tables[i].finished()) {
+                    if (tables[i] != null) tables[i].leave();
+                    tables[i] = new Table(lobby, nextPlayer);
+                    nextPlayer += 2;
+                }
+                tables[i].guess(random);
+            }
+            if (checkpoints && journal.getEventsQueued() >= nextCheckpoint) {
+                lobby.checkpoint();
+                nextCheckpoint += CHECKPOINT_EVENTS;
+            }
+        }
+        // writes out the queue
+        lobby.shutdown();
+
+        Measurement m = new Measurement();
+        m.journalBytes = journal.getRecordsWritten() * GameJournal.RECORD_SIZE;
+        m.result = JournalRecovery.recover(directory);
+        for (Path segment : GameJournal.segments(directory)) {
+            Files.delete(segment);
+        }
+        Files.delete(directory);
+        return m;
+    }
+
+    /**
+     * One two-player game, played a guess at a time.
+     */
+    private static final class Table {
+        final GameLobbyManager lobby;
+        final GameSession session;
+        final String[] players = new String[2];
+        int turn = 0;
+
+        Table(GameLobbyManager lobby, int firstPlayer) {
+            this.lobby = lobby;
+            String gameId = lobby.createGame("bench", 2, null);
+            session = lobby.getSession(gameId);
+            for (int i = 0; i < 2; i++) {
+                players[i] = "b" + (firstPlayer + i);
+                lobby.addPlayer(players[i], players[i], new ClientHandler(players[i], players[i], "t" + players[i], lobby));
+                // no session loops, so the seat is taken before this returns
+                lobby.joinGame(gameId, players[i], joined -> { });
+            }
+            session.startIfReady();
+        }
+
+        void guess(Random random) {
+            StringBuilder guess = new StringBuilder();
+            for (int i = 0; i < GameConfiguration.pegNumber; i++) {
+                guess.append(GameConfiguration.colors[random.nextInt(GameConfiguration.colors.length)]);
+            }
+            session.processGuess(players[turn], guess.toString());
+            turn = 1 - turn;
+        }
+
+        boolean finished() {
+            return session.getStatus().equals("Finished");
+        }
+
+        void leave() {
+            for (String player : players) {
+                lobby.removePlayer(player);
+            }
+        }
+    }
+}
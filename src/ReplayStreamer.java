@@ -0,0 +1,244 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ReplayStreamer
+ *
+ * Streams finished games from the GameArchive back to clients that send
+ * REPLAY:gameId[:speed]. A replay is the messages
+ * the players saw, between REPLAY_START:gameId:gameName:speed and
+ * REPLAY_END:gameId, with each guess delayed like the original divided
+ * by speed (pauses are capped at MAX_PAUSE_MILLIS).
+ *
+ * All replays share one "Replayer" thread that wakes every TICK_MILLIS
+ * and sends whatever is due. Replays yield to live games twice over:
+ *   - a replay only sends while its client has fewer than
+ *     MAX_QUEUED_LINES lines waiting in its outbound queue; otherwise it
+ *     waits for a later tick. A slow client therefore slows its replay
+ *     down rather than filling its queue.
+ *   - no more than LINES_PER_TICK replay lines go out per tick across all
+ *     replays, so the writers never spend more than that on them.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ReplayStreamer {
+    private static final long TICK_MILLIS = 10;
+    private static final int LINES_PER_TICK = 500;
+    private static final int MAX_QUEUED_LINES = 32;
+    private static final int MAX_REPLAYS = 1000;
+    private static final long MAX_PAUSE_MILLIS = 5000;
+    private static final double MAX_SPEED = 1000;
+    private static final long STATS_INTERVAL_SECONDS = 30;
+
+    private final GameArchive archive;
+
+    private static final class Replay implements Comparable<Replay> {
+        final ClientHandler client;
+        final GameHistory history;
+        final double speed;
+        final long startNanos = System.nanoTime();
+        // lines not yet sent, then the next guess to queue
+        final ArrayDeque<String> pending = new ArrayDeque<>();
+        int nextGuess = 0;
+        // when the last guess went out; the next one's pause counts from here
+        long lastGuessNanos = startNanos;
+        long dueNanos = startNanos;
+
+        Replay(ClientHandler client, GameHistory history, double speed) {
+            this.client = client;
+            this.history = history;
+            this.speed = speed;
+        }
+
+        @Override
+        public int compareTo(Replay other) {
+            return Long.compare(dueNanos, other.dueNanos);
+        }
+    }
+
+    // replays and the schedule are guarded by lock, and only the Replayer sends
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<ClientHandler, Replay> replays = new HashMap<>();
+    private final PriorityQueue<Replay> schedule = new PriorityQueue<>();
+    private ScheduledExecutorService replayer;
+
+    private final LongAdder replaysStarted = new LongAdder();
+    private final LongAdder linesSent = new LongAdder();
+    // times a replay waited for its client's queue to drain
+    private final LongAdder backpressureWaits = new LongAdder();
+
+    public ReplayStreamer(GameArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Starts replaying a game to client, replacing any replay the client
+     * is already watching. The Replayer thread starts with the first replay.
+     *
+     * @return null on success, otherwise the reason to send back
+     */
+    public String start(ClientHandler client, String gameId, double speed) {
+        if (!(speed > 0 && speed <= MAX_SPEED)) {
+            return "Replay speed must be above 0 and at most " + (int) MAX_SPEED;
+        }
+        GameHistory history = archive.get(gameId);
+        if (history == null || !history.isComplete()) return "No replay for " + gameId;
+        lock.lock();
+        try {
+            Replay previous = replays.remove(client);
+            if (previous != null) {
+                schedule.remove(previous);
+            } else if (replays.size() >= MAX_REPLAYS) {
+                return "Too many replays running, try again later";
+            }
+            Replay replay = new Replay(client, history, speed);
+            replay.pending.add("REPLAY_START:" + gameId + ":" + history.getGameName() + ":" + speed);
+            replay.pending.addAll(history.startMessages());
+            replays.put(client, replay);
+            schedule.add(replay);
+            replaysStarted.increment();
+            if (replayer == null) {
+                startReplayer();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the client's replay, if any.
+     */
+    public void cancel(ClientHandler client) {
+        lock.lock();
+        try {
+            Replay replay = replays.remove(client);
+            if (replay != null) schedule.remove(replay);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startReplayer() {
+        replayer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Replayer");
+            t.setDaemon(true);
+            return t;
+        });
+        replayer.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        replayer.scheduleAtFixedRate(() -> System.out.println("ReplayStreamer: " + this),
+                                     STATS_INTERVAL_SECONDS, STATS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        lock.lock();
+        try {
+            if (replayer != null) {
+                replayer.shutdownNow();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * One Replayer tick: sends what is due, earliest first, until the
+     * tick's line budget is spent.
+     */
+    void tick() {
+        long now = System.nanoTime();
+        int budget = LINES_PER_TICK;
+        List<Replay> deferred = new ArrayList<>();
+        lock.lock();
+        try {
+            while (budget > 0 && !schedule.isEmpty() && schedule.peek().dueNanos <= now) {
+                Replay replay = schedule.poll();
+                if (!replay.client.isRunning()) {
+                    replays.remove(replay.client);
+                    continue;
+                }
+                int room = MAX_QUEUED_LINES - replay.client.getOutboundQueueDepth();
+                if (room <= 0) {
+                    backpressureWaits.increment();
+                    deferred.add(replay);
+                    continue;
+                }
+                budget -= send(replay, Math.min(room, budget), now);
+                if (replay.pending.isEmpty() && replay.nextGuess > replay.history.getGuessCount()) {
+                    replays.remove(replay.client);
+                } else {
+                    schedule.add(replay);
+                }
+            }
+            schedule.addAll(deferred);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends up to limit of the replay's due lines and works out when the
+     * next ones are due.
+     *
+     * @return The number of lines sent
+     */
+    private int send(Replay replay, int limit, long now) {
+        int sent = 0;
+        while (sent < limit) {
+            if (replay.pending.isEmpty() && !queueNextGuess(replay, now)) break;
+            replay.client.sendMessage(replay.pending.poll());
+            sent++;
+        }
+        linesSent.add(sent);
+        return sent;
+    }
+
+    /**
+     * Moves the next guess's lines (or REPLAY_END) into pending if they
+     * are due, otherwise sets the replay's due time to when they will be.
+     *
+     * @return true if there is something to send now
+     */
+    private boolean queueNextGuess(Replay replay, long now) {
+        GameHistory history = replay.history;
+        int guess = replay.nextGuess;
+        if (guess > history.getGuessCount()) return false;
+        if (guess == history.getGuessCount()) {
+            replay.pending.add("REPLAY_END:" + history.getGameId());
+            replay.nextGuess++;
+            return true;
+        }
+        long pause = history.getMillis(guess) - (guess == 0 ? 0 : history.getMillis(guess - 1));
+        long due = replay.lastGuessNanos + (long) (Math.min(pause, MAX_PAUSE_MILLIS) * 1_000_000 / replay.speed);
+        if (due > now) {
+            replay.dueNanos = due;
+            return false;
+        }
+        // lateness (a slow client, a busy tick) delays the rest rather than bunching it up
+        replay.lastGuessNanos = now;
+        replay.dueNanos = now;
+        replay.pending.addAll(history.guessMessages(guess));
+        replay.nextGuess++;
+        return true;
+    }
+
+    public int getActiveReplays() {
+        lock.lock();
+        try {
+            return replays.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getReplaysStarted() { return replaysStarted.sum(); }
+    public long getLinesSent() { return linesSent.sum(); }
+    public long getBackpressureWaits() { return backpressureWaits.sum(); }
+
+    @Override
+    public String toString() {
+        return getActiveReplays() + " active, " + replaysStarted.sum() + " started, " + linesSent.sum()
+               + " lines sent, " + backpressureWaits.sum() + " backpressure waits";
+    }
+}
@@ -0,0 +1,267 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ReplicationServer
+ *
+ * Streams session state to hot-standby processes (see StandbyReplica):
+ *
+ *   java MastermindServer 8080 --replication-port=7800 --replication-secret-file=replication.key
+ *
+ * The port listens on loopback unless --replication-bind names another
+ * address. A standby must show it holds the same secret (see SharedSecret)
+ * before it is sent anything, and the primary proves the same back:
+ *
+ *   CHALLENGE:challenge               primary to standby, on connect
+ *   STANDBY:challenge:answer          the standby's answer, and its own challenge
+ *   PRIMARY:answer                    the primary's answer; replication follows
+ *
+ * Sessions only mark themselves dirty when they change; a replicator
+ * thread wakes every REPLICATION_INTERVAL_MILLIS, takes one snapshot of
+ * each dirty session and writes the batch to every standby with a single
+ * flush. A guess therefore costs one set insert on the game path, and a
+ * burst of guesses on one game is sent as one snapshot.
+ *
+ * Replication protocol (primary to standby):
+ *   SNAP:snapshot     a session's current state, Base64 SessionSnapshot
+ *   GONE:gameId       the session was removed
+ *   SYNCED:count      the standby now holds all count live sessions
+ *   BEAT              nothing changed; sent once a second so the standby
+ *                     can tell a quiet primary from a dead one
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReplicationServer {
+    static final long REPLICATION_INTERVAL_MILLIS = 20;
+    static final long HEARTBEAT_INTERVAL_MILLIS = 1000;
+    static final int HANDSHAKE_MILLIS = 5000;
+    static final String DEFAULT_BIND = "127.0.0.1";
+    // the IDs each side's answers are bound to, so neither can be reflected
+    static final String PRIMARY_ID = "primary";
+
+    private final InetSocketAddress address;
+    private final GameLobbyManager lobby;
+    private final SharedSecret secret;
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // standbys that still need the full state, then the ones receiving changes
+    private final Queue<Socket> joining = new ConcurrentLinkedQueue<>();
+    private final List<Standby> standbys = new ArrayList<>();
+    private final AtomicLong snapshotsSent = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private ServerSocket serverSocket;
+    private volatile boolean running = true;
+
+    public ReplicationServer(InetSocketAddress address, GameLobbyManager lobby, SharedSecret secret) {
+        if (secret == null) {
+            throw new IllegalArgumentException("--replication-secret or --replication-secret-file is required");
+        }
+        this.address = address;
+        this.lobby = lobby;
+        this.secret = secret;
+    }
+
+    public void start() throws IOException {
+        if (address.isUnresolved()) {
+            throw new IOException("Cannot resolve " + address.getHostString());
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        startThread("ReplicationAccept", this::acceptLoop);
+        startThread("Replicator", this::replicateLoop);
+        System.out.println("ReplicationServer: standbys may connect on " + address);
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Notes that a session changed or went away. Called on the game path,
+     * so it only records the ID.
+     */
+    void markDirty(String gameId) {
+        dirty.add(gameId);
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                // a slow handshake must not hold up the next standby
+                startThread("ReplicationHandshake", () -> handshake(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("ReplicationServer - Error accepting standby: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues the standby for its full state once it has answered our
+     * challenge, and answers its own; closes it otherwise.
+     */
+    private void handshake(Socket socket) {
+        SocketAddress from = socket.getRemoteSocketAddress();
+        try {
+            socket.setSoTimeout(HANDSHAKE_MILLIS);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+            String challenge = SharedSecret.newChallenge();
+            out.write(("CHALLENGE:" + challenge + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            String line = in.readLine();
+            String[] parts = line == null ? new String[0] : line.split(":", 3);
+            if (parts.length != 3 || !parts[0].equals("STANDBY")
+                || !secret.verify(challenge, StandbyReplica.STANDBY_ID, parts[2])) {
+                System.err.println("ReplicationServer - Rejecting standby handshake from " + from);
+                socket.close();
+                return;
+            }
+            out.write(("PRIMARY:" + secret.answer(parts[1], PRIMARY_ID) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            socket.setSoTimeout(0);
+            System.out.println("ReplicationServer: standby connected from " + from);
+            joining.add(socket);
+        } catch (IOException e) {
+            System.err.println("ReplicationServer - Standby handshake from " + from + " failed: " + e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void replicateLoop() {
+        long lastSent = System.currentTimeMillis();
+        while (running) {
+            try {
+                Thread.sleep(REPLICATION_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<String> batch = drainDirty();
+            if (!batch.isEmpty()) {
+                sendToAll(batch);
+                lastSent = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - lastSent >= HEARTBEAT_INTERVAL_MILLIS) {
+                sendToAll(Collections.singletonList("BEAT"));
+                lastSent = System.currentTimeMillis();
+            }
+            Socket socket;
+            while ((socket = joining.poll()) != null) {
+                addStandby(socket);
+            }
+        }
+    }
+
+    /**
+     * Turns the dirty IDs into replication lines, one snapshot per session.
+     */
+    private List<String> drainDirty() {
+        List<String> lines = new ArrayList<>();
+        for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+            String gameId = it.next();
+            it.remove();
+            GameSession session = lobby.getSession(gameId);
+            lines.add(session == null ? "GONE:" + gameId : snapshotLine(session));
+        }
+        return lines;
+    }
+
+    private static String snapshotLine(GameSession session) {
+        return "SNAP:" + Base64.getEncoder().encodeToString(session.snapshot().encode());
+    }
+
+    private void sendToAll(List<String> lines) {
+        if (standbys.isEmpty()) return;
+        for (Iterator<Standby> it = standbys.iterator(); it.hasNext(); ) {
+            Standby standby = it.next();
+            if (!standby.write(lines)) {
+                System.err.println("ReplicationServer - Lost standby " + standby.address);
+                standby.close();
+                it.remove();
+            }
+        }
+        if (lines.size() != 1 || !lines.get(0).equals("BEAT")) {
+            snapshotsSent.addAndGet(lines.size());
+            batchesSent.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sends a new standby every live session. Changes made after a session
+     * was captured are dirty again and follow in a later batch.
+     */
+    private void addStandby(Socket socket) {
+        Standby standby;
+        try {
+            standby = new Standby(socket);
+        } catch (IOException e) {
+            System.err.println("ReplicationServer - Standby setup failed: " + e.getMessage());
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        lobby.forEachSession(session -> lines.add(snapshotLine(session)));
+        lines.add("SYNCED:" + lines.size());
+        if (standby.write(lines)) {
+            standbys.add(standby);
+            System.out.println("ReplicationServer: standby " + standby.address + " synced with "
+                               + (lines.size() - 1) + " sessions");
+        } else {
+            standby.close();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException ignored) {}
+        for (Standby standby : standbys) {
+            standby.close();
+        }
+    }
+
+    public long getSnapshotsSent() { return snapshotsSent.get(); }
+    public long getBatchesSent() { return batchesSent.get(); }
+
+    /**
+     * One connected standby. Only the replicator thread writes to it.
+     */
+    private static final class Standby {
+        final Socket socket;
+        final SocketAddress address;
+        final OutputStream out;
+
+        Standby(Socket socket) throws IOException {
+            this.socket = socket;
+            this.address = socket.getRemoteSocketAddress();
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        boolean write(List<String> lines) {
+            try {
+                for (String line : lines) {
+                    out.write(line.getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                }
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ServerOptions
+ *
+ * Parses the server command line: an optional port followed by
+ * "--name=value" flags, e.g.
+ *
+ *   java MastermindServer 8080 --mode=nio --event-loops=4
+ */
+
+import java.util.*;
+
+public class ServerOptions {
+    private final Map<String, String> values = new HashMap<>();
+    private int port = GameConfiguration.DEFAULT_PORT;
+
+    public static ServerOptions parse(String[] args) {
+        ServerOptions options = new ServerOptions();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq == -1) {
+                    options.values.put(arg.substring(2), "true");
+                } else {
+                    options.values.put(arg.substring(2, eq), arg.substring(eq + 1));
+                }
+            } else {
+                try {
+                    options.port = Integer.parseInt(arg);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid port number. Using default: " +
+                                       GameConfiguration.DEFAULT_PORT);
+                }
+            }
+        }
+        return options;
+    }
+
+    public int getPort() { return port; }
+
+    public String getString(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for --" + name + ": " + value + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
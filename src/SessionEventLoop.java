@@ -0,0 +1,92 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * SessionEventLoop
+ *
+ * A single thread that owns a group of GameSessions. With --session-loops=N
+ * the lobby starts N of these and gives each new session to one of them by
+ * game ID hash. Everything a session does then runs on its loop, one task
+ * at a time, so the session needs no lock and a slow caller can never make
+ * another player's guess wait for it.
+ *
+ * Outbound messages are only queued on the connections here; the
+ * connection layer's writers do the socket I/O.
+ */
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SessionEventLoop implements Executor, Runnable {
+    private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private final LongAdder tasksRun = new LongAdder();
+    private volatile boolean running = true;
+
+    public SessionEventLoop(String name) {
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Queues a task; tasks run in the order they were queued.
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * Runs a task on the loop and waits for its result. Runs it inline when
+     * already on the loop, so a session can call its own methods freely.
+     */
+    public <T> T call(Callable<T> task) {
+        if (inEventLoop()) {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }
+        FutureTask<T> future = new FutureTask<>(task);
+        execute(future);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted waiting for " + thread.getName());
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Runnable task = tasks.take();
+                task.run();
+                tasksRun.increment();
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                // one bad task must not take down every session on this loop
+                System.err.println("SessionEventLoop - Task failed: " + e);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    public int getQueueDepth() { return tasks.size(); }
+    public long getTasksRun() { return tasksRun.sum(); }
+}
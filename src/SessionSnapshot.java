@@ -0,0 +1,152 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * SessionSnapshot
+ *
+ * The complete state of one GameSession, with a compact binary form for
+ * moving a session between server processes.
+ *
+ * Layout (big-endian, strings as DataOutput UTF):
+ *   int    magic "MMSS"
+ *   byte   format version
+ *   UTF    gameId, gameName, status
+ *   byte   requiredPlayers
+ *   byte   flags (1 = started, 2 = has secret code)
+ *   UTF    secretCode (only if flag 2)
+ *   short  totalGuessesMade
+ *   byte   player count, then per player in join order: UTF id, UTF name,
+ *          short guesses, UTF session token ("" if none), byte seat
+ *   byte   turn order length, then per entry the player's index above
+ *   byte   currentTurnIndex
+ *
+ * A four player game in progress takes about 300 bytes. Version 1 (no
+ * tokens or seats) can still be read.
+ */
+
+import java.io.*;
+import java.util.*;
+
+public final class SessionSnapshot {
+    private static final int MAGIC = 0x4D4D5353;
+    private static final byte FORMAT_VERSION = 2;
+    private static final int STARTED = 1;
+    private static final int HAS_SECRET = 2;
+
+    final String gameId;
+    final String gameName;
+    final int requiredPlayers;
+    final String status;
+    final boolean started;
+    final String secretCode;
+    final int totalGuessesMade;
+    final int currentTurnIndex;
+    // in join order
+    final List<String> playerIds;
+    final List<String> playerNames;
+    final List<Integer> guessCounts;
+    final List<String> turnOrder;
+    // "" for a player without one, e.g. a relayed player
+    final List<String> tokens;
+    // journal seat of each player (see GameJournal)
+    final List<Integer> seats;
+
+    SessionSnapshot(String gameId, String gameName, int requiredPlayers, String status, boolean started,
+                    String secretCode, int totalGuessesMade, int currentTurnIndex, List<String> playerIds,
+                    List<String> playerNames, List<Integer> guessCounts, List<String> turnOrder,
+                    List<String> tokens, List<Integer> seats) {
+        this.gameId = gameId;
+        this.gameName = gameName;
+        this.requiredPlayers = requiredPlayers;
+        this.status = status;
+        this.started = started;
+        this.secretCode = secretCode;
+        this.totalGuessesMade = totalGuessesMade;
+        this.currentTurnIndex = currentTurnIndex;
+        this.playerIds = Collections.unmodifiableList(new ArrayList<>(playerIds));
+        this.playerNames = Collections.unmodifiableList(new ArrayList<>(playerNames));
+        this.guessCounts = Collections.unmodifiableList(new ArrayList<>(guessCounts));
+        this.turnOrder = Collections.unmodifiableList(new ArrayList<>(turnOrder));
+        this.tokens = Collections.unmodifiableList(new ArrayList<>(tokens));
+        this.seats = Collections.unmodifiableList(new ArrayList<>(seats));
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeUTF(gameId);
+            out.writeUTF(gameName);
+            out.writeUTF(status);
+            out.writeByte(requiredPlayers);
+            out.writeByte((started ? STARTED : 0) | (secretCode != null ? HAS_SECRET : 0));
+            if (secretCode != null) {
+                out.writeUTF(secretCode);
+            }
+            out.writeShort(totalGuessesMade);
+            out.writeByte(playerIds.size());
+            for (int i = 0; i < playerIds.size(); i++) {
+                out.writeUTF(playerIds.get(i));
+                out.writeUTF(playerNames.get(i));
+                out.writeShort(guessCounts.get(i));
+                out.writeUTF(tokens.get(i));
+                out.writeByte(seats.get(i));
+            }
+            out.writeByte(turnOrder.size());
+            for (String playerId : turnOrder) {
+                out.writeByte(playerIds.indexOf(playerId));
+            }
+            out.writeByte(currentTurnIndex);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the bytes are not a snapshot this version can read
+     */
+    public static SessionSnapshot decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a session snapshot");
+            int version = in.readByte();
+            if (version != FORMAT_VERSION && version != 1) throw new IOException("Unsupported snapshot version " + version);
+            String gameId = in.readUTF();
+            String gameName = in.readUTF();
+            String status = in.readUTF();
+            int requiredPlayers = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            String secretCode = (flags & HAS_SECRET) != 0 ? in.readUTF() : null;
+            int totalGuessesMade = in.readUnsignedShort();
+            int playerCount = in.readUnsignedByte();
+            List<String> ids = new ArrayList<>(playerCount);
+            List<String> names = new ArrayList<>(playerCount);
+            List<Integer> guesses = new ArrayList<>(playerCount);
+            List<String> tokens = new ArrayList<>(playerCount);
+            List<Integer> seats = new ArrayList<>(playerCount);
+            for (int i = 0; i < playerCount; i++) {
+                ids.add(in.readUTF());
+                names.add(in.readUTF());
+                guesses.add(in.readUnsignedShort());
+                tokens.add(version == 1 ? "" : in.readUTF());
+                seats.add(version == 1 ? i : in.readUnsignedByte());
+            }
+            int turns = in.readUnsignedByte();
+            List<String> turnOrder = new ArrayList<>(turns);
+            for (int i = 0; i < turns; i++) {
+                int index = in.readUnsignedByte();
+                if (index >= playerCount) throw new IOException("Bad turn order entry " + index);
+                turnOrder.add(ids.get(index));
+            }
+            int currentTurnIndex = in.readUnsignedByte();
+            return new SessionSnapshot(gameId, gameName, requiredPlayers, status, (flags & STARTED) != 0,
+                                       secretCode, totalGuessesMade, currentTurnIndex, ids, names, guesses,
+                                       turnOrder, tokens, seats);
+        }
+    }
+
+    public String getGameId() { return gameId; }
+    public List<String> getPlayerIds() { return playerIds; }
+    public List<String> getPlayerNames() { return playerNames; }
+    public List<String> getTokens() { return tokens; }
+    public String getStatus() { return status; }
+}
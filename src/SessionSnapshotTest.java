@@ -0,0 +1,152 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * SessionSnapshotTest
+ *
+ * Behaviour checks for SessionSnapshot: every field survives encode and
+ * decode, version 1 snapshots still read, and damaged bytes are refused.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class SessionSnapshotTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("========================================");
+        System.out.println("   SessionSnapshot Tests");
+        System.out.println("========================================\n");
+
+        testRoundTrip();
+        testWaitingGame();
+        testVersionOne();
+        testDamagedBytes();
+
+        System.out.println("\n========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        if (testsFailed > 0) System.exit(1);
+    }
+
+    /**
+     * A four player game in progress reads back field for field.
+     */
+    private static void testRoundTrip() throws IOException {
+        SessionSnapshot original = new SessionSnapshot(
+            "g0000beef", "Ünïcode night", 4, "In Progress", true, "RGBY", 7, 2,
+            Arrays.asList("p1-a", "p2-a", "p3-b", "p4-a"),
+            Arrays.asList("Ana", "Bo", "Çem", "Di"),
+            Arrays.asList(2, 2, 2, 1),
+            Arrays.asList("p3-b", "p1-a", "p4-a", "p2-a"),
+            Arrays.asList("tok1", "tok2", "", "tok4"),
+            Arrays.asList(0, 1, 2, 3));
+        byte[] bytes = original.encode();
+        SessionSnapshot copy = SessionSnapshot.decode(bytes);
+
+        check("ID, name and status", copy.gameId.equals("g0000beef") && copy.gameName.equals("Ünïcode night")
+                                     && copy.status.equals("In Progress"));
+        check("player count and started flag", copy.requiredPlayers == 4 && copy.started);
+        check("secret code", "RGBY".equals(copy.secretCode));
+        check("guess and turn counters", copy.totalGuessesMade == 7 && copy.currentTurnIndex == 2);
+        check("players in join order", copy.playerIds.equals(original.playerIds)
+                                       && copy.playerNames.equals(original.playerNames));
+        check("per player guesses", copy.guessCounts.equals(original.guessCounts));
+        check("turn order", copy.turnOrder.equals(original.turnOrder));
+        check("tokens, empty one included", copy.tokens.equals(original.tokens));
+        check("seats", copy.seats.equals(original.seats));
+        check("encoding is stable", Arrays.equals(bytes, copy.encode()));
+        check("four players fit in 300 bytes (" + bytes.length + ")", bytes.length < 300);
+    }
+
+    /**
+     * A game nobody has joined has no secret, players or turn order.
+     */
+    private static void testWaitingGame() throws IOException {
+        SessionSnapshot original = new SessionSnapshot(
+            "g00000001", "empty", 2, "Waiting", false, null, 0, 0,
+            Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+            Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+        SessionSnapshot copy = SessionSnapshot.decode(original.encode());
+        check("no secret code", copy.secretCode == null && !copy.started);
+        check("no players", copy.playerIds.isEmpty() && copy.turnOrder.isEmpty());
+    }
+
+    /**
+     * Version 1 had no tokens or seats; players read back without a token
+     * and seated in join order.
+     */
+    private static void testVersionOne() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0x4D4D5353);
+            out.writeByte(1);
+            out.writeUTF("g00000002");
+            out.writeUTF("old");
+            out.writeUTF("In Progress");
+            out.writeByte(2);
+            out.writeByte(1 | 2);
+            out.writeUTF("OOPP");
+            out.writeShort(3);
+            out.writeByte(2);
+            out.writeUTF("p1");
+            out.writeUTF("Ana");
+            out.writeShort(2);
+            out.writeUTF("p2");
+            out.writeUTF("Bo");
+            out.writeShort(1);
+            out.writeByte(2);
+            out.writeByte(1);
+            out.writeByte(0);
+            out.writeByte(0);
+        }
+        SessionSnapshot copy = SessionSnapshot.decode(bytes.toByteArray());
+        check("version 1 reads", copy.gameId.equals("g00000002") && "OOPP".equals(copy.secretCode));
+        check("version 1 players have no token", copy.tokens.equals(Arrays.asList("", "")));
+        check("version 1 players seated in join order", copy.seats.equals(Arrays.asList(0, 1)));
+        check("version 1 turn order", copy.turnOrder.equals(Arrays.asList("p2", "p1")));
+    }
+
+    private static void testDamagedBytes() {
+        SessionSnapshot original = new SessionSnapshot(
+            "g00000003", "x", 2, "In Progress", true, "RRRR", 0, 0,
+            Arrays.asList("p1", "p2"), Arrays.asList("a", "b"), Arrays.asList(0, 0),
+            Arrays.asList("p1", "p2"), Arrays.asList("t1", "t2"), Arrays.asList(0, 1));
+        byte[] bytes = original.encode();
+
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 'X';
+        check("wrong magic refused", refuses(badMagic));
+
+        byte[] badVersion = bytes.clone();
+        badVersion[4] = 9;
+        check("unknown version refused", refuses(badVersion));
+
+        byte[] badTurn = bytes.clone();
+        // the first turn order entry sits three bytes from the end
+        badTurn[bytes.length - 3] = 5;
+        check("turn order pointing past the players refused", refuses(badTurn));
+
+        check("truncated snapshot refused", refuses(Arrays.copyOf(bytes, bytes.length / 2)));
+    }
+
+    private static boolean refuses(byte[] bytes) {
+        try {
+            SessionSnapshot.decode(bytes);
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static void check(String testName, boolean passed) {
+        if (passed) {
+            System.out.println("  ✓ PASS: " + testName);
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName);
+            testsFailed++;
+        }
+    }
+}
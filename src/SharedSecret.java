@@ -0,0 +1,88 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * SharedSecret
+ *
+ * A secret shared by the servers of one deployment, given with
+ * --<name>-secret-file=PATH (its first line) or --<name>-secret=VALUE.
+ *
+ * A handshake proves that the other end knows it without ever sending
+ * it: one side sends a fresh random challenge, the other answers with
+ * HMAC-SHA256(secret, challenge + ":" + its own ID). A recorded answer is
+ * no use against the next challenge, and binding the ID means an answer
+ * cannot be reflected back at the server that asked.
+ *
+ * ClusterNode uses one for its peer links, ReplicationServer for standbys.
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.Base64;
+import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public final class SharedSecret {
+    public static final int MIN_LENGTH = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    public SharedSecret(String secret) {
+        if (secret.length() < MIN_LENGTH) {
+            throw new IllegalArgumentException("Secret must be at least " + MIN_LENGTH + " characters");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    /**
+     * Reads --name-secret-file, or else --name-secret.
+     *
+     * @return null if neither is set
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the secret is too short
+     */
+    public static SharedSecret fromOptions(ServerOptions options, String name) throws IOException {
+        String file = options.getString(name + "-secret-file", null);
+        if (file != null) {
+            List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+            return new SharedSecret(lines.isEmpty() ? "" : lines.get(0).trim());
+        }
+        String secret = options.getString(name + "-secret", null);
+        return secret == null ? null : new SharedSecret(secret);
+    }
+
+    /**
+     * A fresh random challenge, safe to put in a protocol line.
+     */
+    public static String newChallenge() {
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * The answer the server called id gives to challenge.
+     */
+    public String answer(String challenge, String id) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            byte[] digest = mac.doFinal((challenge + ":" + id).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            // every JDK ships HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks an answer in constant time.
+     */
+    public boolean verify(String challenge, String id, String answer) {
+        return answer != null && MessageDigest.isEqual(answer(challenge, id).getBytes(StandardCharsets.UTF_8),
+                                                       answer.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,159 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * StandbyReplica
+ *
+ * The standby side of replication (see ReplicationServer). A standby is
+ * started with the primary's client port and replication address:
+ *
+ *   java MastermindServer 8080 --standby-of=127.0.0.1:7800 --replication-secret-file=replication.key
+ *
+ * Before replicating it answers the primary's challenge and checks the
+ * primary's answer to its own, so it never restores games from a server
+ * that does not hold the shared secret.
+ *
+ * It keeps a warm copy of every live session until the primary stops
+ * answering, then takes over: the sessions are restored into the lobby
+ * and the server starts listening on the port the primary used.
+ *
+ * Players of a restored game come back with RESUME and their session
+ * token. Their seats are held until then (see
+ * GameLobbyManager.restoreHeld), so turns and player counts are unchanged.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class StandbyReplica {
+    private static final long RETRY_MILLIS = 500;
+    // a primary that sends nothing for this long (it beats every second) is gone
+    private static final int PRIMARY_TIMEOUT_MILLIS = 5000;
+    // reconnects tried after losing a primary that had been reachable
+    private static final int RECONNECT_ATTEMPTS = 3;
+    static final String STANDBY_ID = "standby";
+
+    private final InetSocketAddress primary;
+    private final SharedSecret secret;
+    // latest state of every live session on the primary
+    private final Map<String, SessionSnapshot> sessions = new HashMap<>();
+    private long updatesApplied = 0;
+
+    public StandbyReplica(InetSocketAddress primary, SharedSecret secret) {
+        if (secret == null) {
+            throw new IllegalArgumentException("--replication-secret or --replication-secret-file is required");
+        }
+        this.primary = primary;
+        this.secret = secret;
+    }
+
+    /**
+     * Parses "host:port".
+     *
+     * @throws IllegalArgumentException if the address is malformed
+     */
+    public static InetSocketAddress parseAddress(String spec) {
+        int colon = spec.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Bad standby address: " + spec);
+        }
+        return new InetSocketAddress(spec.substring(0, colon), Integer.parseInt(spec.substring(colon + 1)));
+    }
+
+    /**
+     * Replicates from the primary and returns once it is gone. Waits for
+     * the primary to come up first, so a standby may be started before it.
+     */
+    public void awaitTakeover() {
+        boolean everConnected = false;
+        int attemptsLeft = RECONNECT_ATTEMPTS;
+        while (!everConnected || attemptsLeft > 0) {
+            try (Socket socket = new Socket()) {
+                socket.connect(primary, PRIMARY_TIMEOUT_MILLIS);
+                socket.setSoTimeout(PRIMARY_TIMEOUT_MILLIS);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                String refusal = handshake(in, socket.getOutputStream());
+                if (refusal != null) {
+                    // a primary that cannot prove the secret does not count as reachable
+                    System.err.println("StandbyReplica - Handshake with " + primary + " failed: " + refusal);
+                } else {
+                    everConnected = true;
+                    attemptsLeft = RECONNECT_ATTEMPTS;
+                    replicate(in);
+                    System.err.println("StandbyReplica - Primary " + primary + " closed the stream");
+                }
+            } catch (IOException e) {
+                if (everConnected) {
+                    System.err.println("StandbyReplica - Primary " + primary + " unreachable: " + e.getMessage());
+                }
+            }
+            if (everConnected) attemptsLeft--;
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        System.out.println("StandbyReplica: primary is gone, taking over with " + sessions.size()
+                           + " sessions (" + updatesApplied + " updates received)");
+    }
+
+    /**
+     * Answers the primary's challenge and checks its answer to ours.
+     *
+     * @return null once both sides are proven, or why not
+     */
+    private String handshake(BufferedReader in, OutputStream out) throws IOException {
+        String line = in.readLine();
+        if (line == null || !line.startsWith("CHALLENGE:")) return "no challenge from the primary";
+        String challenge = SharedSecret.newChallenge();
+        String answer = secret.answer(line.substring("CHALLENGE:".length()), STANDBY_ID);
+        out.write(("STANDBY:" + challenge + ":" + answer + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        line = in.readLine();
+        if (line == null) return "the primary refused our answer";
+        if (!line.startsWith("PRIMARY:")
+            || !secret.verify(challenge, ReplicationServer.PRIMARY_ID, line.substring("PRIMARY:".length()))) {
+            return "the primary's answer is wrong";
+        }
+        return null;
+    }
+
+    private void replicate(BufferedReader in) throws IOException {
+        String line;
+        // a reconnect gets the full state again, so start from nothing
+        sessions.clear();
+        while ((line = in.readLine()) != null) {
+            String[] parts = line.split(":", 2);
+            String data = parts.length > 1 ? parts[1] : "";
+            switch (parts[0]) {
+                case "SNAP":
+                    SessionSnapshot state = SessionSnapshot.decode(Base64.getDecoder().decode(data));
+                    sessions.put(state.getGameId(), state);
+                    updatesApplied++;
+                    break;
+                case "GONE":
+                    sessions.remove(data);
+                    updatesApplied++;
+                    break;
+                case "SYNCED":
+                    System.out.println("StandbyReplica: in sync with " + primary + ", " + data + " sessions");
+                    break;
+                case "BEAT":
+                    break;
+                default:
+                    System.err.println("StandbyReplica - Unknown replication line: " + parts[0]);
+            }
+        }
+    }
+
+    /**
+     * Restores the replicated sessions into lobby with every seat held for
+     * its player.
+     */
+    public void restoreInto(GameLobbyManager lobby) {
+        lobby.restoreHeld(sessions.values());
+    }
+
+    public int getSessionCount() { return sessions.size(); }
+}
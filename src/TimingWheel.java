@@ -0,0 +1,237 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * TimingWheel
+ *
+ * A hierarchical timing wheel: one thread keeps any number of timeouts at
+ * O(1) cost to schedule, cancel or expire each, where a
+ * ScheduledExecutorService pays O(log n) and a heap entry per timer.
+ *
+ * Time advances in ticks of tickMillis. The wheel has LEVELS levels of
+ * SLOTS slots. Level 0 holds timeouts due in the next SLOTS ticks, one slot
+ * per tick; each level up covers SLOTS times the span of the one below.
+ * Every time level 0 wraps around, the next slot of level 1 is emptied
+ * ("cascaded") into level 0, and so on up the levels, so a timeout moves
+ * down at most LEVELS - 1 times before it fires. With 100 ms ticks the
+ * levels reach 25.6 s, 1.8 hours, 19 days and 13 years.
+ *
+ * Any thread may schedule or cancel; both are handed to the wheel thread
+ * through lock-free queues, and only the wheel thread touches the slots.
+ * Tasks run on the wheel thread, so they must be quick: anything that can
+ * block hands itself to another thread. A timeout fires at most one tick
+ * late, never early.
+ */
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+public class TimingWheel {
+    public static final long DEFAULT_TICK_MILLIS = 100;
+
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /**
+     * A scheduled task. cancel() is safe from any thread.
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimingWheel wheel;
+        private final long deadline;
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // slot list links, owned by the wheel thread
+        private Slot slot;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, long deadline, Runnable task) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * @return false if the task already ran or was cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) return false;
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() { return state.get() == CANCELLED; }
+        public boolean isExpired() { return state.get() == EXPIRED; }
+    }
+
+    /**
+     * One slot: a doubly linked list of timeouts.
+     */
+    private static final class Slot {
+        Timeout head;
+
+        void add(Timeout timeout) {
+            timeout.slot = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) head.prev = timeout;
+            head = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            timeout.slot = null;
+            timeout.prev = timeout.next = null;
+        }
+
+        /**
+         * Empties the slot, returning its old list.
+         */
+        Timeout takeAll() {
+            Timeout all = head;
+            head = null;
+            return all;
+        }
+    }
+
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final Slot[][] wheels = new Slot[LEVELS][SLOTS];
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    // next tick to process; wheel thread only
+    private long currentTick = 0;
+
+    private final LongAdder scheduledCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+    private final LongAdder cancelledCount = new LongAdder();
+
+    public TimingWheel(long tickMillis) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        for (Slot[] level : wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Slot();
+            }
+        }
+        thread = new Thread(this::run, "TimingWheel");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the wheel thread; pending timeouts never fire.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Runs task on the wheel thread after delayMillis (rounded up to whole
+     * ticks).
+     */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        long due = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        Timeout timeout = new Timeout(this, (due + tickNanos - 1) / tickNanos, task);
+        scheduledCount.increment();
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            long elapsedTicks = (System.nanoTime() - startNanos) / tickNanos;
+            while (currentTick <= elapsedTicks && running) {
+                drainQueues();
+                processTick(currentTick);
+                currentTick++;
+            }
+            LockSupport.parkNanos(startNanos + currentTick * tickNanos - System.nanoTime());
+        }
+    }
+
+    private void drainQueues() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.slot != null) timeout.slot.remove(timeout);
+            cancelledCount.increment();
+        }
+        while ((timeout = incoming.poll()) != null) {
+            // one cancelled before it was placed is skipped here
+            if (timeout.state.get() == Timeout.PENDING) place(timeout);
+        }
+    }
+
+    /**
+     * Puts a timeout in the slot of the lowest level whose span reaches
+     * its deadline, counting from the tick being processed.
+     */
+    private void place(Timeout timeout) {
+        // one due beyond the top level waits in it and is placed again when it cascades
+        long delta = Math.min(Math.max(timeout.deadline - currentTick, 0), MAX_TICKS);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        wheels[level][(int) ((currentTick + delta) >>> (SLOT_BITS * level)) & MASK].add(timeout);
+    }
+
+    private void processTick(long tick) {
+        // when a level wraps, bring the next slot of the level above down
+        for (int level = 1; level < LEVELS; level++) {
+            if (((tick >>> (SLOT_BITS * (level - 1))) & MASK) != 0) break;
+            Timeout timeout = wheels[level][(int) (tick >>> (SLOT_BITS * level)) & MASK].takeAll();
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.slot = null;
+                place(timeout);
+                timeout = next;
+            }
+        }
+        Timeout timeout = wheels[0][(int) tick & MASK].takeAll();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.slot = null;
+            timeout.prev = timeout.next = null;
+            if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                expiredCount.increment();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("TimingWheel - Timeout task failed: " + e);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Timeouts scheduled that have neither fired nor been cancelled.
+     */
+    public long getPendingCount() {
+        return scheduledCount.sum() - expiredCount.sum() - cancelledCount.sum();
+    }
+
+    public long getExpiredCount() { return expiredCount.sum(); }
+
+    @Override
+    public String toString() {
+        return getPendingCount() + " pending, " + expiredCount.sum() + " fired, " + cancelledCount.sum()
+               + " cancelled";
+    }
+}
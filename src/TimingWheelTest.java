@@ -0,0 +1,132 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * TimingWheelTest
+ *
+ * Behaviour checks for TimingWheel: timeouts fire once, never early, across
+ * the level 0 / level 1 cascade, and cancelled ones never fire.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TimingWheelTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("========================================");
+        System.out.println("   TimingWheel Tests");
+        System.out.println("========================================\n");
+
+        testFiresInOrder();
+        testCascade();
+        testCancel();
+        testRandomTimeouts();
+
+        System.out.println("\n========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        if (testsFailed > 0) System.exit(1);
+    }
+
+    /**
+     * Three timeouts scheduled out of order run in deadline order.
+     */
+    private static void testFiresInOrder() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(5);
+        wheel.start();
+        StringBuffer order = new StringBuffer();
+        CountDownLatch done = new CountDownLatch(3);
+        wheel.schedule(120, () -> { order.append('c'); done.countDown(); });
+        wheel.schedule(20, () -> { order.append('a'); done.countDown(); });
+        wheel.schedule(60, () -> { order.append('b'); done.countDown(); });
+        check("fires all three", done.await(2, TimeUnit.SECONDS));
+        check("fires in deadline order", order.toString().equals("abc"));
+        check("nothing left pending", wheel.getPendingCount() == 0);
+        wheel.stop();
+    }
+
+    /**
+     * With 1 ms ticks level 0 spans 256 ms, so a 700 ms timeout starts on
+     * level 1 and has to be cascaded down before it fires.
+     */
+    private static void testCascade() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(1);
+        wheel.start();
+        long scheduled = System.nanoTime();
+        AtomicLong firedAt = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(1);
+        wheel.schedule(700, () -> { firedAt.set(System.nanoTime()); done.countDown(); });
+        check("level 1 timeout fires", done.await(3, TimeUnit.SECONDS));
+        long elapsedMillis = (firedAt.get() - scheduled) / 1_000_000;
+        check("level 1 timeout not early (" + elapsedMillis + " ms)", elapsedMillis >= 700);
+        wheel.stop();
+    }
+
+    /**
+     * A cancelled timeout never runs, and cancel() only succeeds once.
+     */
+    private static void testCancel() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(1);
+        wheel.start();
+        AtomicInteger ran = new AtomicInteger();
+        TimingWheel.Timeout timeout = wheel.schedule(50, ran::incrementAndGet);
+        check("first cancel succeeds", timeout.cancel());
+        check("second cancel fails", !timeout.cancel());
+        CountDownLatch after = new CountDownLatch(1);
+        wheel.schedule(100, after::countDown);
+        after.await(2, TimeUnit.SECONDS);
+        check("cancelled timeout did not run", ran.get() == 0 && timeout.isCancelled());
+        check("nothing left pending", wheel.getPendingCount() == 0);
+        wheel.stop();
+    }
+
+    /**
+     * 200k timeouts of 0-1500 ms, every tenth cancelled: the rest each fire
+     * exactly once and none before its delay is up.
+     */
+    private static void testRandomTimeouts() throws InterruptedException {
+        int count = 200_000;
+        TimingWheel wheel = new TimingWheel(1);
+        wheel.start();
+        Random random = new Random(422);
+        AtomicInteger early = new AtomicInteger();
+        AtomicInteger cancelledRan = new AtomicInteger();
+        AtomicLong maxLateMillis = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(count - count / 10);
+        for (int i = 0; i < count; i++) {
+            long delayMillis = random.nextInt(1500);
+            long earliest = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            if (i % 10 == 0) {
+                wheel.schedule(delayMillis, cancelledRan::incrementAndGet).cancel();
+                continue;
+            }
+            wheel.schedule(delayMillis, () -> {
+                long late = System.nanoTime() - earliest;
+                if (late < 0) early.incrementAndGet();
+                maxLateMillis.accumulateAndGet(late / 1_000_000, Math::max);
+                done.countDown();
+            });
+        }
+        check("every timeout fires", done.await(10, TimeUnit.SECONDS));
+        check("none fire early", early.get() == 0);
+        check("no cancelled timeout runs", cancelledRan.get() == 0);
+        check("fired count matches", wheel.getExpiredCount() == count - count / 10);
+        System.out.println("    latest firing: " + maxLateMillis.get() + " ms late; " + wheel);
+        wheel.stop();
+    }
+
+    private static void check(String testName, boolean passed) {
+        if (passed) {
+            System.out.println("  ✓ PASS: " + testName);
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName);
+            testsFailed++;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * VirtualThreadMonitor
+ *
+ * Support for running ClientHandlers on JDK 21 virtual threads, plus the
+ * counters needed to tell whether those threads really unmount under load.
+ *
+ * Pinning audit (what can keep a virtual thread stuck on its carrier):
+ * - GameSession guards processGuess/broadcast with a ReentrantLock, which
+ *   parks and unmounts; it never uses synchronized.
+ * - ClientHandler's reader blocks in BufferedReader.readLine, and sleeps
+ *   off a rate-limit pause with LockSupport.parkNanos. Its writer, a second
+ *   virtual thread, waits on OutboundQueue's lock condition and writes
+ *   pre-encoded bytes through a BufferedOutputStream. On JDK 21 the java.io
+ *   streams and readers created directly (not subclassed) use internal
+ *   locks, so socket reads and writes unmount as well.
+ * - None of the server classes hold a monitor around blocking calls.
+ * The JFR jdk.VirtualThreadPinned counter below confirms this at runtime;
+ * it should stay at zero. It is exported with the other counters as
+ * mastermind_virtual_thread_pinned_total (see register).
+ *
+ * The server is built against Java 17, so virtual threads are reached
+ * through reflection and the server falls back to platform threads when
+ * the running JVM does not have them.
+ */
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class VirtualThreadMonitor {
+    private final LongAdder started = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder pinnedEvents = new LongAdder();
+    private final LongAdder pinnedNanos = new LongAdder();
+    private AutoCloseable pinnedStream;
+
+    /**
+     * Creates an executor that starts a new virtual thread per task, or
+     * returns null if this JVM has no virtual threads.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Wraps a connection task so started/active counts can be reported.
+     */
+    public Runnable track(Runnable task) {
+        return () -> {
+            started.increment();
+            try {
+                task.run();
+            } finally {
+                finished.increment();
+            }
+        };
+    }
+
+    /**
+     * Subscribes to jdk.VirtualThreadPinned through a JFR stream. Every
+     * pin is recorded (threshold 0), not just the ones over 20 ms.
+     */
+    public void startPinningMonitor() {
+        try {
+            jdk.jfr.consumer.RecordingStream stream = new jdk.jfr.consumer.RecordingStream();
+            stream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            stream.onEvent("jdk.VirtualThreadPinned", event -> {
+                pinnedEvents.increment();
+                pinnedNanos.add(event.getDuration().toNanos());
+            });
+            stream.startAsync();
+            pinnedStream = stream;
+        } catch (Exception | LinkageError e) {
+            System.err.println("VirtualThreadMonitor - JFR unavailable, pinning not tracked: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the thread and pinning counters to the server's metrics.
+     */
+    public void register(MetricsRegistry metrics) {
+        metrics.gauge("mastermind_virtual_threads_active", "Connection tasks running on virtual threads",
+                      this::getActiveThreads);
+        metrics.counter("mastermind_virtual_threads_started_total", "Connection tasks started on virtual threads",
+                        this::getStartedThreads);
+        metrics.counter("mastermind_virtual_thread_pinned_total", "Times a virtual thread blocked while pinned",
+                        this::getPinnedEvents);
+        metrics.counter("mastermind_virtual_thread_pinned_millis_total", "Time virtual threads spent pinned",
+                        this::getPinnedMillis);
+        metrics.counter("mastermind_session_lock_parks_total", "Times a session lock was found held",
+                        this::getLockParks);
+    }
+
+    public void stop() {
+        try {
+            if (pinnedStream != null) pinnedStream.close();
+        } catch (Exception e) {
+            System.err.println("VirtualThreadMonitor - Error closing JFR stream: " + e.getMessage());
+        }
+    }
+
+    // Counters
+    public long getStartedThreads() { return started.sum(); }
+    public long getActiveThreads() { return started.sum() - finished.sum(); }
+    public long getPinnedEvents() { return pinnedEvents.sum(); }
+    public long getPinnedMillis() { return TimeUnit.NANOSECONDS.toMillis(pinnedNanos.sum()); }
+    public long getLockParks() { return GameSession.getContendedLockCount(); }
+
+    @Override
+    public String toString() {
+        return "virtualThreads[active=" + getActiveThreads() + ", started=" + getStartedThreads() +
+               ", pinned=" + getPinnedEvents() + " (" + getPinnedMillis() + " ms)" +
+               ", sessionLockParks=" + getLockParks() + "]";
+    }
+}